@@ -0,0 +1,53 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.ECommerceBackendApplication;
+
+/**
+ * The application context shared by the benchmarks of a fork. It runs against
+ * the in-memory H2 database of the test configuration, on a random port.
+ */
+@State(Scope.Benchmark)
+public class ApplicationState {
+
+	/** The running application. */
+	private ConfigurableApplicationContext context;
+
+	/**
+	 * Starts the application once per fork.
+	 */
+	@Setup
+	public void start() {
+		SpringApplication application = new SpringApplication(ECommerceBackendApplication.class);
+		context = application.run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:test;DB_CLOSE_ON_EXIT=FALSE",
+				"--spring.jpa.show-sql=false",
+				"--spring.jpa.properties.hibernate.generate_statistics=false",
+				"--app.uploadDirectory=target/benchmark-images", "--logging.level.root=WARN");
+	}
+
+	/**
+	 * Gets a bean of the running application.
+	 * 
+	 * @param <T>  The bean type.
+	 * @param type The bean class.
+	 * @return The bean.
+	 */
+	public <T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	/**
+	 * Stops the application.
+	 */
+	@TearDown
+	public void stop() {
+		context.close();
+	}
+
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.model.LocalUser;
+import com.service.EncryptionService;
+import com.service.InMemoryUsedTokenStore;
+import com.service.JWTService;
+
+/**
+ * Benchmarks the per request authentication work: issuing and verifying JWTs
+ * and checking a BCrypt password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthBenchmark {
+
+	/** The BCrypt cost, the application uses 10. */
+	@Param({ "10" })
+	private int saltRounds;
+	/** The size of the verified token cache, 0 verifies every call. */
+	@Param({ "0", "10000" })
+	private long verifiedCacheSize;
+
+	private JWTService jwtService;
+	private EncryptionService encryptionService;
+	/** The user tokens are issued for. */
+	private LocalUser user;
+	/** A token issued for the user. */
+	private String token;
+	/** The hash of the user's password. */
+	private String hash;
+
+	/**
+	 * Configures the services the way the application properties do.
+	 */
+	@Setup
+	public void setup() {
+		jwtService = new JWTService(new InMemoryUsedTokenStore());
+		ReflectionTestUtils.setField(jwtService, "algorithmKey", "SuperSecureSecretKey");
+		ReflectionTestUtils.setField(jwtService, "issuer", "eCommerce");
+		ReflectionTestUtils.setField(jwtService, "expiryInSeconds", 604800);
+		ReflectionTestUtils.setField(jwtService, "verifiedCacheSize", verifiedCacheSize);
+		jwtService.postConstruct();
+		encryptionService = new EncryptionService();
+		ReflectionTestUtils.setField(encryptionService, "saltRounds", saltRounds);
+		encryptionService.postConstruct();
+
+		user = new LocalUser();
+		user.setUsername("UserA");
+		user.setEmail("UserA@junit.com");
+		token = jwtService.generateJWT(user);
+		hash = encryptionService.encryptPassword("PasswordA123");
+	}
+
+	@Benchmark
+	public String generateJWT() {
+		return jwtService.generateJWT(user);
+	}
+
+	@Benchmark
+	public String getUsername() {
+		return jwtService.getUsername(token);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public boolean verifyPassword() {
+		return encryptionService.verifyPassword("PasswordA123", hash);
+	}
+
+}
@@ -0,0 +1,109 @@
+package benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.service.ImageDataService;
+
+/**
+ * Benchmarks storing images through ImageDataService: adding a new image,
+ * replacing an existing one and writing a holder's images as a zip download.
+ * Every upload carries distinct bytes so each stores a new blob.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageStorageBenchmark {
+
+	/** The size of an uploaded image in bytes. */
+	@Param({ "262144" })
+	private int size;
+
+	/** Makes every upload distinct. */
+	private final AtomicLong sequence = new AtomicLong();
+	/** The service under test. */
+	private ImageDataService imageDataService;
+	/** The holder the images are stored for. */
+	private UUID holderId;
+	/**
+	 * The bytes uploaded. They open with a one pixel PNG so the upload passes
+	 * the type check, and the last eight are replaced by the sequence.
+	 */
+	private byte[] content;
+
+	/**
+	 * Looks up the service and stores the images the zip download is made of.
+	 * 
+	 * @param application The running application.
+	 */
+	@Setup
+	public void setup(ApplicationState application) throws Exception {
+		imageDataService = application.getBean(ImageDataService.class);
+		holderId = UUID.randomUUID();
+		content = new byte[size];
+		new Random(42).nextBytes(content);
+		ByteArrayOutputStream pixel = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "png", pixel);
+		System.arraycopy(pixel.toByteArray(), 0, content, 0, pixel.size());
+		for (int i = 0; i < 10; i++) {
+			imageDataService.saveImagesToStorage("thumbnail", holderId, List.of(upload("zip-" + i + ".png")));
+		}
+	}
+
+	/**
+	 * Builds an upload with bytes no earlier upload had.
+	 * 
+	 * @param name The file name.
+	 * @return The upload.
+	 */
+	private MockMultipartFile upload(String name) {
+		byte[] bytes = content.clone();
+		long value = sequence.incrementAndGet();
+		for (int i = 0; i < 8; i++) {
+			bytes[bytes.length - 1 - i] = (byte) (value >>> (8 * i));
+		}
+		return new MockMultipartFile("file", name, "image/png", bytes);
+	}
+
+	@Benchmark
+	public String createImage() throws Exception {
+		return imageDataService.saveImagesToStorage("gallery", holderId,
+				List.of(upload("image-" + sequence.get() + ".png")));
+	}
+
+	@Benchmark
+	public String updateImage() throws Exception {
+		return imageDataService.saveImagesToStorage("gallery", holderId, List.of(upload("replaced.png")));
+	}
+
+	@Benchmark
+	public void writeZip() throws Exception {
+		imageDataService.writeZipImages(imageDataService.getImages(holderId.toString(), "thumbnail"),
+				OutputStream.nullOutputStream());
+	}
+
+}
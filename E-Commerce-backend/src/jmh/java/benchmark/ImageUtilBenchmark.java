@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.config.ImageUtil;
+
+/**
+ * Benchmarks the deflate helpers in ImageUtil. Half of the input is random, the
+ * way already compressed image data is, and half repeats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageUtilBenchmark {
+
+	/** The size of the input in bytes. */
+	@Param({ "65536", "1048576" })
+	private int size;
+
+	/** The uncompressed input. */
+	private byte[] data;
+	/** The compressed input. */
+	private byte[] compressed;
+
+	@Setup
+	public void setup() {
+		data = new byte[size];
+		new Random(42).nextBytes(data);
+		for (int i = size / 2; i < size; i++) {
+			data[i] = (byte) (i % 64);
+		}
+		compressed = ImageUtil.compressImage(data);
+	}
+
+	@Benchmark
+	public byte[] compressImage() {
+		return ImageUtil.compressImage(data);
+	}
+
+	@Benchmark
+	public byte[] decompressImage() {
+		return ImageUtil.decompressImage(compressed);
+	}
+
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.model.Category;
+import com.model.Inventory;
+import com.model.Product;
+import com.model.ProductStatus;
+
+/**
+ * Benchmarks serializing a large product listing to JSON, as the catalog
+ * endpoints do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSerializationBenchmark {
+
+	/** The number of products in the listing. */
+	@Param({ "1000" })
+	private int products;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	/** The listing to serialize. */
+	private List<Product> listing;
+
+	/**
+	 * Builds products with two categories and three inventory lines each.
+	 */
+	@Setup
+	public void setup() {
+		List<Category> categories = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			Category category = new Category();
+			category.setId(UUID.randomUUID());
+			category.setName("Category " + i);
+			categories.add(category);
+		}
+		listing = new ArrayList<>();
+		for (int i = 0; i < products; i++) {
+			Product product = new Product();
+			product.setId(UUID.randomUUID());
+			product.setName("Product " + i);
+			product.setShortDescription("Short description of product " + i);
+			product.setLongDescription("A longer description of product " + i + " with a few more words in it.");
+			product.setStatus(ProductStatus.values()[0]);
+			product.setUserId(UUID.randomUUID());
+			product.setCreatedAt("2024-01-01 10:00 AM");
+			product.getCategories().add(categories.get(i % categories.size()));
+			product.getCategories().add(categories.get((i + 1) % categories.size()));
+			for (String color : List.of("red", "green", "blue")) {
+				Inventory inventory = new Inventory();
+				inventory.setId(UUID.randomUUID());
+				inventory.setQuantity(10);
+				inventory.setColor(color);
+				inventory.setModel("standard");
+				inventory.setPrice(19.99);
+				product.getInventory().add(inventory);
+			}
+			listing.add(product);
+		}
+	}
+
+	@Benchmark
+	public byte[] serializeListing() throws Exception {
+		return objectMapper.writeValueAsBytes(listing);
+	}
+
+}
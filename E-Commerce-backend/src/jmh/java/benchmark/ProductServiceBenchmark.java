@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.model.Inventory;
+import com.model.Product;
+import com.model.ProductStatus;
+import com.service.ProductService;
+
+/**
+ * Benchmarks adding and updating products through ProductService against H2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+	/** The owner of the benchmark products. */
+	private static final UUID USER_ID = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+
+	/** Makes every added product name unique. */
+	private final AtomicLong sequence = new AtomicLong();
+	/** The service under test. */
+	private ProductService productService;
+	/** The product updated by the update benchmark. */
+	private Product existing;
+
+	/**
+	 * Looks up the service and creates the product to update.
+	 * 
+	 * @param application The running application.
+	 */
+	@Setup
+	public void setup(ApplicationState application) {
+		productService = application.getBean(ProductService.class);
+		existing = productService.addProduct(newProduct("benchmark-existing"));
+	}
+
+	/**
+	 * Builds an unsaved product with three inventory lines.
+	 * 
+	 * @param name The product name.
+	 * @return The product.
+	 */
+	private static Product newProduct(String name) {
+		Product product = new Product();
+		product.setName(name);
+		product.setShortDescription("Short description");
+		product.setLongDescription("A longer description of the benchmark product.");
+		product.setStatus(ProductStatus.values()[0]);
+		product.setUserId(USER_ID);
+		for (String color : List.of("red", "green", "blue")) {
+			Inventory inventory = new Inventory();
+			inventory.setQuantity(10);
+			inventory.setColor(color);
+			inventory.setModel("standard");
+			inventory.setPrice(19.99);
+			product.getInventory().add(inventory);
+		}
+		return product;
+	}
+
+	@Benchmark
+	public Product addProduct() {
+		return productService.addProduct(newProduct("benchmark-" + sequence.incrementAndGet()));
+	}
+
+	@Benchmark
+	public Product updateProduct() {
+		Product update = newProduct(existing.getName());
+		update.getInventory().clear();
+		for (Inventory current : existing.getInventory()) {
+			Inventory inventory = new Inventory();
+			inventory.setId(current.getId());
+			inventory.setQuantity(1 + (int) (sequence.incrementAndGet() % 50));
+			inventory.setColor(current.getColor());
+			inventory.setModel(current.getModel());
+			inventory.setPrice(current.getPrice());
+			update.getInventory().add(inventory);
+		}
+		return productService.updateProduct(existing.getId(), update);
+	}
+
+}
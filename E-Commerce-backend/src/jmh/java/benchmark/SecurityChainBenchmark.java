@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.SecurityFilterChain;
+
+import com.repository.LocalUserDAO;
+import com.service.JWTService;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+
+/**
+ * Benchmarks the security filtering of an anonymous catalog read. The public
+ * chain is what GET /product goes through now. The full chain is the chain of
+ * the authenticated routes, which every request went through before the
+ * public reads were split off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityChainBenchmark {
+
+	/** Stands in for the dispatcher servlet. */
+	private static final FilterChain TERMINAL = (request, response) -> {
+	};
+
+	/** The chain the read goes through. */
+	@Param({ "public", "full" })
+	private String chain;
+	/** Whether the read carries a token, as a logged in shopper's would. */
+	@Param({ "false", "true" })
+	private boolean withToken;
+
+	/** The filter under test. */
+	private FilterChainProxy filter;
+	/** The Authorization header sent, if any. */
+	private String authorization;
+
+	/**
+	 * Picks the chain and issues a token.
+	 * 
+	 * @param application The running application.
+	 */
+	@Setup
+	public void setup(ApplicationState application) {
+		FilterChainProxy proxy = application.getBean(FilterChainProxy.class);
+		if ("public".equals(chain)) {
+			filter = proxy;
+		} else {
+			SecurityFilterChain full = proxy.getFilterChains().get(proxy.getFilterChains().size() - 1);
+			filter = new FilterChainProxy(full);
+		}
+		authorization = withToken ? "Bearer " + application.getBean(JWTService.class)
+				.generateJWT(application.getBean(LocalUserDAO.class).findByUsernameIgnoreCase("UserA").get()) : null;
+	}
+
+	/**
+	 * Filters GET /product.
+	 * 
+	 * @return The response.
+	 * @throws IOException      Thrown if a filter fails.
+	 * @throws ServletException Thrown if a filter fails.
+	 */
+	@Benchmark
+	public MockHttpServletResponse productList() throws IOException, ServletException {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/product");
+		request.setServletPath("/product");
+		if (authorization != null) {
+			request.addHeader("Authorization", authorization);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, TERMINAL);
+		return response;
+	}
+
+}
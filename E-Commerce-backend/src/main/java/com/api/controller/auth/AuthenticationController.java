@@ -1,10 +1,16 @@
 package com.api.controller.auth;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -16,11 +22,13 @@ import com.api.model.LoginBody;
 import com.api.model.LoginResponse;
 import com.api.model.PasswordResetBody;
 import com.api.model.RegistrationBody;
-import com.exception.EmailFailureException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.exception.EmailNotFoundException;
+import com.exception.TooManyRequestsException;
 import com.exception.UserAlreadyExistsException;
 import com.exception.UserNotVerifiedException;
 import com.model.LocalUser;
+import com.service.RateLimiter;
 import com.service.UserService;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -35,65 +43,86 @@ public class AuthenticationController {
 
 	/** The user service. */
 	private UserService userService;
+	/** The limiter throttling the endpoints. */
+	private RateLimiter rateLimiter;
 
 	/**
 	 * Spring injected constructor.
 	 * 
 	 * @param userService
+	 * @param rateLimiter
 	 */
-	public AuthenticationController(UserService userService) {
+	public AuthenticationController(UserService userService, RateLimiter rateLimiter) {
 		this.userService = userService;
+		this.rateLimiter = rateLimiter;
 	}
 
 	/**
-	 * Post Mapping to handle registering users.
+	 * Post Mapping to handle registering users. The request thread is released
+	 * while the password is hashed.
 	 * 
 	 * @param registrationBody The registration information.
+	 * @param request          The request, for the client address.
 	 * @return Response to front end.
+	 * @throws TooManyRequestsException Thrown if the address or email is over
+	 *                                  its limit.
 	 */
 	@PostMapping("/register")
-	public ResponseEntity registerUser(@Valid @RequestBody RegistrationBody registrationBody) {
+	public CompletableFuture<ResponseEntity<Void>> registerUser(@Valid @RequestBody RegistrationBody registrationBody,
+			HttpServletRequest request) throws TooManyRequestsException {
+		rateLimiter.checkRegister(request.getRemoteAddr(), registrationBody.getEmail());
 		try {
-			userService.registerUser(registrationBody);
-			return ResponseEntity.ok().build();
+			return userService.registerUser(registrationBody).handle((user, ex) -> {
+				Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+				if (cause instanceof UserAlreadyExistsException) {
+					return ResponseEntity.status(HttpStatus.CONFLICT).build();
+				} else if (cause != null) {
+					return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+				}
+				return ResponseEntity.ok().build();
+			});
 		} catch (UserAlreadyExistsException ex) {
-			return ResponseEntity.status(HttpStatus.CONFLICT).build();
-		} catch (EmailFailureException e) {
-			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT).build());
 		}
 	}
 
 	/**
-	 * Post Mapping to handle user logins to provide authentication token.
+	 * Post Mapping to handle user logins to provide authentication token. The
+	 * request thread is released while the password is checked.
 	 * 
 	 * @param loginBody The login information.
+	 * @param request   The request, for the client address.
 	 * @return The authentication token if successful.
+	 * @throws TooManyRequestsException Thrown if the address or username is over
+	 *                                  its limit.
 	 */
 	@PostMapping("/login")
-	public ResponseEntity<LoginResponse> loginUser(@Valid @RequestBody LoginBody loginBody) {
-		String jwt = null;
-		try {
-			jwt = userService.loginUser(loginBody);
-		} catch (UserNotVerifiedException ex) {
-			LoginResponse response = new LoginResponse();
-			response.setSuccess(false);
-			String reason = "USER_NOT_VERIFIED";
-			if (ex.isNewEmailSent()) {
-				reason += "_EMAIL_RESENT";
+	public CompletableFuture<ResponseEntity<LoginResponse>> loginUser(@Valid @RequestBody LoginBody loginBody,
+			HttpServletRequest request) throws TooManyRequestsException {
+		rateLimiter.checkLogin(request.getRemoteAddr(), loginBody.getUsername());
+		return userService.loginUser(loginBody).handle((jwt, ex) -> {
+			Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+			if (cause instanceof UserNotVerifiedException notVerified) {
+				LoginResponse response = new LoginResponse();
+				response.setSuccess(false);
+				String reason = "USER_NOT_VERIFIED";
+				if (notVerified.isNewEmailSent()) {
+					reason += "_EMAIL_RESENT";
+				}
+				response.setFailureReason(reason);
+				return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+			} else if (cause != null) {
+				return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
 			}
-			response.setFailureReason(reason);
-			return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
-		} catch (EmailFailureException ex) {
-			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-		}
-		if (jwt == null) {
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-		} else {
-			LoginResponse response = new LoginResponse();
-			response.setJwt(jwt);
-			response.setSuccess(true);
-			return ResponseEntity.ok(response);
-		}
+			if (jwt == null) {
+				return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+			} else {
+				LoginResponse response = new LoginResponse();
+				response.setJwt(jwt);
+				response.setSuccess(true);
+				return ResponseEntity.ok(response);
+			}
+		});
 	}
 
 	/**
@@ -104,7 +133,7 @@ public class AuthenticationController {
 	 * @return 200 if successful. 409 if failure.
 	 */
 	@PostMapping("/verify")
-	public ResponseEntity verifyEmail(@RequestParam String token) {
+	public ResponseEntity<Void> verifyEmail(@RequestParam String token) {
 		if (userService.verifyUser(token)) {
 			return ResponseEntity.ok().build();
 		} else {
@@ -140,18 +169,21 @@ public class AuthenticationController {
 	/**
 	 * Sends an email to the user with a link to reset their password.
 	 * 
-	 * @param email The email to reset.
+	 * @param email   The email to reset.
+	 * @param request The request, for the client address.
 	 * @return Ok if sent, bad request if email not found.
+	 * @throws TooManyRequestsException Thrown if the address or email is over its
+	 *                                  limit.
 	 */
 	@PostMapping("/forgot")
-	public ResponseEntity forgotPassword(@RequestParam String email) {
+	public ResponseEntity<Void> forgotPassword(@RequestParam String email, HttpServletRequest request)
+			throws TooManyRequestsException {
+		rateLimiter.checkForgot(request.getRemoteAddr(), email);
 		try {
 			userService.forgotPassword(email);
 			return ResponseEntity.ok().build();
 		} catch (EmailNotFoundException ex) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-		} catch (EmailFailureException e) {
-			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
 		}
 	}
 
@@ -159,12 +191,48 @@ public class AuthenticationController {
 	 * Resets the users password with the given token and password.
 	 * 
 	 * @param body The information for the password reset.
-	 * @return Okay if password was set.
+	 * @return Okay if password was set, bad request if the token is invalid or
+	 *         already used.
 	 */
 	@PostMapping("/reset")
-	public ResponseEntity resetPassword(@Valid @RequestBody PasswordResetBody body) {
-		userService.resetPassword(body);
-		return ResponseEntity.ok().build();
+	public CompletableFuture<ResponseEntity<Void>> resetPassword(@Valid @RequestBody PasswordResetBody body) {
+		try {
+			return userService.resetPassword(body).handle((done, ex) -> {
+				Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+				if (cause instanceof JWTVerificationException) {
+					return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+				} else if (cause != null) {
+					return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+				}
+				return ResponseEntity.ok().build();
+			});
+		} catch (JWTVerificationException ex) {
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+		}
+	}
+
+	/**
+	 * Answers 429 when the password hashing pool is saturated, so a login burst
+	 * is turned away quickly instead of queueing without bound.
+	 * 
+	 * @param ex The rejection.
+	 * @return Too many requests, with a hint to retry shortly.
+	 */
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<Void> hashingSaturated(RejectedExecutionException ex) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+	}
+
+	/**
+	 * Answers 429 when a client address or account is over its rate limit.
+	 * 
+	 * @param ex The rejection.
+	 * @return Too many requests, with the time until the next request is allowed.
+	 */
+	@ExceptionHandler(TooManyRequestsException.class)
+	public ResponseEntity<Void> rateLimited(TooManyRequestsException ex) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds())).build();
 	}
 
 }
@@ -0,0 +1,83 @@
+package com.api.controller.cart;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.api.model.OrderLineBody;
+import com.exception.OutOfStockException;
+import com.model.LocalUser;
+import com.model.StockHold;
+import com.service.CartService;
+
+import jakarta.validation.Valid;
+
+/**
+ * Controller to handle the stock held by a user's cart.
+ */
+@RestController
+@RequestMapping("/cart")
+public class CartController {
+
+  /** The Cart Service. */
+  private CartService cartService;
+
+  /**
+   * Constructor for spring injection.
+   * @param cartService
+   */
+  public CartController(CartService cartService) {
+    this.cartService = cartService;
+  }
+
+  /**
+   * Endpoint to get the holds of the user's cart.
+   * @param user The user provided by spring security context.
+   * @return The holds, soonest to expire first.
+   */
+  @GetMapping
+  public List<StockHold> getHolds(@AuthenticationPrincipal LocalUser user) {
+    return cartService.getHolds(user);
+  }
+
+  /**
+   * Endpoint to hold stock until the hold expires or is bought.
+   * @param user The user provided by spring security context.
+   * @param line The inventory entry and how many.
+   * @return The hold, or 409 if there is not enough stock.
+   */
+  @PostMapping("/hold")
+  public ResponseEntity<StockHold> hold(@AuthenticationPrincipal LocalUser user,
+                                        @Valid @RequestBody OrderLineBody line) {
+    try {
+      return ResponseEntity.ok(cartService.hold(user, line));
+    } catch (OutOfStockException ex) {
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+  }
+
+  /**
+   * Endpoint to release a hold, giving its stock back.
+   * @param user The user provided by spring security context.
+   * @param holdId The hold id.
+   * @return 200 if released, 404 if not found.
+   */
+  @DeleteMapping("/hold/{holdId}")
+  public ResponseEntity<Void> release(@AuthenticationPrincipal LocalUser user, @PathVariable UUID holdId) {
+    if (cartService.release(user, holdId)) {
+      return ResponseEntity.ok().build();
+    }
+    return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+  }
+
+}
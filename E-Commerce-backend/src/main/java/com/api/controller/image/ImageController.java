@@ -1,28 +1,37 @@
 package com.api.controller.image;
 
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.exception.UnsupportedImageException;
+import com.model.ImageData;
 import com.model.LocalUser;
 
 import com.service.ImageDataService;
 
 import com.service.UserService;
 
-import java.io.ByteArrayOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 
 @RestController
@@ -31,6 +40,11 @@ public class ImageController {
 
     private final ImageDataService imageDataService;
 
+    /** Request attribute set by Tomcat when the connector can use sendfile. */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    /** Cache policy for URLs pinned to a content hash, which never change. */
+    private static final String IMMUTABLE_CACHE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable()
+            .getHeaderValue();
 
     public ImageController(ImageDataService imageDataService, UserService userService) {
         this.imageDataService = imageDataService;
@@ -45,26 +59,131 @@ public class ImageController {
         try {
             String imageUrl = imageDataService.saveImagesToStorage(imageTpe, holderId, file);
             return ResponseEntity.ok(imageUrl);
+        } catch (UnsupportedImageException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (IOException e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Gets every image of a holder and type as a zip archive, assembled on the
+     * fly from the blob store.
+     *
+     * @param holderId The holder of the images.
+     * @param imageType The image type.
+     * @return The archive, or 404 if the holder has no images of this type.
+     */
     @GetMapping("/{holderId}/{imageType}")
-    public ResponseEntity<FileSystemResource> getProductImages(@PathVariable String holderId, @PathVariable String imageType) {
-        try {
-            String zipFilePath = imageDataService.getZipImages(holderId, imageType);
+    public ResponseEntity<StreamingResponseBody> getProductImages(@PathVariable String holderId, @PathVariable String imageType) {
+        List<ImageData> images = imageDataService.getImages(holderId, imageType);
+        if (images.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDispositionFormData("attachment", "images.zip");
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "images.zip");
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(outputStream -> imageDataService.writeZipImages(images, outputStream));
+    }
+    
+    /**
+     * Streams a single image, honouring Range requests. The bytes are sent with
+     * Tomcat's sendfile when the connector supports it, otherwise with
+     * FileChannel.transferTo, so they are never copied through the heap.
+     * A URL carrying the image hash as v is cached as immutable. Anything not
+     * indexed as an allowed image type is sent as an attachment. Passing the
+     * display width as w selects the smallest resized copy that covers it.
+     *
+     * @param holderId The holder of the image.
+     * @param imageType The image type.
+     * @param imageName The name of the image.
+     * @param width The display width wanted, optional.
+     * @param version The hash the client expects, optional.
+     * @param request The servlet request.
+     * @param response The servlet response.
+     * @throws IOException Thrown if the image could not be sent.
+     */
+    @GetMapping("/{holderId}/{imageType}/{imageName}")
+    public void getImage(@PathVariable String holderId, @PathVariable String imageType, @PathVariable String imageName,
+                         @RequestParam(name = "w", required = false) Integer width,
+                         @RequestParam(name = "v", required = false) String version,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<ImageData> opImage = imageDataService.getImage(holderId, imageType, imageName, width);
+        if (opImage.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        ImageData image = opImage.get();
+        String eTag = "\"" + image.getHash() + "\"";
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                image.getHash().equals(version) ? IMMUTABLE_CACHE : CacheControl.noCache().getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, image.getCreatedTimestamp().getTime())) {
+            return;
+        }
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(new FileSystemResource(zipFilePath));
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        long length = image.getSize();
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(eTag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException ex) {
+                ranges = List.of();
+            }
+            // Multipart byte ranges are not supported, the full image is sent instead.
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        // Entries indexed before types were read from the bytes may carry any
+        // type the uploader sent, those are only offered as a download.
+        String contentType = image.getContentType();
+        if (contentType != null && ImageDataService.ALLOWED_CONTENT_TYPES.contains(contentType)) {
+            response.setContentType(contentType);
+        } else {
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment");
+        }
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        Path path = imageDataService.getImagePath(image);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", path.toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", start);
+            request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+            return;
+        }
+        try (FileChannel fileChannel = FileChannel.open(path)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long sent = fileChannel.transferTo(position, end + 1 - position, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
         }
     }
     
@@ -73,16 +192,15 @@ public class ImageController {
     public ResponseEntity<String> deleteImageFromZip(
             @PathVariable UUID holderId,
             @PathVariable String imageName) {
-        try {
-        	imageDataService.deleteImageFromZip("thumbnail", holderId, imageName);
-        	imageDataService.deleteImageFromZip("gallery", holderId, imageName);
-            return ResponseEntity.ok("Image '" + imageName + "' deleted successfully.");
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to delete image '" + imageName + "'.");
+        boolean deletedThumbnail = imageDataService.deleteImage("thumbnail", holderId, imageName);
+        boolean deletedGallery = imageDataService.deleteImage("gallery", holderId, imageName);
+        if (!deletedThumbnail && !deletedGallery) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Image '" + imageName + "' does not exist.");
         }
+        return ResponseEntity.ok("Image '" + imageName + "' deleted successfully.");
     }
     
 
     
-}
\ No newline at end of file
+}
@@ -1,16 +1,30 @@
 package com.api.controller.order;
 
-import java.util.List;
+import java.util.UUID;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.api.model.OrderBody;
+import com.api.model.OrderPage;
+import com.exception.AddressNotFoundException;
+import com.exception.OutOfStockException;
 import com.model.LocalUser;
 import com.model.WebOrder;
+import com.service.IdempotencyService;
 import com.service.OrderService;
 
+import jakarta.validation.Valid;
+
 /**
  * Controller to handle requests to create, update and view orders.
  */
@@ -20,23 +34,90 @@ public class OrderController {
 
   /** The Order Service. */
   private OrderService orderService;
+  /** The Idempotency Service. */
+  private IdempotencyService idempotencyService;
 
   /**
    * Constructor for spring injection.
    * @param orderService
+   * @param idempotencyService
    */
-  public OrderController(OrderService orderService) {
+  public OrderController(OrderService orderService, IdempotencyService idempotencyService) {
     this.orderService = orderService;
+    this.idempotencyService = idempotencyService;
   }
 
   /**
-   * Endpoint to get all orders for a specific user.
+   * Endpoint to get a page of the orders of a specific user, newest first. The
+   * next page is requested by echoing back nextAfterTimestamp and nextAfterId.
    * @param user The user provided by spring security context.
-   * @return The list of orders the user had made.
+   * @param size The page size.
+   * @param afterTimestamp When the last order seen was placed, epoch millis.
+   * @param afterId The id of the last order seen.
+   * @return The page of order summaries.
    */
   @GetMapping
-  public List<WebOrder> getOrders(@AuthenticationPrincipal LocalUser user) {
-    return orderService.getOrders(user);
+  public OrderPage getOrders(@AuthenticationPrincipal LocalUser user,
+                             @RequestParam(defaultValue = "20") int size,
+                             @RequestParam(required = false) Long afterTimestamp,
+                             @RequestParam(required = false) UUID afterId) {
+    return orderService.getOrderPage(user, afterTimestamp, afterId, size);
+  }
+
+  /**
+   * Endpoint to get a single order of a specific user with all its details.
+   * @param user The user provided by spring security context.
+   * @param orderId The order id.
+   * @return The order, or 404 if it is not one of the user's.
+   */
+  @GetMapping("/{orderId}")
+  public ResponseEntity<WebOrder> getOrder(@AuthenticationPrincipal LocalUser user,
+                                           @PathVariable UUID orderId) {
+    WebOrder order = orderService.getOrder(user, orderId);
+    if (order == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    return ResponseEntity.ok(order);
+  }
+
+  /**
+   * Endpoint to place an order. The stock of every line is reserved, or none.
+   * With an Idempotency-Key header the order is placed at most once per key,
+   * a retry gets the original response back.
+   * @param user The user provided by spring security context.
+   * @param idempotencyKey The key chosen by the client, optional.
+   * @param body The address and lines of the order.
+   * @return The order, 400 if the address is not the user's or the key is
+   * invalid, 409 if a line is out of stock or the first request with the key
+   * is still running, 422 if the key was used for another order.
+   */
+  @PostMapping
+  public ResponseEntity<?> placeOrder(@AuthenticationPrincipal LocalUser user,
+                                      @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
+                                      @Valid @RequestBody OrderBody body) {
+    if (idempotencyKey == null) {
+      return submitOrder(user, body);
+    }
+    if (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyService.MAX_KEY_LENGTH) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    }
+    return idempotencyService.execute(user, idempotencyKey, body, () -> submitOrder(user, body));
+  }
+
+  /**
+   * Places an order and maps its failures to a response.
+   * @param user The user.
+   * @param body The address and lines of the order.
+   * @return The response.
+   */
+  private ResponseEntity<?> submitOrder(LocalUser user, OrderBody body) {
+    try {
+      return ResponseEntity.ok(orderService.placeOrder(user, body));
+    } catch (AddressNotFoundException ex) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    } catch (OutOfStockException ex) {
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
   }
 
-}
\ No newline at end of file
+}
@@ -4,7 +4,9 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -16,13 +18,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import com.model.DataChange;
 import com.model.LocalUser;
 import com.model.Product;
+import com.model.ProductStatus;
 import com.repository.ProductDAO;
 import com.service.ProductService;
+import com.service.ProductViewCache;
+import com.service.ProductViewService;
 
 /**
  * Controller to handle the creation, updating & viewing of products.
@@ -35,15 +42,18 @@ public class ProductController {
 	private ProductDAO productDAO;
 	private SimpMessagingTemplate simpMessagingTemplate;
 	private ProductService productService;
+	/** The cached, pre-serialized product views. */
+	private ProductViewService productViewService;
 
 	/**
 	 * Constructor for spring injection.
 	 * 
 	 * @param productService
 	 */
-	public ProductController(ProductService productService, ProductDAO productDAO,
-			SimpMessagingTemplate simpMessagingTemplate) {
+	public ProductController(ProductService productService, ProductViewService productViewService,
+			ProductDAO productDAO, SimpMessagingTemplate simpMessagingTemplate) {
 		this.productService = productService;
+		this.productViewService = productViewService;
 		this.productDAO = productDAO;
 		this.simpMessagingTemplate = simpMessagingTemplate;
 	}
@@ -51,11 +61,68 @@ public class ProductController {
 	/**
 	 * Gets the list of products available.
 	 * 
-	 * @return The list of products.
+	 * @param request The web request, used to match If-None-Match.
+	 * @return The list of products as JSON, or 304 if the client copy is current.
 	 */
 	@GetMapping
-	public List<Product> getProducts() {
-		return productService.getProducts();
+	public ResponseEntity<byte[]> getProducts(WebRequest request) {
+		return snapshotResponse(productViewService.getCatalog(), request);
+	}
+
+	/**
+	 * Gets a single product.
+	 * 
+	 * @param productId The ID of the product.
+	 * @param request   The web request, used to match If-None-Match.
+	 * @return The product as JSON, 304 if the client copy is current or 404.
+	 */
+	@GetMapping("/{productId}")
+	public ResponseEntity<byte[]> getProduct(@PathVariable UUID productId, WebRequest request) {
+		ProductViewCache.Snapshot snapshot = productViewService.getProduct(productId);
+		if (snapshot == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return snapshotResponse(snapshot, request);
+	}
+
+	/**
+	 * Writes a pre-rendered snapshot, answering 304 Not Modified when the
+	 * If-None-Match header carries the snapshot's ETag.
+	 * 
+	 * @param snapshot The snapshot to serve.
+	 * @param request  The web request.
+	 * @return The response.
+	 */
+	private ResponseEntity<byte[]> snapshotResponse(ProductViewCache.Snapshot snapshot, WebRequest request) {
+		if (request.checkNotModified(snapshot.getETag())) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getETag())
+					.cacheControl(CacheControl.noCache()).build();
+		}
+		return ResponseEntity.ok().eTag(snapshot.getETag()).cacheControl(CacheControl.noCache())
+				.contentType(MediaType.APPLICATION_JSON).body(snapshot.getBody());
+	}
+
+	/**
+	 * Gets a page of the catalog. Selected when the client sends a page size, the
+	 * next page is requested by echoing back nextAfterName and nextAfterId.
+	 * 
+	 * @param size       The page size.
+	 * @param afterName  The name of the last product already received.
+	 * @param afterId    The id of the last product already received.
+	 * @param status     Optional status filter.
+	 * @param categoryId Optional category filter.
+	 * @param minPrice   Optional lowest price.
+	 * @param maxPrice   Optional highest price.
+	 * @param request    The web request, used to match If-None-Match.
+	 * @return The page of products as JSON, or 304 if the client copy is current.
+	 */
+	@GetMapping(params = "size")
+	public ResponseEntity<byte[]> getProductPage(@RequestParam int size, @RequestParam(required = false) String afterName,
+			@RequestParam(required = false) UUID afterId, @RequestParam(required = false) ProductStatus status,
+			@RequestParam(required = false) UUID categoryId, @RequestParam(required = false) Double minPrice,
+			@RequestParam(required = false) Double maxPrice, WebRequest request) {
+		return snapshotResponse(
+				productViewService.getPage(status, categoryId, minPrice, maxPrice, afterName, afterId, size), request);
 	}
 
 	/**
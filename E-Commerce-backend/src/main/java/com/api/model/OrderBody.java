@@ -0,0 +1,42 @@
+package com.api.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+/**
+ * The information required to place an order.
+ */
+public class OrderBody {
+
+	/** The address of the user to ship to. */
+	@NotNull
+	private UUID addressId;
+	/** The lines of the order. */
+	@NotEmpty
+	@Size(max = 100)
+	@Valid
+	private List<OrderLineBody> lines = new ArrayList<>();
+
+	public UUID getAddressId() {
+		return addressId;
+	}
+
+	public void setAddressId(UUID addressId) {
+		this.addressId = addressId;
+	}
+
+	public List<OrderLineBody> getLines() {
+		return lines;
+	}
+
+	public void setLines(List<OrderLineBody> lines) {
+		this.lines = lines;
+	}
+
+}
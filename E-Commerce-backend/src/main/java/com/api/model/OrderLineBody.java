@@ -0,0 +1,39 @@
+package com.api.model;
+
+import java.util.UUID;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * A line of an order: an inventory entry and how many of it.
+ */
+public class OrderLineBody {
+
+	/** The inventory entry, a product in a given model and color. */
+	@NotNull
+	private UUID inventoryId;
+	/** How many are bought. */
+	@NotNull
+	@Min(1)
+	@Max(1000)
+	private Integer quantity;
+
+	public UUID getInventoryId() {
+		return inventoryId;
+	}
+
+	public void setInventoryId(UUID inventoryId) {
+		this.inventoryId = inventoryId;
+	}
+
+	public Integer getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(Integer quantity) {
+		this.quantity = quantity;
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.api.model;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A single page of a user's order history, newest first, together with the
+ * cursor needed to request the following page.
+ */
+public class OrderPage {
+
+	/** The orders in this page. */
+	private List<OrderSummary> items;
+	/** Is there at least one more page after this one? */
+	private boolean hasMore;
+	/** When the last order in this page was placed, to be sent back as afterTimestamp. */
+	private Long nextAfterTimestamp;
+	/** The id of the last order in this page, to be sent back as afterId. */
+	private UUID nextAfterId;
+
+	/**
+	 * Default constructor.
+	 */
+	public OrderPage() {
+	}
+
+	/**
+	 * Creates a page, deriving the next cursor from the last item.
+	 * 
+	 * @param items   The orders in this page.
+	 * @param hasMore Is there a following page?
+	 */
+	public OrderPage(List<OrderSummary> items, boolean hasMore) {
+		this.items = items;
+		this.hasMore = hasMore;
+		if (hasMore && !items.isEmpty()) {
+			OrderSummary last = items.get(items.size() - 1);
+			this.nextAfterTimestamp = last.getCreatedTimestamp().getTime();
+			this.nextAfterId = last.getId();
+		}
+	}
+
+	public List<OrderSummary> getItems() {
+		return items;
+	}
+
+	public void setItems(List<OrderSummary> items) {
+		this.items = items;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+	public void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+
+	public Long getNextAfterTimestamp() {
+		return nextAfterTimestamp;
+	}
+
+	public void setNextAfterTimestamp(Long nextAfterTimestamp) {
+		this.nextAfterTimestamp = nextAfterTimestamp;
+	}
+
+	public UUID getNextAfterId() {
+		return nextAfterId;
+	}
+
+	public void setNextAfterId(UUID nextAfterId) {
+		this.nextAfterId = nextAfterId;
+	}
+
+}
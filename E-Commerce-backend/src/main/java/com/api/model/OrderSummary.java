@@ -0,0 +1,77 @@
+package com.api.model;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * A flat summary of an order for the order history, read in one query
+ * without loading the order entities.
+ */
+public class OrderSummary {
+
+	/** The order id. */
+	private UUID id;
+	/** When the order was placed. */
+	private Timestamp createdTimestamp;
+	/** The first line of the shipping address. */
+	private String addressLine1;
+	/** The city shipped to. */
+	private String city;
+	/** The country shipped to. */
+	private String country;
+	/** The number of lines. */
+	private long lineCount;
+	/** The number of items over all lines. */
+	private long itemCount;
+
+	/**
+	 * Creates a summary, used by the order history query.
+	 * 
+	 * @param id               The order id.
+	 * @param createdTimestamp When the order was placed.
+	 * @param addressLine1     The first line of the shipping address.
+	 * @param city             The city shipped to.
+	 * @param country          The country shipped to.
+	 * @param lineCount        The number of lines.
+	 * @param itemCount        The number of items.
+	 */
+	public OrderSummary(UUID id, Timestamp createdTimestamp, String addressLine1, String city, String country,
+			Long lineCount, Long itemCount) {
+		this.id = id;
+		this.createdTimestamp = createdTimestamp;
+		this.addressLine1 = addressLine1;
+		this.city = city;
+		this.country = country;
+		this.lineCount = lineCount == null ? 0 : lineCount;
+		this.itemCount = itemCount == null ? 0 : itemCount;
+	}
+
+	public UUID getId() {
+		return id;
+	}
+
+	public Timestamp getCreatedTimestamp() {
+		return createdTimestamp;
+	}
+
+	public String getAddressLine1() {
+		return addressLine1;
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	public String getCountry() {
+		return country;
+	}
+
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	public long getItemCount() {
+		return itemCount;
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.api.model;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.model.Product;
+
+/**
+ * A single page of the product catalog together with the cursor needed to
+ * request the following page.
+ */
+public class ProductPage {
+
+	/** The products in this page. */
+	private List<Product> items;
+	/** Is there at least one more page after this one? */
+	private boolean hasMore;
+	/** The name of the last product in this page, to be sent back as afterName. */
+	private String nextAfterName;
+	/** The id of the last product in this page, to be sent back as afterId. */
+	private UUID nextAfterId;
+
+	/**
+	 * Default constructor.
+	 */
+	public ProductPage() {
+	}
+
+	/**
+	 * Creates a page, deriving the next cursor from the last item.
+	 * 
+	 * @param items   The products in this page.
+	 * @param hasMore Is there a following page?
+	 */
+	public ProductPage(List<Product> items, boolean hasMore) {
+		this.items = items;
+		this.hasMore = hasMore;
+		if (hasMore && !items.isEmpty()) {
+			Product last = items.get(items.size() - 1);
+			this.nextAfterName = last.getName();
+			this.nextAfterId = last.getId();
+		}
+	}
+
+	public List<Product> getItems() {
+		return items;
+	}
+
+	public void setItems(List<Product> items) {
+		this.items = items;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+	public void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+
+	public String getNextAfterName() {
+		return nextAfterName;
+	}
+
+	public void setNextAfterName(String nextAfterName) {
+		this.nextAfterName = nextAfterName;
+	}
+
+	public UUID getNextAfterId() {
+		return nextAfterId;
+	}
+
+	public void setNextAfterId(UUID nextAfterId) {
+		this.nextAfterId = nextAfterId;
+	}
+
+}
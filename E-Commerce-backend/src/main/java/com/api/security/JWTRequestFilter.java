@@ -18,9 +18,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.model.LocalUser;
 import com.repository.LocalUserDAO;
 import com.service.JWTService;
+import com.service.PrincipalCache;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -77,15 +79,19 @@ public class JWTRequestFilter extends OncePerRequestFilter implements ChannelInt
   private JWTService jwtService;
   /** The Local User DAO. */
   private LocalUserDAO localUserDAO;
+  /** The cache of authenticated users. */
+  private PrincipalCache principalCache;
 
   /**
    * Constructor for spring injection.
    * @param jwtService
    * @param localUserDAO
+   * @param principalCache
    */
-  public JWTRequestFilter(JWTService jwtService, LocalUserDAO localUserDAO) {
+  public JWTRequestFilter(JWTService jwtService, LocalUserDAO localUserDAO, PrincipalCache principalCache) {
     this.jwtService = jwtService;
     this.localUserDAO = localUserDAO;
+    this.principalCache = principalCache;
   }
 
   /**
@@ -103,7 +109,9 @@ public class JWTRequestFilter extends OncePerRequestFilter implements ChannelInt
 
   /**
    * Method to authenticate a token and return the Authentication object
-   * written to the spring security context.
+   * written to the spring security context. The user is looked up through
+   * the principal cache, so only the first request with a token hits the
+   * database.
    * @param token The token to test.
    * @return The Authentication object if set.
    */
@@ -111,11 +119,15 @@ public class JWTRequestFilter extends OncePerRequestFilter implements ChannelInt
     if (token != null && token.startsWith("Bearer ")) {
       token = token.substring(7);
       try {
-        String username = jwtService.getUsername(token);
-        Optional<LocalUser> opUser = localUserDAO.findByUsernameIgnoreCase(username);
-        if (opUser.isPresent()) {
-          LocalUser user = opUser.get();
-          if (user.isEmailVerified()) {
+        DecodedJWT jwt = jwtService.verifyJWT(token);
+        String username = jwtService.getUsername(jwt);
+        if (username != null) {
+          String tokenId = jwt.getId() != null ? jwt.getId() : jwt.getSignature();
+          LocalUser user = principalCache.get(username, tokenId, jwt.getExpiresAtAsInstant(), () -> {
+            Optional<LocalUser> opUser = localUserDAO.findByUsernameIgnoreCase(username);
+            return opUser.isPresent() && opUser.get().isEmailVerified() ? opUser.get() : null;
+          });
+          if (user != null) {
             UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null, new ArrayList());
             SecurityContextHolder.getContext().setAuthentication(authentication);
             return authentication;
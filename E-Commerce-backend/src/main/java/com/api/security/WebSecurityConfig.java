@@ -1,11 +1,21 @@
 package com.api.security;
 
+import static org.springframework.security.web.util.matcher.AntPathRequestMatcher.antMatcher;
+import static org.springframework.security.web.util.matcher.RegexRequestMatcher.regexMatcher;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.DefaultSecurityFilterChain;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 @Configuration
 @ComponentScan(basePackages = { "com.auth0.jwt.exceptions.JWTDecodeException" })
@@ -31,17 +41,71 @@ public class WebSecurityConfig {
 //	}
 	
 	
+	/**
+	 * Anonymous catalog reads: the product list and pages, the categories and
+	 * the images. Product ids are UUIDs, so /product/user is not matched.
+	 */
+	private static final RequestMatcher PUBLIC_READS = new OrRequestMatcher(
+			regexMatcher(HttpMethod.GET, "^/product(\\?.*)?$"),
+			regexMatcher(HttpMethod.GET, "^/product/[0-9a-fA-F-]{36}(\\?.*)?$"),
+			antMatcher(HttpMethod.GET, "/categories"),
+			antMatcher(HttpMethod.GET, "/image/**"));
+
+	/**
+	 * Chain for the public reads, with no filters at all. These requests never
+	 * touch the security context, the session or the JWT filter.
+	 * 
+	 * @return The chain.
+	 */
+	@Bean
+	@Order(1)
+	public SecurityFilterChain publicReadFilterChain() {
+		return new DefaultSecurityFilterChain(PUBLIC_READS);
+	}
+
+	/**
+	 * Chain for every other request. The JWT filter resolves the user and the
+	 * rules below decide who may call what.
+	 * 
+	 * @param http The security builder.
+	 * @return The chain.
+	 * @throws Exception Thrown if the chain could not be built.
+	 */
 	@Bean
+	@Order(2)
 	public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
 		http.csrf(csrf -> csrf.disable());
+		http.sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+		http.requestCache(cache -> cache.disable());
 		http.addFilterBefore(jwtRequestFilter, AuthorizationFilter.class);
-		
-		
+
 		http.authorizeHttpRequests(auth -> auth
-	            .requestMatchers("**").permitAll()
-	            .anyRequest().authenticated()
-	        );
+				.requestMatchers(HttpMethod.POST, "/auth/register", "/auth/login", "/auth/verify", "/auth/forgot",
+						"/auth/reset").permitAll()
+				.requestMatchers("/error", "/websocket", "/websocket/**", "/actuator/health").permitAll()
+				.requestMatchers(HttpMethod.GET, "/product/user").authenticated()
+				.requestMatchers(HttpMethod.GET, "/product", "/product/*", "/categories", "/image/**").permitAll()
+				.requestMatchers("/auth/me", "/user/**", "/order", "/order/**", "/cart", "/cart/**").authenticated()
+				.requestMatchers(HttpMethod.POST, "/product", "/categories", "/image/**").authenticated()
+				.requestMatchers(HttpMethod.PATCH, "/product/**").authenticated()
+				.requestMatchers(HttpMethod.DELETE, "/product/**", "/image/**").authenticated()
+				.anyRequest().authenticated());
 
 		return http.build();
 	}
+
+	/**
+	 * Keeps the JWT filter out of the servlet filters Spring Boot registers for
+	 * every bean, so it only runs inside the security chain above and not for
+	 * the public reads.
+	 * 
+	 * @param jwtRequestFilter The filter.
+	 * @return The disabled registration.
+	 */
+	@Bean
+	public FilterRegistrationBean<JWTRequestFilter> jwtRequestFilterRegistration(JWTRequestFilter jwtRequestFilter) {
+		FilterRegistrationBean<JWTRequestFilter> registration = new FilterRegistrationBean<>(jwtRequestFilter);
+		registration.setEnabled(false);
+		return registration;
+	}
 }
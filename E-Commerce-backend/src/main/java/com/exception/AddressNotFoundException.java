@@ -0,0 +1,7 @@
+package com.exception;
+
+/**
+ * Exception to highlight an address does not exist or belongs to another user.
+ */
+public class AddressNotFoundException extends Exception {
+}
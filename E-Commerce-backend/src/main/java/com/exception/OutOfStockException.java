@@ -0,0 +1,31 @@
+package com.exception;
+
+import java.util.UUID;
+
+/**
+ * Exception to highlight an order line asks for more than is in stock.
+ */
+public class OutOfStockException extends Exception {
+
+	/** The inventory entry that is short. */
+	private UUID inventoryId;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param inventoryId The inventory entry that is short.
+	 */
+	public OutOfStockException(UUID inventoryId) {
+		this.inventoryId = inventoryId;
+	}
+
+	/**
+	 * Gets the inventory entry that is short.
+	 * 
+	 * @return The inventory id.
+	 */
+	public UUID getInventoryId() {
+		return inventoryId;
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.exception;
+
+/**
+ * Exception to highlight a client went over a rate limit.
+ */
+public class TooManyRequestsException extends Exception {
+
+	/** How long until the client may try again. */
+	private long retryAfterSeconds;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param retryAfterSeconds How long until the client may try again.
+	 */
+	public TooManyRequestsException(long retryAfterSeconds) {
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * How long until the client may try again?
+	 * 
+	 * @return The delay in seconds.
+	 */
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+}
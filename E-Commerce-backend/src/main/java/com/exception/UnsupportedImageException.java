@@ -0,0 +1,31 @@
+package com.exception;
+
+/**
+ * Exception to highlight an upload whose bytes are not an image of an allowed
+ * type.
+ */
+public class UnsupportedImageException extends Exception {
+
+	/** The name the file was uploaded with. */
+	private String fileName;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param fileName The name the file was uploaded with.
+	 */
+	public UnsupportedImageException(String fileName) {
+		super("Not an allowed image type: " + fileName);
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Gets the name the file was uploaded with.
+	 *
+	 * @return The file name.
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.model;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+/**
+ * A request sent with an idempotency key and the response it got. The unique
+ * key lets only one execution claim it across instances, retries are answered
+ * from the stored response.
+ */
+@Entity
+@Table(name = "idempotency_record", uniqueConstraints = {
+		@UniqueConstraint(name = "uk_idempotency_record_key", columnNames = { "user_id", "idempotency_key" }) },
+		indexes = { @Index(name = "idx_idempotency_record_created", columnList = "created_timestamp") })
+public class IdempotencyRecord {
+
+	/** The unique id for the record. */
+	@Id
+	@GeneratedValue(strategy = GenerationType.UUID)
+	@Column(name = "id", nullable = false)
+	private UUID id;
+	/** The user that sent the request, keys are only unique per user. */
+	@Column(name = "user_id", nullable = false)
+	private UUID userId;
+	/** The key chosen by the client. */
+	@Column(name = "idempotency_key", nullable = false)
+	private String idempotencyKey;
+	/** The hash of the request body, a key may not be reused for another body. */
+	@Column(name = "request_hash", nullable = false, length = 64)
+	private String requestHash;
+	/** Whether the request is still executing. */
+	@Enumerated(EnumType.STRING)
+	@Column(name = "status", nullable = false, length = 16)
+	private IdempotencyStatus status = IdempotencyStatus.IN_FLIGHT;
+	/** The HTTP status of the response. */
+	@Column(name = "response_status")
+	private Integer responseStatus;
+	/** The JSON body of the response. */
+	@Lob
+	@Column(name = "response_body")
+	private String responseBody;
+	/** When the current execution claimed the key, a stale claim may be taken over. */
+	@Column(name = "claimed_at", nullable = false)
+	private Timestamp claimedAt;
+	/** When the key was first seen. */
+	@Column(name = "created_timestamp", nullable = false)
+	private Timestamp createdTimestamp;
+
+	public UUID getId() {
+		return id;
+	}
+
+	public void setId(UUID id) {
+		this.id = id;
+	}
+
+	public UUID getUserId() {
+		return userId;
+	}
+
+	public void setUserId(UUID userId) {
+		this.userId = userId;
+	}
+
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+
+	public String getRequestHash() {
+		return requestHash;
+	}
+
+	public void setRequestHash(String requestHash) {
+		this.requestHash = requestHash;
+	}
+
+	public IdempotencyStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(IdempotencyStatus status) {
+		this.status = status;
+	}
+
+	public Integer getResponseStatus() {
+		return responseStatus;
+	}
+
+	public void setResponseStatus(Integer responseStatus) {
+		this.responseStatus = responseStatus;
+	}
+
+	public String getResponseBody() {
+		return responseBody;
+	}
+
+	public void setResponseBody(String responseBody) {
+		this.responseBody = responseBody;
+	}
+
+	public Timestamp getClaimedAt() {
+		return claimedAt;
+	}
+
+	public void setClaimedAt(Timestamp claimedAt) {
+		this.claimedAt = claimedAt;
+	}
+
+	public Timestamp getCreatedTimestamp() {
+		return createdTimestamp;
+	}
+
+	public void setCreatedTimestamp(Timestamp createdTimestamp) {
+		this.createdTimestamp = createdTimestamp;
+	}
+
+}
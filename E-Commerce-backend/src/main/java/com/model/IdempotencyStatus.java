@@ -0,0 +1,9 @@
+package com.model;
+
+/**
+ * The state of a request sent with an idempotency key.
+ */
+public enum IdempotencyStatus {
+    IN_FLIGHT,
+    COMPLETED
+}
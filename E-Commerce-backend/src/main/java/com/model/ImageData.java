@@ -1,5 +1,6 @@
 package com.model;
 
+import java.sql.Timestamp;
 import java.util.UUID;
 
 import jakarta.persistence.Column;
@@ -7,29 +8,78 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
+/**
+ * Index entry for an image: maps a holder, type, file name and width to the
+ * immutable blob, keyed by its SHA-256, that holds the bytes. The uploaded
+ * original has width 0, resized derivatives have their pixel width.
+ */
 @Entity
-@Table(name = "product_image")
+@Table(name = "product_image",
+		uniqueConstraints = @UniqueConstraint(columnNames = { "holder_id", "type", "name", "width" }),
+		indexes = @Index(name = "idx_product_image_hash", columnList = "hash"))
 public class ImageData {
 
+    /** The width recorded for the uploaded original. */
+    public static final int ORIGINAL_WIDTH = 0;
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
 
+    /** The id of the product or other entity the image belongs to. */
+    @Column(name = "holder_id", nullable = false)
     private String holderId;
 
+    /** The image type, such as gallery or thumbnail. */
+    @Column(name = "type", nullable = false)
     private String type;
 
+    /** The file name the image was uploaded with. */
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    /** The width of a resized derivative, 0 for the uploaded original. */
+    @Column(name = "width", nullable = false)
+    private Integer width = ORIGINAL_WIDTH;
+
+    /** The hex SHA-256 of the image bytes, the key of the blob. */
+    @Column(name = "hash", nullable = false, length = 64)
+    private String hash;
+
+    /** The size of the image in bytes. */
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    /** The media type of the image. */
+    @Column(name = "content_type")
+    private String contentType;
+
+    /** The path of the blob relative to the store root. */
     @Column(name = "url", nullable = false)
     private String url;
 
-	public String getName() {
+    /** The timestamp of when this name was last written. */
+    @Column(name = "created_timestamp", nullable = false)
+    private Timestamp createdTimestamp;
+
+	public UUID getId() {
+		return id;
+	}
+
+	public void setId(UUID id) {
+		this.id = id;
+	}
+
+	public String getHolderId() {
 		return holderId;
 	}
 
-	public void setName(String name) {
-		this.holderId = name;
+	public void setHolderId(String holderId) {
+		this.holderId = holderId;
 	}
 
 	public String getType() {
@@ -40,6 +90,46 @@ public class ImageData {
 		this.type = type;
 	}
 
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getWidth() {
+		return width;
+	}
+
+	public void setWidth(Integer width) {
+		this.width = width;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public void setSize(Long size) {
+		this.size = size;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
 	public String getUrl() {
 		return url;
 	}
@@ -48,5 +138,12 @@ public class ImageData {
 		this.url = url;
 	}
 
+	public Timestamp getCreatedTimestamp() {
+		return createdTimestamp;
+	}
+
+	public void setCreatedTimestamp(Timestamp createdTimestamp) {
+		this.createdTimestamp = createdTimestamp;
+	}
 
-}
\ No newline at end of file
+}
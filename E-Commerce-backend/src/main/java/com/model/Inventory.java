@@ -2,6 +2,8 @@ package com.model;
 
 import java.util.UUID;
 
+import org.hibernate.annotations.DynamicUpdate;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import jakarta.persistence.Column;
@@ -15,9 +17,14 @@ import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
 
 /**
- * Inventory of a product that available for purchase.
+ * Inventory of a product that available for purchase. Only the changed
+ * columns are written. The quantity is never set on a loaded entry, it only
+ * changes through the conditional and delta updates of InventoryDAO, so
+ * saving an edited entry does not overwrite stock taken by orders since it
+ * was loaded.
  */
 @Entity
+@DynamicUpdate
 @Table(name = "inventory")
 public class Inventory {
 
@@ -54,6 +61,16 @@ public class Inventory {
 	@Column(name = "color")
 	private String color;
 
+	/** The node keeping this entry's stock in memory, while it is hot. */
+	@JsonIgnore
+	@Column(name = "hot_owner")
+	private String hotOwner;
+
+	/** The last hot inventory journal checkpoint written to the quantity. */
+	@JsonIgnore
+	@Column(name = "journal_checkpoint")
+	private Long journalCheckpoint;
+
 	public UUID getId() {
 		return id;
 	}
@@ -94,7 +111,20 @@ public class Inventory {
 		this.color = color;
 	}
 
-	
+	public String getHotOwner() {
+		return hotOwner;
+	}
+
+	public void setHotOwner(String hotOwner) {
+		this.hotOwner = hotOwner;
+	}
 
+	public Long getJournalCheckpoint() {
+		return journalCheckpoint;
+	}
+
+	public void setJournalCheckpoint(Long journalCheckpoint) {
+		this.journalCheckpoint = journalCheckpoint;
+	}
 
 }
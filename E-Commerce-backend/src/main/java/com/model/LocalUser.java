@@ -3,6 +3,7 @@ package com.model;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
 import org.springframework.security.core.GrantedAuthority;
@@ -42,6 +43,18 @@ public class LocalUser implements UserDetails {
 	/** The email of the user. */
 	@Column(name = "email", nullable = false, unique = true, length = 320)
 	private String email;
+	/**
+	 * The username in lower case, unique so no two users differ only by case.
+	 * Nullable only for rows written before it existed, until they are
+	 * backfilled.
+	 */
+	@JsonIgnore
+	@Column(name = "username_normalized", unique = true)
+	private String usernameNormalized;
+	/** The email in lower case, unique so no two users differ only by case. */
+	@JsonIgnore
+	@Column(name = "email_normalized", unique = true, length = 320)
+	private String emailNormalized;
 	/** The first name of the user. */
 	@Column(name = "first_name", nullable = false)
 	private String firstName;
@@ -167,6 +180,7 @@ public class LocalUser implements UserDetails {
 	 */
 	public void setEmail(String email) {
 		this.email = email;
+		this.emailNormalized = normalize(email);
 	}
 
 	/**
@@ -243,6 +257,7 @@ public class LocalUser implements UserDetails {
 	 */
 	public void setUsername(String username) {
 		this.username = username;
+		this.usernameNormalized = normalize(username);
 	}
 
 	/**
@@ -263,4 +278,14 @@ public class LocalUser implements UserDetails {
 		this.id = id;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Normalizes a username or email for the case insensitive lookups.
+	 * 
+	 * @param value The username or email.
+	 * @return The value in lower case.
+	 */
+	public static String normalize(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+
+}
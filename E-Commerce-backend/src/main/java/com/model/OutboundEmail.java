@@ -0,0 +1,147 @@
+package com.model;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+/**
+ * An email waiting in the outbox to be sent by the dispatcher.
+ */
+@Entity
+@Table(name = "outbound_email", indexes = {
+		@Index(name = "idx_outbound_email_due", columnList = "status, next_attempt_at"),
+		@Index(name = "idx_outbound_email_claim", columnList = "claim_id") })
+public class OutboundEmail {
+
+	/** The unique id for the record. */
+	@Id
+	@GeneratedValue(strategy = GenerationType.UUID)
+	@Column(name = "id", nullable = false)
+	private UUID id;
+	/** The recipient address. */
+	@Column(name = "recipient", nullable = false)
+	private String recipient;
+	/** The subject line. */
+	@Column(name = "subject", nullable = false)
+	private String subject;
+	/**
+	 * The plain text body. It holds a usable token, so it is blanked once the
+	 * email is dead-lettered.
+	 */
+	@Lob
+	@Column(name = "body", nullable = false)
+	private String body;
+	/** Whether the email is waiting or was given up on. */
+	@Enumerated(EnumType.STRING)
+	@Column(name = "status", nullable = false, length = 16)
+	private OutboundEmailStatus status = OutboundEmailStatus.PENDING;
+	/** How many sends have failed. */
+	@Column(name = "attempts", nullable = false)
+	private int attempts;
+	/**
+	 * When the email may next be sent, when the current claim lapses, or when
+	 * it was dead-lettered.
+	 */
+	@Column(name = "next_attempt_at", nullable = false)
+	private Timestamp nextAttemptAt;
+	/** The batch that claimed the email. */
+	@Column(name = "claim_id")
+	private UUID claimId;
+	/** The reason the last send failed. */
+	@Column(name = "last_error", length = 1000)
+	private String lastError;
+	/** When the email was queued. */
+	@Column(name = "created_timestamp", nullable = false)
+	private Timestamp createdTimestamp;
+
+	public UUID getId() {
+		return id;
+	}
+
+	public void setId(UUID id) {
+		this.id = id;
+	}
+
+	public String getRecipient() {
+		return recipient;
+	}
+
+	public void setRecipient(String recipient) {
+		this.recipient = recipient;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public void setSubject(String subject) {
+		this.subject = subject;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public void setBody(String body) {
+		this.body = body;
+	}
+
+	public OutboundEmailStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(OutboundEmailStatus status) {
+		this.status = status;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public Timestamp getNextAttemptAt() {
+		return nextAttemptAt;
+	}
+
+	public void setNextAttemptAt(Timestamp nextAttemptAt) {
+		this.nextAttemptAt = nextAttemptAt;
+	}
+
+	public UUID getClaimId() {
+		return claimId;
+	}
+
+	public void setClaimId(UUID claimId) {
+		this.claimId = claimId;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	public Timestamp getCreatedTimestamp() {
+		return createdTimestamp;
+	}
+
+	public void setCreatedTimestamp(Timestamp createdTimestamp) {
+		this.createdTimestamp = createdTimestamp;
+	}
+
+}
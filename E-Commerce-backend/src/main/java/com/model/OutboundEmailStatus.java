@@ -0,0 +1,9 @@
+package com.model;
+
+/**
+ * The state of an email in the outbox. Sent emails are removed.
+ */
+public enum OutboundEmailStatus {
+    PENDING,
+    DEAD
+}
@@ -0,0 +1,84 @@
+package com.model;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Stock set aside for a user's cart until it expires. The row only keeps ids,
+ * so millions of holds stay cheap to store and to reload at startup.
+ */
+@Entity
+@Table(name = "stock_hold", indexes = {
+		@Index(name = "idx_stock_hold_user", columnList = "user_id, inventory_id") })
+public class StockHold {
+
+	/** The unique id for the hold. */
+	@Id
+	@GeneratedValue(strategy = GenerationType.UUID)
+	@Column(name = "id", nullable = false)
+	private UUID id;
+	/** The user holding the stock. */
+	@JsonIgnore
+	@Column(name = "user_id", nullable = false)
+	private UUID userId;
+	/** The inventory entry held. */
+	@Column(name = "inventory_id", nullable = false)
+	private UUID inventoryId;
+	/** How many are held. */
+	@Column(name = "quantity", nullable = false)
+	private int quantity;
+	/** When the stock goes back on sale. */
+	@Column(name = "expires_at", nullable = false)
+	private Timestamp expiresAt;
+
+	public UUID getId() {
+		return id;
+	}
+
+	public void setId(UUID id) {
+		this.id = id;
+	}
+
+	public UUID getUserId() {
+		return userId;
+	}
+
+	public void setUserId(UUID userId) {
+		this.userId = userId;
+	}
+
+	public UUID getInventoryId() {
+		return inventoryId;
+	}
+
+	public void setInventoryId(UUID inventoryId) {
+		this.inventoryId = inventoryId;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	public Timestamp getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(Timestamp expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+}
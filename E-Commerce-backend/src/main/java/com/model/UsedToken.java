@@ -0,0 +1,42 @@
+package com.model;
+
+import java.sql.Timestamp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * A single use token that has been redeemed, kept until the token expires.
+ */
+@Entity
+@Table(name = "used_token", indexes = @Index(name = "idx_used_token_expires_at", columnList = "expires_at"))
+public class UsedToken {
+
+	/** The SHA-256 of the token, the token itself is not stored. */
+	@Id
+	@Column(name = "token_hash", nullable = false, length = 64)
+	private String tokenHash;
+	/** When the token expires and the record can be purged. */
+	@Column(name = "expires_at", nullable = false)
+	private Timestamp expiresAt;
+
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	public void setTokenHash(String tokenHash) {
+		this.tokenHash = tokenHash;
+	}
+
+	public Timestamp getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(Timestamp expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+}
@@ -5,10 +5,11 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
-import jakarta.persistence.Lob;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
 import java.sql.Timestamp;
 import java.util.UUID;
@@ -17,7 +18,9 @@ import java.util.UUID;
  * Token that has been sent to the users email for verification.
  */
 @Entity
-@Table(name = "verification_token")
+@Table(name = "verification_token", indexes = {
+		@Index(name = "idx_verification_token_user_created", columnList = "user_id, created_timestamp"),
+		@Index(name = "idx_verification_token_expires_at", columnList = "expires_at") })
 public class VerificationToken {
 
 	/** The unique id for the record. */
@@ -25,13 +28,22 @@ public class VerificationToken {
 	@GeneratedValue(strategy = GenerationType.UUID)
 	@Column(name = "id", nullable = false)
 	private UUID id;
-	/** The token that was sent to the user. */
-	@Lob
-	@Column(name = "token", nullable = false, unique = true)
+	/** The token that was sent to the user, only known when it is created. */
+	@Transient
 	private String token;
+	/**
+	 * The SHA-256 of the token, which is what is stored and looked up. Nullable
+	 * in the schema so ddl-auto can add it to a populated table, rows from
+	 * before it existed are filled by VerificationTokenMigration.
+	 */
+	@Column(name = "token_hash", unique = true, length = 64)
+	private String tokenHash;
 	/** The timestamp of when the token was created. */
 	@Column(name = "created_timestamp", nullable = false)
 	private Timestamp createdTimestamp;
+	/** The timestamp of when the token expires and may be purged. */
+	@Column(name = "expires_at")
+	private Timestamp expiresAt;
 	/** The user this verification token is for. */
 	@ManyToOne(optional = false)
 	@JoinColumn(name = "user_id", nullable = false)
@@ -91,6 +103,42 @@ public class VerificationToken {
 		this.token = token;
 	}
 
+	/**
+	 * Gets the token hash.
+	 * 
+	 * @return The SHA-256 of the token.
+	 */
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	/**
+	 * Sets the token hash.
+	 * 
+	 * @param tokenHash The SHA-256 of the token.
+	 */
+	public void setTokenHash(String tokenHash) {
+		this.tokenHash = tokenHash;
+	}
+
+	/**
+	 * Gets when the token expires.
+	 * 
+	 * @return The timestamp.
+	 */
+	public Timestamp getExpiresAt() {
+		return expiresAt;
+	}
+
+	/**
+	 * Sets when the token expires.
+	 * 
+	 * @param expiresAt The timestamp.
+	 */
+	public void setExpiresAt(Timestamp expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
 	/**
 	 * Gets the id.
 	 * 
@@ -6,11 +6,13 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -19,7 +21,8 @@ import java.util.UUID;
  * Order generated from the website.
  */
 @Entity
-@Table(name = "web_order")
+@Table(name = "web_order", indexes = {
+		@Index(name = "idx_web_order_user_created", columnList = "user_id, created_timestamp, id") })
 public class WebOrder {
 
 	/** Unique id for the order. */
@@ -35,8 +38,14 @@ public class WebOrder {
 	@ManyToOne(optional = false)
 	@JoinColumn(name = "address_id", nullable = false)
 	private Address address;
+	/**
+	 * When the order was placed. Always set, the column is nullable only so it
+	 * can be added to a populated table, see WebOrderTimestampMigration.
+	 */
+	@Column(name = "created_timestamp")
+	private Timestamp createdTimestamp;
 	/** The quantities ordered. foe each product */
-	@OneToMany(mappedBy = "order", cascade = CascadeType.REMOVE, orphanRemoval = true)
+	@OneToMany(mappedBy = "order", cascade = { CascadeType.PERSIST, CascadeType.REMOVE }, orphanRemoval = true)
 	private List<WebOrderQuantities> quantities = new ArrayList<>();
 
 	/**
@@ -111,4 +120,22 @@ public class WebOrder {
 		this.id = id;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Gets when the order was placed.
+	 * 
+	 * @return The timestamp.
+	 */
+	public Timestamp getCreatedTimestamp() {
+		return createdTimestamp;
+	}
+
+	/**
+	 * Sets when the order was placed.
+	 * 
+	 * @param createdTimestamp The timestamp.
+	 */
+	public void setCreatedTimestamp(Timestamp createdTimestamp) {
+		this.createdTimestamp = createdTimestamp;
+	}
+
+}
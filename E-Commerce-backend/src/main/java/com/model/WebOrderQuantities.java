@@ -28,6 +28,12 @@ public class WebOrderQuantities {
   @ManyToOne(optional = false)
   @JoinColumn(name = "product_id", nullable = false)
   private Product product;
+  /**
+   * The inventory entry the stock was taken from, empty on older orders. Only
+   * the id is kept, so sellers can still delist an entry that has been ordered.
+   */
+  @Column(name = "inventory_id")
+  private UUID inventoryId;
   /** The quantity being ordered. */
   @Column(name = "quantity", nullable = false)
   private Integer quantity;
@@ -53,6 +59,22 @@ public class WebOrderQuantities {
     this.order = order;
   }
 
+  /**
+   * Gets the id of the inventory entry the stock was taken from.
+   * @return The inventory entry id.
+   */
+  public UUID getInventoryId() {
+    return inventoryId;
+  }
+
+  /**
+   * Sets the id of the inventory entry the stock was taken from.
+   * @param inventoryId The inventory entry id.
+   */
+  public void setInventoryId(UUID inventoryId) {
+    this.inventoryId = inventoryId;
+  }
+
   /**
    * Gets the quantity ordered.
    * @return The quantity.
@@ -0,0 +1,61 @@
+package com.repository;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import com.model.IdempotencyRecord;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Data Access Object for the requests sent with an idempotency key.
+ */
+public interface IdempotencyRecordDAO extends ListCrudRepository<IdempotencyRecord, UUID> {
+
+  Optional<IdempotencyRecord> findByUserIdAndIdempotencyKey(UUID userId, String idempotencyKey);
+
+  /**
+   * Takes over a claim whose execution stopped reporting back, for example
+   * because its instance died. Only one caller can win it.
+   * @param id The record id.
+   * @param now The time of the new claim.
+   * @param staleBefore Claims older than this may be taken over.
+   * @return 1 if this call took it over.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE IdempotencyRecord r SET r.claimedAt = :now WHERE r.id = :id"
+      + " AND r.status = com.model.IdempotencyStatus.IN_FLIGHT AND r.claimedAt < :staleBefore")
+  int takeOver(@Param("id") UUID id, @Param("now") Timestamp now, @Param("staleBefore") Timestamp staleBefore);
+
+  /**
+   * Stores the response of a request. Must run inside the caller's
+   * transaction, so the response commits with the work it describes.
+   * @param id The record id.
+   * @param responseStatus The HTTP status.
+   * @param responseBody The JSON body, may be null.
+   * @return 1 if stored.
+   */
+  @Modifying
+  @Query("UPDATE IdempotencyRecord r SET r.status = com.model.IdempotencyStatus.COMPLETED,"
+      + " r.responseStatus = :responseStatus, r.responseBody = :responseBody WHERE r.id = :id")
+  int complete(@Param("id") UUID id, @Param("responseStatus") int responseStatus,
+      @Param("responseBody") String responseBody);
+
+  /**
+   * Deletes every key older than the retention, in one statement.
+   * @param before The oldest creation time kept.
+   * @return The number of records deleted.
+   */
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM IdempotencyRecord r WHERE r.createdTimestamp < :before")
+  int deleteCreatedBefore(@Param("before") Timestamp before);
+
+}
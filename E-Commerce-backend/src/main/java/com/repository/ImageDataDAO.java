@@ -1,13 +1,27 @@
 package com.repository;
 
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.data.repository.ListCrudRepository;
 
 import com.model.ImageData;
 
+/**
+ * Data Access Object for the image index.
+ */
 public interface ImageDataDAO extends ListCrudRepository<ImageData, UUID>{
-		
+
+	List<ImageData> findByHolderIdAndTypeAndWidthOrderByName(String holderId, String type, Integer width);
+
+	Optional<ImageData> findByHolderIdAndTypeAndNameAndWidth(String holderId, String type, String name, Integer width);
+
+	List<ImageData> findByHolderIdAndTypeAndNameOrderByWidth(String holderId, String type, String name);
+
+	List<ImageData> findByHolderId(String holderId);
+
+	boolean existsByHash(String hash);
 
 }
@@ -2,15 +2,95 @@ package com.repository;
 
 import java.util.UUID;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import com.model.Inventory;
 
-/**
- * Data Access Object for the Address data.
- */
+import jakarta.transaction.Transactional;
+
 public interface InventoryDAO extends ListCrudRepository<Inventory, UUID> {
 
   Inventory findByProduct_id(UUID id);
 
+  /**
+   * Takes stock from an inventory entry if enough is left, in one conditional
+   * statement, so concurrent buyers never read and write back a stale count.
+   * Must run inside the caller's transaction.
+   * @param id The inventory id.
+   * @param quantity How many to take.
+   * @return 1 if the stock was taken, 0 if there is not enough or no such entry.
+   */
+  @Modifying
+  @Query("UPDATE Inventory i SET i.quantity = i.quantity - :quantity WHERE i.id = :id AND i.quantity >= :quantity")
+  int reserve(@Param("id") UUID id, @Param("quantity") int quantity);
+
+  /**
+   * Changes the stock of an inventory entry by a delta, without reading it.
+   * Must run inside the caller's transaction.
+   * @param id The inventory id.
+   * @param delta The change, negative to take stock.
+   * @return 1 if the entry exists.
+   */
+  @Modifying
+  @Query("UPDATE Inventory i SET i.quantity = i.quantity + :delta WHERE i.id = :id")
+  int adjust(@Param("id") UUID id, @Param("delta") int delta);
+
+  /**
+   * Changes the stock of an inventory entry by a seller's edit, without
+   * reading it. Orders may have taken stock since the seller saw it, so stock
+   * removed never takes the entry below zero. Must run inside the caller's
+   * transaction.
+   * @param id The inventory id.
+   * @param delta The change, negative to remove stock.
+   * @return 1 if the entry exists.
+   */
+  @Modifying
+  @Query("UPDATE Inventory i SET i.quantity = CASE WHEN i.quantity + :delta < 0 THEN 0 ELSE i.quantity + :delta END WHERE i.id = :id")
+  int adjustNotBelowZero(@Param("id") UUID id, @Param("delta") int delta);
+
+  /**
+   * Writes the journaled sales of a hot entry and the checkpoint they were
+   * journaled under in one statement, so a replay of the journal after a crash
+   * can tell they are already in. Must run inside the caller's transaction.
+   * @param id The inventory id.
+   * @param delta The change, negative to take stock.
+   * @param checkpoint The journal checkpoint.
+   * @return 1 if the entry exists.
+   */
+  @Modifying
+  @Query("UPDATE Inventory i SET i.quantity = i.quantity + :delta, i.journalCheckpoint = :checkpoint WHERE i.id = :id")
+  int adjustJournaled(@Param("id") UUID id, @Param("delta") int delta, @Param("checkpoint") long checkpoint);
+
+  /**
+   * Gets the last journal checkpoint written to an entry.
+   * @param id The inventory id.
+   * @return The checkpoint, null if none or no such entry.
+   */
+  @Query("SELECT i.journalCheckpoint FROM Inventory i WHERE i.id = :id")
+  Long findJournalCheckpoint(@Param("id") UUID id);
+
+  /**
+   * Leases an entry to a node keeping it hot, unless another node holds it.
+   * @param id The inventory id.
+   * @param owner The node.
+   * @return 1 if the node holds the lease.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE Inventory i SET i.hotOwner = :owner WHERE i.id = :id AND (i.hotOwner IS NULL OR i.hotOwner = :owner)")
+  int leaseHot(@Param("id") UUID id, @Param("owner") String owner);
+
+  /**
+   * Releases every entry leased to a node.
+   * @param owner The node.
+   * @return The number of entries released.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE Inventory i SET i.hotOwner = NULL WHERE i.hotOwner = :owner")
+  int releaseHot(@Param("owner") String owner);
+
 }
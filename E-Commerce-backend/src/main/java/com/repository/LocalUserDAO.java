@@ -1,9 +1,15 @@
 package com.repository;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import com.model.LocalUser;
 
+import jakarta.transaction.Transactional;
+
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -12,8 +18,122 @@ import java.util.UUID;
  */
 public interface LocalUserDAO extends ListCrudRepository<LocalUser, UUID> {
 
-  Optional<LocalUser> findByUsernameIgnoreCase(String username);
+  Optional<LocalUser> findByUsernameNormalized(String usernameNormalized);
+
+  Optional<LocalUser> findByEmailNormalized(String emailNormalized);
+
+  boolean existsByUsernameNormalizedOrEmailNormalized(String usernameNormalized, String emailNormalized);
+
+  /**
+   * The id, username and email of a user, all the backfill needs.
+   */
+  interface Unnormalized {
+    UUID getId();
+    String getUsername();
+    String getEmail();
+  }
+
+  /**
+   * Finds the users written before the normalized columns existed, by username
+   * in any case. The backfill leaves users that differ only by case from
+   * another one without the columns, they are found here until merged.
+   * @param usernameNormalized The username in lower case.
+   * @return The users.
+   */
+  @Query("SELECT u FROM LocalUser u WHERE u.usernameNormalized IS NULL AND LOWER(u.username) = :usernameNormalized")
+  List<LocalUser> findUnnormalizedByUsername(@Param("usernameNormalized") String usernameNormalized);
+
+  /**
+   * Finds the users written before the normalized columns existed, by email in
+   * any case.
+   * @param emailNormalized The email in lower case.
+   * @return The users.
+   */
+  @Query("SELECT u FROM LocalUser u WHERE u.emailNormalized IS NULL AND LOWER(u.email) = :emailNormalized")
+  List<LocalUser> findUnnormalizedByEmail(@Param("emailNormalized") String emailNormalized);
+
+  /**
+   * Finds a user by username in any case, through the normalized column, or
+   * among the users not yet normalized. A name matching several of those is
+   * ambiguous and finds nobody.
+   * @param username The username.
+   * @return The user, if any.
+   */
+  default Optional<LocalUser> findByUsernameIgnoreCase(String username) {
+    String usernameNormalized = LocalUser.normalize(username);
+    return findByUsernameNormalized(usernameNormalized)
+        .or(() -> single(findUnnormalizedByUsername(usernameNormalized)));
+  }
+
+  /**
+   * Finds a user by email in any case, through the normalized column, or among
+   * the users not yet normalized. An email matching several of those is
+   * ambiguous and finds nobody.
+   * @param email The email.
+   * @return The user, if any.
+   */
+  default Optional<LocalUser> findByEmailIgnoreCase(String email) {
+    String emailNormalized = LocalUser.normalize(email);
+    return findByEmailNormalized(emailNormalized).or(() -> single(findUnnormalizedByEmail(emailNormalized)));
+  }
+
+  /**
+   * Checks whether a username or email is taken, in any case. One query once
+   * the user is normalized, the users not yet normalized are checked after.
+   * @param username The username.
+   * @param email The email.
+   * @return True if either is taken.
+   */
+  default boolean existsByUsernameOrEmail(String username, String email) {
+    String usernameNormalized = LocalUser.normalize(username);
+    String emailNormalized = LocalUser.normalize(email);
+    return existsByUsernameNormalizedOrEmailNormalized(usernameNormalized, emailNormalized)
+        || !findUnnormalizedByUsername(usernameNormalized).isEmpty()
+        || !findUnnormalizedByEmail(emailNormalized).isEmpty();
+  }
+
+  /**
+   * Gets the only user of a list.
+   * @param users The users.
+   * @return The user, or empty if there is not exactly one.
+   */
+  private static Optional<LocalUser> single(List<LocalUser> users) {
+    return users.size() == 1 ? Optional.of(users.get(0)) : Optional.empty();
+  }
+
+  /**
+   * Finds the users written before the normalized columns existed.
+   * @return The users to normalize.
+   */
+  @Query("SELECT u.id AS id, u.username AS username, u.email AS email FROM LocalUser u"
+      + " WHERE u.usernameNormalized IS NULL OR u.emailNormalized IS NULL")
+  List<Unnormalized> findAllUnnormalized();
+
+  /**
+   * Fills the normalized columns of one user, in a transaction of its own so a
+   * conflicting user does not stop the others.
+   * @param id The user ID.
+   * @param usernameNormalized The username in lower case.
+   * @param emailNormalized The email in lower case.
+   * @return The number of users updated, 0 or 1.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE LocalUser u SET u.usernameNormalized = :usernameNormalized, u.emailNormalized = :emailNormalized"
+      + " WHERE u.id = :id")
+  int setNormalized(@Param("id") UUID id, @Param("usernameNormalized") String usernameNormalized,
+      @Param("emailNormalized") String emailNormalized);
 
-  Optional<LocalUser> findByEmailIgnoreCase(String email);
+  /**
+   * Replaces a password hash, unless it was changed since it was read.
+   * @param id The user ID.
+   * @param oldHash The hash that was read.
+   * @param newHash The replacement.
+   * @return The number of users updated, 0 or 1.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE LocalUser u SET u.password = :newHash WHERE u.id = :id AND u.password = :oldHash")
+  int replacePassword(@Param("id") UUID id, @Param("oldHash") String oldHash, @Param("newHash") String newHash);
 
-}
\ No newline at end of file
+}
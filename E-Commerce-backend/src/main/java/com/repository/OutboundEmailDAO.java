@@ -0,0 +1,89 @@
+package com.repository;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import com.model.OutboundEmail;
+import com.model.OutboundEmailStatus;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Data Access Object for the email outbox.
+ */
+public interface OutboundEmailDAO extends ListCrudRepository<OutboundEmail, UUID> {
+
+  /**
+   * Finds the ids of pending emails that are due, oldest first.
+   * @param now The current time.
+   * @param limit The batch size.
+   * @return The ids.
+   */
+  @Query("SELECT e.id FROM OutboundEmail e WHERE e.status = com.model.OutboundEmailStatus.PENDING"
+      + " AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt")
+  List<UUID> findDueIds(@Param("now") Timestamp now, Limit limit);
+
+  /**
+   * Claims due emails for a batch by pushing their next attempt past the lease.
+   * Emails another dispatcher claimed in the meantime are no longer due and are
+   * skipped.
+   * @param ids The due ids that were read.
+   * @param claimId The id of the batch.
+   * @param now The time the ids were read at.
+   * @param leaseUntil When the claim lapses if the batch never reports back.
+   * @return The number of emails claimed.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboundEmail e SET e.claimId = :claimId, e.nextAttemptAt = :leaseUntil WHERE e.id IN :ids"
+      + " AND e.status = com.model.OutboundEmailStatus.PENDING AND e.nextAttemptAt <= :now")
+  int claim(@Param("ids") Collection<UUID> ids, @Param("claimId") UUID claimId, @Param("now") Timestamp now,
+      @Param("leaseUntil") Timestamp leaseUntil);
+
+  List<OutboundEmail> findByClaimId(UUID claimId);
+
+  Optional<OutboundEmail> findFirstByStatusOrderByNextAttemptAt(OutboundEmailStatus status);
+
+  List<OutboundEmail> findByStatus(OutboundEmailStatus status);
+
+  /**
+   * Removes emails that were sent.
+   * @param ids The sent ids.
+   * @return The number of emails removed.
+   */
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM OutboundEmail e WHERE e.id IN :ids")
+  int deleteSent(@Param("ids") Collection<UUID> ids);
+
+  /**
+   * Blanks the body of dead-lettered emails, which may hold a usable token.
+   * @return The number of emails blanked.
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE OutboundEmail e SET e.body = '' WHERE e.status = com.model.OutboundEmailStatus.DEAD"
+      + " AND LENGTH(e.body) > 0")
+  int blankDead();
+
+  /**
+   * Removes emails dead-lettered before the given time.
+   * @param before The cutoff.
+   * @return The number of emails removed.
+   */
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM OutboundEmail e WHERE e.status = com.model.OutboundEmailStatus.DEAD"
+      + " AND e.nextAttemptAt < :before")
+  int deleteDeadBefore(@Param("before") Timestamp before);
+
+}
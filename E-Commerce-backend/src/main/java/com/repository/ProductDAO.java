@@ -1,14 +1,98 @@
 package com.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import com.model.Product;
+import com.model.ProductStatus;
 
 public interface ProductDAO extends ListCrudRepository<Product, UUID>{
 	
 	List<Product> findByUserId(UUID userId);
 
+	/**
+	 * Gets a single product with its inventory joined in. Categories are left to
+	 * fetchCategories, joining both collections at once would duplicate the
+	 * inventory rows.
+	 * 
+	 * @param id The product id.
+	 * @return The product if found.
+	 */
+	@EntityGraph(attributePaths = "inventory")
+	Optional<Product> findWithInventoryById(UUID id);
+
+	/**
+	 * Initialises the inventory of every given product in one statement.
+	 * 
+	 * @param ids The ids of products already loaded in the persistence context.
+	 * @return The same products with inventory loaded.
+	 */
+	@Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.inventory WHERE p.id IN :ids")
+	List<Product> fetchInventory(@Param("ids") Collection<UUID> ids);
+
+	/**
+	 * Initialises the categories of every given product in one statement.
+	 * 
+	 * @param ids The ids of products already loaded in the persistence context.
+	 * @return The same products with categories loaded.
+	 */
+	@Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.categories WHERE p.id IN :ids")
+	List<Product> fetchCategories(@Param("ids") Collection<UUID> ids);
+
+	/**
+	 * Gets the first page of the catalog ordered by name then id, applying the
+	 * optional filters. Any filter passed as null is ignored.
+	 * 
+	 * @param status     The status to match.
+	 * @param categoryId The category the product must belong to.
+	 * @param minPrice   The lowest inventory price accepted.
+	 * @param maxPrice   The highest inventory price accepted.
+	 * @param limit      The maximum number of rows to return.
+	 * @return The products of the first page.
+	 */
+	@Query("""
+			SELECT p FROM Product p
+			WHERE (:status IS NULL OR p.status = :status)
+			AND (:categoryId IS NULL OR EXISTS (SELECT c FROM Category c JOIN c.products cp WHERE cp = p AND c.id = :categoryId))
+			AND ((:minPrice IS NULL AND :maxPrice IS NULL) OR EXISTS (SELECT i FROM Inventory i WHERE i.product = p
+				AND (:minPrice IS NULL OR i.price >= :minPrice) AND (:maxPrice IS NULL OR i.price <= :maxPrice)))
+			ORDER BY p.name ASC, p.id ASC
+			""")
+	List<Product> findFirstPage(@Param("status") ProductStatus status, @Param("categoryId") UUID categoryId,
+			@Param("minPrice") Double minPrice, @Param("maxPrice") Double maxPrice, Limit limit);
+
+	/**
+	 * Gets the page of the catalog that follows the given cursor, seeking past the
+	 * last seen (name, id) pair instead of skipping rows with an offset.
+	 * 
+	 * @param afterName  The name of the last product already seen.
+	 * @param afterId    The id of the last product already seen.
+	 * @param status     The status to match.
+	 * @param categoryId The category the product must belong to.
+	 * @param minPrice   The lowest inventory price accepted.
+	 * @param maxPrice   The highest inventory price accepted.
+	 * @param limit      The maximum number of rows to return.
+	 * @return The products of the next page.
+	 */
+	@Query("""
+			SELECT p FROM Product p
+			WHERE (p.name > :afterName OR (p.name = :afterName AND p.id > :afterId))
+			AND (:status IS NULL OR p.status = :status)
+			AND (:categoryId IS NULL OR EXISTS (SELECT c FROM Category c JOIN c.products cp WHERE cp = p AND c.id = :categoryId))
+			AND ((:minPrice IS NULL AND :maxPrice IS NULL) OR EXISTS (SELECT i FROM Inventory i WHERE i.product = p
+				AND (:minPrice IS NULL OR i.price >= :minPrice) AND (:maxPrice IS NULL OR i.price <= :maxPrice)))
+			ORDER BY p.name ASC, p.id ASC
+			""")
+	List<Product> findPageAfter(@Param("afterName") String afterName, @Param("afterId") UUID afterId,
+			@Param("status") ProductStatus status, @Param("categoryId") UUID categoryId,
+			@Param("minPrice") Double minPrice, @Param("maxPrice") Double maxPrice, Limit limit);
+
 }
@@ -0,0 +1,61 @@
+package com.repository;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import com.model.StockHold;
+
+/**
+ * Data Access Object for the stock held by carts.
+ */
+public interface StockHoldDAO extends ListCrudRepository<StockHold, UUID> {
+
+  /**
+   * The id and expiry of a hold, all the expiry scheduler needs.
+   */
+  interface Deadline {
+    UUID getId();
+    Timestamp getExpiresAt();
+  }
+
+  /**
+   * Finds the deadlines of every hold, to schedule them again at startup.
+   * @return The deadlines.
+   */
+  @Query("SELECT h.id AS id, h.expiresAt AS expiresAt FROM StockHold h")
+  List<Deadline> findAllDeadlines();
+
+  /**
+   * Finds holds past their expiry, oldest first. Holds are only on the wheel of
+   * the node that made them, this lets any node give their stock back.
+   * @param now The current time.
+   * @param limit The most holds to return.
+   * @return The hold ids.
+   */
+  @Query("SELECT h.id FROM StockHold h WHERE h.expiresAt < :now ORDER BY h.expiresAt")
+  List<UUID> findOverdueIds(@Param("now") Timestamp now, Limit limit);
+
+  List<StockHold> findByUserIdOrderByExpiresAt(UUID userId);
+
+  List<StockHold> findByUserIdAndInventoryIdIn(UUID userId, Collection<UUID> inventoryIds);
+
+  /**
+   * Deletes a hold if it still exists. Only the caller that deletes it may
+   * give its stock back, so an expiry racing a checkout can not return the
+   * stock twice. Must run inside the caller's transaction.
+   * @param id The hold id.
+   * @return 1 if this call deleted it.
+   */
+  @Modifying
+  @Query("DELETE FROM StockHold h WHERE h.id = :id")
+  int deleteHold(@Param("id") UUID id);
+
+}
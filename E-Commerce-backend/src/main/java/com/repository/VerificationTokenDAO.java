@@ -1,23 +1,38 @@
 package com.repository;
 
-import java.util.List;
+import java.sql.Timestamp;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import com.model.LocalUser;
 import com.model.VerificationToken;
 
+import jakarta.transaction.Transactional;
+
 /**
  * Data Access Object for the VerificationToken data.
  */
 public interface VerificationTokenDAO extends ListCrudRepository<VerificationToken, UUID> {
 
-  Optional<VerificationToken> findByToken(String token);
+  Optional<VerificationToken> findByTokenHash(String tokenHash);
 
   void deleteByUser(LocalUser user);
-  
-  List<VerificationToken> findByUser_IdOrderByIdDesc(UUID id);
+
+  Optional<VerificationToken> findFirstByUser_IdOrderByCreatedTimestampDesc(UUID id);
+
+  /**
+   * Deletes every token that has expired, in one statement.
+   * @param now The current time.
+   * @return The number of tokens deleted.
+   */
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM VerificationToken t WHERE t.expiresAt < :now")
+  int deleteExpired(@Param("now") Timestamp now);
 
 }
@@ -1,15 +1,85 @@
 package com.repository;
 
+import java.sql.Timestamp;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.query.Param;
 
-import com.model.LocalUser;
+import com.api.model.OrderSummary;
 import com.model.WebOrder;
 
+import jakarta.transaction.Transactional;
+
 public interface WebOrderDAO extends ListCrudRepository<WebOrder, UUID> {
 
-	List<WebOrder> findByUser(LocalUser user);
+	long countByUser_Id(UUID userId);
+
+	/**
+	 * Gets the newest orders of a user as summaries, in one statement.
+	 * 
+	 * @param userId The user id.
+	 * @param limit  The maximum number of rows to return.
+	 * @return The summaries, newest first.
+	 */
+	@Query("""
+			SELECT new com.api.model.OrderSummary(o.id, o.createdTimestamp, a.addressLine1, a.city, a.country,
+				COUNT(q), SUM(q.quantity))
+			FROM WebOrder o JOIN o.address a LEFT JOIN o.quantities q
+			WHERE o.user.id = :userId
+			GROUP BY o.id, o.createdTimestamp, a.addressLine1, a.city, a.country
+			ORDER BY o.createdTimestamp DESC, o.id DESC
+			""")
+	List<OrderSummary> findFirstPage(@Param("userId") UUID userId, Limit limit);
+
+	/**
+	 * Gets the orders of a user placed before the given cursor as summaries, in
+	 * one statement, seeking past the cursor rather than skipping rows.
+	 * 
+	 * @param userId         The user id.
+	 * @param afterTimestamp When the last order already seen was placed.
+	 * @param afterId        The id of the last order already seen.
+	 * @param limit          The maximum number of rows to return.
+	 * @return The summaries, newest first.
+	 */
+	@Query("""
+			SELECT new com.api.model.OrderSummary(o.id, o.createdTimestamp, a.addressLine1, a.city, a.country,
+				COUNT(q), SUM(q.quantity))
+			FROM WebOrder o JOIN o.address a LEFT JOIN o.quantities q
+			WHERE o.user.id = :userId
+			AND (o.createdTimestamp < :afterTimestamp OR (o.createdTimestamp = :afterTimestamp AND o.id < :afterId))
+			GROUP BY o.id, o.createdTimestamp, a.addressLine1, a.city, a.country
+			ORDER BY o.createdTimestamp DESC, o.id DESC
+			""")
+	List<OrderSummary> findPageAfter(@Param("userId") UUID userId, @Param("afterTimestamp") Timestamp afterTimestamp,
+			@Param("afterId") UUID afterId, Limit limit);
+
+	/**
+	 * Gets a single order of a user with its address, lines and products joined
+	 * in. The categories and inventory of the products are left to ProductDAO.
+	 * 
+	 * @param id     The order id.
+	 * @param userId The user id.
+	 * @return The order if found.
+	 */
+	@EntityGraph(attributePaths = { "user", "address", "quantities", "quantities.product" })
+	Optional<WebOrder> findWithDetailsByIdAndUser_Id(UUID id, UUID userId);
+
+	/**
+	 * Gives orders placed before the timestamp column existed the given time.
+	 * 
+	 * @param timestamp The time.
+	 * @return The number of orders updated.
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE WebOrder o SET o.createdTimestamp = :timestamp WHERE o.createdTimestamp IS NULL")
+	int backfillCreatedTimestamp(@Param("timestamp") Timestamp timestamp);
 
 }
@@ -0,0 +1,54 @@
+package com.service;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * BCrypt hashes, encoded as $2a$[cost]$[salt and hash].
+ */
+public class BCryptHashFormat implements PasswordHashFormat {
+
+	/** The log2 cost new hashes are made with. */
+	private final int rounds;
+
+	/**
+	 * Creates the format.
+	 * 
+	 * @param rounds The log2 cost of new hashes.
+	 */
+	public BCryptHashFormat(int rounds) {
+		this.rounds = rounds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean matchesFormat(String hash) {
+		return hash.startsWith("$2a$") || hash.startsWith("$2b$") || hash.startsWith("$2y$");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String hash(String password) {
+		return BCrypt.hashpw(password, BCrypt.gensalt(rounds));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean verify(String password, String hash) {
+		return BCrypt.checkpw(password, hash);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isBelowCost(String hash) {
+		return Integer.parseInt(hash.substring(4, 6)) < rounds;
+	}
+
+}
@@ -0,0 +1,326 @@
+package com.service;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Limit;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.api.model.OrderLineBody;
+import com.exception.OutOfStockException;
+import com.model.DataChange;
+import com.model.Inventory;
+import com.model.LocalUser;
+import com.model.Product;
+import com.model.StockHold;
+import com.repository.InventoryDAO;
+import com.repository.StockHoldDAO;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Service holding stock for carts. A hold takes stock like an order does and
+ * gives it back when it expires, is released, or is bought. Deadlines are
+ * kept in a {@link TimingWheel} rebuilt from the hold table at startup, so
+ * the table is only read when holds actually expire.
+ */
+@Service
+public class CartService implements ApplicationRunner {
+
+	/** The most holds expired per transaction. */
+	private static final int EXPIRY_BATCH = 500;
+
+	/** The Stock Hold DAO. */
+	private StockHoldDAO stockHoldDAO;
+	/** The Inventory DAO. */
+	private InventoryDAO inventoryDAO;
+	/** The stock of hot inventory entries. */
+	private HotInventory hotInventory;
+	/** The product service, to publish the stock given back. */
+	private ProductService productService;
+	/** The cached product views. */
+	private ProductViewCache productViewCache;
+	/** The websocket template. */
+	private SimpMessagingTemplate simpMessagingTemplate;
+	/** Runs each batch of expiries in one transaction. */
+	private TransactionTemplate transactionTemplate;
+	/** How long a hold lasts. */
+	private final long holdMillis;
+	/** The deadlines of the holds, by hold id. */
+	private final TimingWheel<UUID> wheel;
+
+	/**
+	 * Constructor for spring injection.
+	 *
+	 * @param stockHoldDAO
+	 * @param inventoryDAO
+	 * @param hotInventory
+	 * @param productService
+	 * @param productViewCache
+	 * @param simpMessagingTemplate
+	 * @param transactionManager
+	 * @param holdSeconds           How long a hold lasts.
+	 * @param tickMillis            The precision of the expiry.
+	 */
+	public CartService(StockHoldDAO stockHoldDAO, InventoryDAO inventoryDAO, HotInventory hotInventory,
+			ProductService productService, ProductViewCache productViewCache,
+			SimpMessagingTemplate simpMessagingTemplate, PlatformTransactionManager transactionManager,
+			@Value("${app.cart.holdSeconds:900}") long holdSeconds,
+			@Value("${app.cart.tickMillis:1000}") long tickMillis) {
+		this.stockHoldDAO = stockHoldDAO;
+		this.inventoryDAO = inventoryDAO;
+		this.hotInventory = hotInventory;
+		this.productService = productService;
+		this.productViewCache = productViewCache;
+		this.simpMessagingTemplate = simpMessagingTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.holdMillis = holdSeconds * 1000;
+		this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+	}
+
+	/**
+	 * Schedules the holds left by the last run, the ones already due expire on
+	 * the next tick.
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		List<StockHoldDAO.Deadline> deadlines = stockHoldDAO.findAllDeadlines();
+		for (StockHoldDAO.Deadline deadline : deadlines) {
+			wheel.schedule(deadline.getId(), deadline.getExpiresAt().getTime());
+		}
+		if (!deadlines.isEmpty()) {
+			System.out.println("Scheduled " + deadlines.size() + " stock holds");
+		}
+	}
+
+	/**
+	 * Holds stock for the user's cart.
+	 *
+	 * @param user The user.
+	 * @param line The inventory entry and how many.
+	 * @return The hold.
+	 * @throws OutOfStockException Thrown if there is not enough stock.
+	 */
+	@Transactional(rollbackOn = OutOfStockException.class)
+	public StockHold hold(LocalUser user, OrderLineBody line) throws OutOfStockException {
+		if (!takeStock(line.getInventoryId(), line.getQuantity())) {
+			throw new OutOfStockException(line.getInventoryId());
+		}
+		StockHold hold = new StockHold();
+		hold.setUserId(user.getId());
+		hold.setInventoryId(line.getInventoryId());
+		hold.setQuantity(line.getQuantity());
+		hold.setExpiresAt(new Timestamp(System.currentTimeMillis() + holdMillis));
+		StockHold saved = stockHoldDAO.save(hold);
+		invalidate(Set.of(line.getInventoryId()));
+		afterCommit(() -> wheel.schedule(saved.getId(), saved.getExpiresAt().getTime()));
+		return saved;
+	}
+
+	/**
+	 * Gets the holds of the user's cart.
+	 *
+	 * @param user The user.
+	 * @return The holds, soonest to expire first.
+	 */
+	public List<StockHold> getHolds(LocalUser user) {
+		return stockHoldDAO.findByUserIdOrderByExpiresAt(user.getId());
+	}
+
+	/**
+	 * Releases one of the user's holds, giving its stock back.
+	 *
+	 * @param user   The user.
+	 * @param holdId The hold id.
+	 * @return True if released, false if it is not the user's or already gone.
+	 */
+	@Transactional
+	public boolean release(LocalUser user, UUID holdId) {
+		Optional<StockHold> hold = stockHoldDAO.findById(holdId);
+		if (hold.isEmpty() || !hold.get().getUserId().equals(user.getId())
+				|| stockHoldDAO.deleteHold(holdId) == 0) {
+			return false;
+		}
+		returnStock(hold.get().getInventoryId(), hold.get().getQuantity());
+		invalidate(Set.of(hold.get().getInventoryId()));
+		afterCommit(() -> wheel.cancel(holdId));
+		return true;
+	}
+
+	/**
+	 * Takes the user's holds on the given entries for an order being placed.
+	 * Must run inside the order's transaction, the holds come back if it rolls
+	 * back.
+	 *
+	 * @param user         The user.
+	 * @param inventoryIds The inventory entries ordered.
+	 * @return The quantity held, by inventory id.
+	 */
+	public Map<UUID, Integer> claimHolds(LocalUser user, Set<UUID> inventoryIds) {
+		Map<UUID, Integer> held = new HashMap<>();
+		for (StockHold hold : stockHoldDAO.findByUserIdAndInventoryIdIn(user.getId(), inventoryIds)) {
+			if (stockHoldDAO.deleteHold(hold.getId()) == 1) {
+				held.merge(hold.getInventoryId(), hold.getQuantity(), Integer::sum);
+				afterCommit(() -> wheel.cancel(hold.getId()));
+			}
+		}
+		return held;
+	}
+
+	/**
+	 * Takes stock from an inventory entry, in memory for hot entries and with a
+	 * conditional update otherwise. Must run inside the caller's transaction.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @param quantity    How many to take.
+	 * @return True if taken.
+	 */
+	public boolean takeStock(UUID inventoryId, int quantity) {
+		return hotInventory.isHot(inventoryId)
+				? hotInventory.reserve(inventoryId, quantity)
+				: inventoryDAO.reserve(inventoryId, quantity) == 1;
+	}
+
+	/**
+	 * Gives stock back to an inventory entry. Must run inside the caller's
+	 * transaction.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @param quantity    How many to give back.
+	 */
+	public void returnStock(UUID inventoryId, int quantity) {
+		if (hotInventory.isHot(inventoryId)) {
+			hotInventory.release(inventoryId, quantity);
+		} else {
+			inventoryDAO.adjust(inventoryId, quantity);
+		}
+	}
+
+	/**
+	 * Gets the number of holds waiting to expire.
+	 *
+	 * @return The count.
+	 */
+	public int getScheduledHolds() {
+		return wheel.size();
+	}
+
+	/**
+	 * Scheduled task moving the wheel forward. The table is only touched when
+	 * holds expire.
+	 */
+	@Scheduled(fixedRateString = "${app.cart.tickMillis:1000}")
+	public void tick() {
+		List<UUID> expired = wheel.advance(System.currentTimeMillis());
+		for (int i = 0; i < expired.size(); i += EXPIRY_BATCH) {
+			List<UUID> batch = expired.subList(i, Math.min(expired.size(), i + EXPIRY_BATCH));
+			try {
+				expire(batch);
+			} catch (RuntimeException ex) {
+				System.out.println("Unable to expire stock holds, retrying: " + ex.getMessage());
+				long retryAt = System.currentTimeMillis() + holdMillis / 10;
+				batch.forEach(id -> wheel.schedule(id, retryAt));
+			}
+		}
+	}
+
+	/**
+	 * Scheduled task expiring the holds left overdue in the table, in batches.
+	 * Racing a wheel, here or on another node, is safe: only the one deleting a
+	 * hold gives its stock back.
+	 */
+	@Scheduled(fixedDelayString = "${app.cart.sweepMillis:60000}", initialDelayString = "${app.cart.sweepMillis:60000}")
+	public void sweep() {
+		int swept = 0;
+		List<UUID> batch;
+		do {
+			batch = stockHoldDAO.findOverdueIds(new Timestamp(System.currentTimeMillis()), Limit.of(EXPIRY_BATCH));
+			if (batch.isEmpty()) {
+				break;
+			}
+			try {
+				expire(batch);
+			} catch (RuntimeException ex) {
+				System.out.println("Unable to sweep stock holds, retrying on the next sweep: " + ex.getMessage());
+				return;
+			}
+			batch.forEach(wheel::cancel);
+			swept += batch.size();
+		} while (batch.size() == EXPIRY_BATCH);
+		if (swept > 0) {
+			System.out.println("Swept " + swept + " overdue stock holds");
+		}
+	}
+
+	/**
+	 * Gives the stock of expired holds back and publishes the products changed.
+	 *
+	 * @param holdIds The expired hold ids.
+	 */
+	private void expire(List<UUID> holdIds) {
+		Set<UUID> productIds = transactionTemplate.execute(status -> {
+			Set<UUID> changed = new HashSet<>();
+			for (StockHold hold : stockHoldDAO.findAllById(holdIds)) {
+				if (stockHoldDAO.deleteHold(hold.getId()) == 1) {
+					returnStock(hold.getInventoryId(), hold.getQuantity());
+					changed.add(hold.getInventoryId());
+				}
+			}
+			return invalidate(changed);
+		});
+		for (UUID productId : productIds) {
+			Product product = productService.getProduct(productId);
+			if (product != null) {
+				simpMessagingTemplate.convertAndSend("/topic/product",
+						new DataChange<>(DataChange.ChangeType.UPDATE, product));
+			}
+		}
+	}
+
+	/**
+	 * Evicts the cached views of the products of the given entries.
+	 *
+	 * @return The product ids.
+	 */
+	private Set<UUID> invalidate(Set<UUID> inventoryIds) {
+		Set<UUID> productIds = new HashSet<>();
+		for (Inventory inventory : inventoryDAO.findAllById(inventoryIds)) {
+			productIds.add(inventory.getProduct().getId());
+		}
+		productIds.forEach(productViewCache::invalidateProduct);
+		return productIds;
+	}
+
+	/**
+	 * Runs a task once the current transaction commits, or straight away
+	 * without one.
+	 */
+	private void afterCommit(Runnable task) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					task.run();
+				}
+			});
+		} else {
+			task.run();
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+package com.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.model.OutboundEmail;
+import com.model.OutboundEmailStatus;
+import com.repository.OutboundEmailDAO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Background sender for the email outbox. Due emails are claimed in batches
+ * and each batch is sent over a single SMTP connection. Failed emails are
+ * retried with exponential backoff and dead-lettered after the last attempt.
+ * Dead-lettered emails keep their recipient and error for a while, but not
+ * their body, which may hold a password reset or verification token.
+ * <p>
+ * The outbox is only queried when something was queued on this instance,
+ * when a retry falls due, or on the periodic sweep that picks up emails left
+ * by other instances or by a restart.
+ */
+@Component
+public class EmailDispatcher {
+
+	/** The from address to use on emails. */
+	private final String fromAddress;
+	/** The outbox. */
+	private OutboundEmailDAO outboundEmailDAO;
+	/** The JavaMailSender instance. */
+	private JavaMailSender javaMailSender;
+	/** The most emails sent per batch. */
+	private final int batchSize;
+	/** The delay before the first retry, doubled for every further one. */
+	private final long backoffMillis;
+	/** The longest delay between retries. */
+	private final long maxBackoffMillis;
+	/** The number of sends before an email is dead-lettered. */
+	private final int maxAttempts;
+	/** How long a claim lasts if its batch never reports back. */
+	private final long leaseMillis;
+	/** The longest time between two looks at the outbox. */
+	private final long sweepMillis;
+	/** How long dead-lettered emails are kept. */
+	private final long deadRetentionMillis;
+	/** When the outbox should next be looked at, in epoch millis. */
+	private final AtomicLong nextCheckAt = new AtomicLong(0);
+	/** Emails sent. */
+	private final Counter sent;
+	/** Sends that failed and will be retried. */
+	private final Counter retried;
+	/** Emails given up on. */
+	private final Counter deadLettered;
+
+	/**
+	 * Constructor for spring injection.
+	 *
+	 * @param outboundEmailDAO
+	 * @param javaMailSender
+	 * @param fromAddress      The from address to use on emails.
+	 * @param batchSize        The most emails sent per batch.
+	 * @param backoffMillis    The delay before the first retry.
+	 * @param maxBackoffMillis The longest delay between retries.
+	 * @param maxAttempts      The number of sends before giving up.
+	 * @param leaseMillis      How long a batch may take before its emails are
+	 *                         claimed again.
+	 * @param sweepMillis      The longest time between two looks at the outbox.
+	 * @param deadRetentionMillis How long dead-lettered emails are kept.
+	 * @param meterRegistry    The registry the metrics are bound to.
+	 */
+	public EmailDispatcher(OutboundEmailDAO outboundEmailDAO, JavaMailSender javaMailSender,
+			@Value("${email.from}") String fromAddress, @Value("${email.outbox.batchSize:50}") int batchSize,
+			@Value("${email.outbox.backoffMillis:30000}") long backoffMillis,
+			@Value("${email.outbox.maxBackoffMillis:3600000}") long maxBackoffMillis,
+			@Value("${email.outbox.maxAttempts:8}") int maxAttempts,
+			@Value("${email.outbox.leaseMillis:300000}") long leaseMillis,
+			@Value("${email.outbox.sweepMillis:60000}") long sweepMillis,
+			@Value("${email.outbox.deadRetentionMillis:604800000}") long deadRetentionMillis,
+			MeterRegistry meterRegistry) {
+		this.outboundEmailDAO = outboundEmailDAO;
+		this.javaMailSender = javaMailSender;
+		this.fromAddress = fromAddress;
+		this.batchSize = batchSize;
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+		this.maxAttempts = maxAttempts;
+		this.leaseMillis = leaseMillis;
+		this.sweepMillis = sweepMillis;
+		this.deadRetentionMillis = deadRetentionMillis;
+		this.sent = Counter.builder("email.outbox.sent").description("Emails sent").register(meterRegistry);
+		this.retried = Counter.builder("email.outbox.retried").description("Email sends to be retried")
+				.register(meterRegistry);
+		this.deadLettered = Counter.builder("email.outbox.dead").description("Emails given up on")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Asks for the outbox to be looked at on the next poll, called once an
+	 * email is queued.
+	 */
+	public void wake() {
+		nextCheckAt.set(0);
+	}
+
+	/**
+	 * Scheduled task sending the due emails, batch after batch, whenever the
+	 * outbox may hold some.
+	 */
+	@Scheduled(fixedDelayString = "${email.outbox.pollMillis:500}")
+	public void poll() {
+		long checkAt = nextCheckAt.get();
+		if (System.currentTimeMillis() < checkAt) {
+			return;
+		}
+		// Pushed back before reading, so a wake during the batch is not lost.
+		nextCheckAt.compareAndSet(checkAt, System.currentTimeMillis() + sweepMillis);
+		try {
+			int found;
+			do {
+				found = dispatchBatch();
+			} while (found == batchSize);
+			Optional<OutboundEmail> next = outboundEmailDAO
+					.findFirstByStatusOrderByNextAttemptAt(OutboundEmailStatus.PENDING);
+			if (next.isPresent()) {
+				nextCheckAt.accumulateAndGet(next.get().getNextAttemptAt().getTime(), Math::min);
+			}
+		} catch (RuntimeException ex) {
+			System.out.println("Unable to dispatch emails: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Scheduled task blanking any dead-lettered email still holding a body, left
+	 * by an older version, and removing those kept long enough.
+	 */
+	@Scheduled(fixedDelayString = "${email.outbox.purgeMillis:3600000}")
+	public void purgeDead() {
+		outboundEmailDAO.blankDead();
+		int removed = outboundEmailDAO
+				.deleteDeadBefore(new Timestamp(System.currentTimeMillis() - deadRetentionMillis));
+		if (removed > 0) {
+			System.out.println("Removed " + removed + " dead-lettered emails");
+		}
+	}
+
+	/**
+	 * Claims and sends one batch of due emails.
+	 *
+	 * @return The number of due emails found, a full batch means more may be
+	 *         waiting.
+	 */
+	public int dispatchBatch() {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		List<UUID> dueIds = outboundEmailDAO.findDueIds(now, Limit.of(batchSize));
+		if (dueIds.isEmpty()) {
+			return 0;
+		}
+		UUID claimId = UUID.randomUUID();
+		if (outboundEmailDAO.claim(dueIds, claimId, now, new Timestamp(now.getTime() + leaseMillis)) > 0) {
+			send(outboundEmailDAO.findByClaimId(claimId));
+		}
+		return dueIds.size();
+	}
+
+	/**
+	 * Sends claimed emails over one connection and records the outcome of each.
+	 *
+	 * @param emails The claimed emails.
+	 */
+	private void send(List<OutboundEmail> emails) {
+		Map<SimpleMailMessage, OutboundEmail> byMessage = new IdentityHashMap<>();
+		for (OutboundEmail email : emails) {
+			SimpleMailMessage message = new SimpleMailMessage();
+			message.setFrom(fromAddress);
+			message.setTo(email.getRecipient());
+			message.setSubject(email.getSubject());
+			message.setText(email.getBody());
+			byMessage.put(message, email);
+		}
+		Map<Object, Exception> failures = new IdentityHashMap<>();
+		try {
+			javaMailSender.send(byMessage.keySet().toArray(new SimpleMailMessage[0]));
+		} catch (MailSendException ex) {
+			if (ex.getFailedMessages().isEmpty()) {
+				byMessage.keySet().forEach(message -> failures.put(message, ex));
+			} else {
+				failures.putAll(ex.getFailedMessages());
+			}
+		} catch (MailException ex) {
+			byMessage.keySet().forEach(message -> failures.put(message, ex));
+		}
+
+		List<UUID> sentIds = new ArrayList<>();
+		for (Map.Entry<SimpleMailMessage, OutboundEmail> entry : byMessage.entrySet()) {
+			Exception failure = failures.get(entry.getKey());
+			if (failure == null) {
+				sentIds.add(entry.getValue().getId());
+			} else {
+				recordFailure(entry.getValue(), failure);
+			}
+		}
+		if (!sentIds.isEmpty()) {
+			outboundEmailDAO.deleteSent(sentIds);
+			sent.increment(sentIds.size());
+		}
+	}
+
+	/**
+	 * Schedules the retry of a failed email, or dead-letters it after the last
+	 * attempt.
+	 *
+	 * @param email   The email.
+	 * @param failure Why it failed.
+	 */
+	private void recordFailure(OutboundEmail email, Exception failure) {
+		int attempts = email.getAttempts() + 1;
+		email.setAttempts(attempts);
+		email.setClaimId(null);
+		String reason = String.valueOf(failure.getMessage());
+		email.setLastError(reason.length() > 1000 ? reason.substring(0, 1000) : reason);
+		if (attempts >= maxAttempts) {
+			email.setStatus(OutboundEmailStatus.DEAD);
+			email.setBody("");
+			email.setNextAttemptAt(new Timestamp(System.currentTimeMillis()));
+			deadLettered.increment();
+			System.out.println("Giving up on email " + email.getId() + " after " + attempts + " attempts: " + reason);
+		} else {
+			long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempts - 1, 30));
+			email.setNextAttemptAt(new Timestamp(System.currentTimeMillis() + delay));
+			retried.increment();
+		}
+		outboundEmailDAO.save(email);
+	}
+
+}
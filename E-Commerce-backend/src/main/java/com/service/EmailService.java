@@ -1,17 +1,20 @@
 package com.service;
 
+import java.sql.Timestamp;
+
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.MailException;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import com.exception.EmailFailureException;
 import com.model.LocalUser;
+import com.model.OutboundEmail;
 import com.model.VerificationToken;
+import com.repository.OutboundEmailDAO;
 
 /**
- * Service for handling emails being sent.
+ * Service for handling emails being sent. Emails are only written to the
+ * outbox here, the EmailDispatcher sends them in the background.
  */
 @Service
 public class EmailService {
@@ -22,63 +25,69 @@ public class EmailService {
   /** The url of the front end for links. */
   @Value("${app.frontend.url}")
   private String url;
-  /** The JavaMailSender instance. */
-  private JavaMailSender javaMailSender;
+  /** The outbox. */
+  private OutboundEmailDAO outboundEmailDAO;
+  /** The dispatcher sending the outbox. */
+  private EmailDispatcher emailDispatcher;
 
   /**
    * Constructor for spring injection.
-   * @param javaMailSender
+   * @param outboundEmailDAO
+   * @param emailDispatcher
    */
-  public EmailService(JavaMailSender javaMailSender) {
-    this.javaMailSender = javaMailSender;
+  public EmailService(OutboundEmailDAO outboundEmailDAO, EmailDispatcher emailDispatcher) {
+    this.outboundEmailDAO = outboundEmailDAO;
+    this.emailDispatcher = emailDispatcher;
   }
 
   /**
-   * Makes a SimpleMailMessage for sending.
-   * @return The SimpleMailMessage created.
+   * Queues an email for sending. The dispatcher is woken once the current
+   * transaction commits, so it sees the row.
+   * @param to The recipient.
+   * @param subject The subject line.
+   * @param text The body.
    */
-  private SimpleMailMessage makeMailMessage() {
-    SimpleMailMessage simpleMailMessage = new SimpleMailMessage();
-    simpleMailMessage.setFrom(fromAddress);
-    return simpleMailMessage;
+  private void enqueue(String to, String subject, String text) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    OutboundEmail email = new OutboundEmail();
+    email.setRecipient(to);
+    email.setSubject(subject);
+    email.setBody(text);
+    email.setNextAttemptAt(now);
+    email.setCreatedTimestamp(now);
+    outboundEmailDAO.save(email);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          emailDispatcher.wake();
+        }
+      });
+    } else {
+      emailDispatcher.wake();
+    }
   }
 
   /**
-   * Sends a verification email to the user.
+   * Queues a verification email to the user.
    * @param verificationToken The verification token to be sent.
-   * @throws EmailFailureException Thrown if are unable to send the email.
    */
-  public void sendVerificationEmail(VerificationToken verificationToken) throws EmailFailureException {
-    SimpleMailMessage message = makeMailMessage();
-    message.setTo(verificationToken.getUser().getEmail());
-    message.setSubject("Verify your email to active your account.");
-    message.setText("Please follow the link below to verify your email to active your account.\n" +
+  public void sendVerificationEmail(VerificationToken verificationToken) {
+    enqueue(verificationToken.getUser().getEmail(), "Verify your email to active your account.",
+        "Please follow the link below to verify your email to active your account.\n" +
         url + "/auth/verify?token=" + verificationToken.getToken());
-    try {
-      javaMailSender.send(message);
-    } catch (MailException ex) {
-      throw new EmailFailureException();
-    }
   }
 
   /**
-   * Sends a password reset request email to the user.
+   * Queues a password reset request email to the user.
    * @param user The user to send to.
    * @param token The token to send the user for reset.
-   * @throws EmailFailureException
    */
-  public void sendPasswordResetEmail(LocalUser user, String token) throws EmailFailureException {
-    SimpleMailMessage message = makeMailMessage();
-    message.setTo(user.getEmail());
-    message.setSubject("Your password reset request link.");
-    message.setText("You requested a password reset on our website. Please " +
+  public void sendPasswordResetEmail(LocalUser user, String token) {
+    enqueue(user.getEmail(), "Your password reset request link.",
+        "You requested a password reset on our website. Please " +
         "find the link below to be able to reset your password.\n" + url +
         "/auth/reset?token=" + token);
-    try {
-      javaMailSender.send(message);
-    } catch (MailException ex) {
-      throw new EmailFailureException();
-    }
   }
 
-}
\ No newline at end of file
+}
@@ -1,28 +1,42 @@
 package com.service;
 
+import java.util.List;
+
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Service;
 
 /**
- * Service for handling encryption of passwords.
+ * Service for handling encryption of passwords. New passwords are hashed in
+ * the configured format with a salt of their own, existing hashes are verified
+ * in whichever supported format they were made.
  */
 @Service
 public class EncryptionService {
 
-	/** How many salt rounds should the encryption run. */
+	/** How many salt rounds should the BCrypt encryption run. */
 	@Value("${encryption.salt.rounds}")
 	private int saltRounds;
-	/** The salt built after construction. */
-	private String salt;
+	/** The format new passwords are hashed in, bcrypt or pbkdf2. */
+	@Value("${encryption.algorithm:bcrypt}")
+	private String algorithm = "bcrypt";
+	/** How many iterations should the PBKDF2 encryption run. */
+	@Value("${encryption.pbkdf2.iterations:310000}")
+	private int pbkdf2Iterations = 310000;
+	/** The format new passwords are hashed in. */
+	private PasswordHashFormat target;
+	/** Every format a stored hash may be in. */
+	private List<PasswordHashFormat> formats;
 
 	/**
 	 * Post construction method.
 	 */
 	@PostConstruct
 	public void postConstruct() {
-		salt = BCrypt.gensalt(saltRounds);
+		PasswordHashFormat bcrypt = new BCryptHashFormat(saltRounds);
+		PasswordHashFormat pbkdf2 = new Pbkdf2HashFormat(pbkdf2Iterations);
+		formats = List.of(bcrypt, pbkdf2);
+		target = "pbkdf2".equalsIgnoreCase(algorithm) ? pbkdf2 : bcrypt;
 	}
 
 	/**
@@ -32,7 +46,7 @@ public class EncryptionService {
 	 * @return The encrypted password.
 	 */
 	public String encryptPassword(String password) {
-		return BCrypt.hashpw(password, salt);
+		return target.hash(password);
 	}
 
 	/**
@@ -43,7 +57,34 @@ public class EncryptionService {
 	 * @return True if the password is correct, false otherwise.
 	 */
 	public boolean verifyPassword(String password, String hash) {
-		return BCrypt.checkpw(password, hash);
+		PasswordHashFormat format = formatOf(hash);
+		return format != null && format.verify(password, hash);
+	}
+
+	/**
+	 * Checks whether a hash should be replaced, because it is in another format
+	 * than the configured one or was made at a lower cost.
+	 * 
+	 * @param hash The encrypted password.
+	 * @return True if the password should be rehashed.
+	 */
+	public boolean needsRehash(String hash) {
+		return formatOf(hash) != target || target.isBelowCost(hash);
+	}
+
+	/**
+	 * Finds the format a hash was made in.
+	 * 
+	 * @param hash The encrypted password.
+	 * @return The format, or null if none matches.
+	 */
+	private PasswordHashFormat formatOf(String hash) {
+		for (PasswordHashFormat format : formats) {
+			if (format.matchesFormat(hash)) {
+				return format;
+			}
+		}
+		return null;
 	}
 
-}
\ No newline at end of file
+}
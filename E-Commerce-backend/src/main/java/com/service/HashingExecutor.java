@@ -0,0 +1,112 @@
+package com.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Dedicated pool for password hashing, so a burst of logins queues here
+ * instead of occupying the request threads. The queue is bounded and work
+ * beyond it is rejected straight away, for the caller to answer 429. Results
+ * are handed back on a small separate pool, so the database work callers
+ * chain onto a hash never holds a hashing thread.
+ */
+@Component
+public class HashingExecutor {
+
+	/** The worker pool, with a bounded queue. */
+	private final ThreadPoolExecutor executor;
+	/** The pool results are completed on. Its work is bounded by the hashing pool's. */
+	private final ExecutorService completionExecutor;
+	/** Time spent hashing. */
+	private final Timer hashTimer;
+	/** Time spent waiting for a worker. */
+	private final Timer waitTimer;
+	/** Work turned away because the queue was full. */
+	private final Counter rejected;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param threads       The number of worker threads, 0 for one per core.
+	 * @param queueCapacity     The number of hashes allowed to wait.
+	 * @param completionThreads The number of threads running the work chained
+	 *                          onto a hash.
+	 * @param meterRegistry     The registry the metrics are bound to.
+	 */
+	public HashingExecutor(@Value("${app.hashing.threads:0}") int threads,
+			@Value("${app.hashing.queue:64}") int queueCapacity,
+			@Value("${app.hashing.completionThreads:4}") int completionThreads, MeterRegistry meterRegistry) {
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hash-"),
+				new ThreadPoolExecutor.AbortPolicy());
+		this.completionExecutor = Executors.newFixedThreadPool(completionThreads,
+				new CustomizableThreadFactory("password-hash-done-"));
+		this.hashTimer = Timer.builder("auth.hash.duration").description("Time spent hashing a password")
+				.register(meterRegistry);
+		this.waitTimer = Timer.builder("auth.hash.wait").description("Time a hash waited for a worker")
+				.register(meterRegistry);
+		this.rejected = Counter.builder("auth.hash.rejected").description("Hashes rejected with a full queue")
+				.register(meterRegistry);
+		Gauge.builder("auth.hash.queue.depth", executor, pool -> pool.getQueue().size())
+				.description("Hashes waiting for a worker").register(meterRegistry);
+	}
+
+	/**
+	 * Runs hashing work on the pool.
+	 * 
+	 * @param <T>  The result type.
+	 * @param work The hashing to do.
+	 * @return The pending result, completed on the completion pool.
+	 * @throws RejectedExecutionException Thrown straight away if the queue is
+	 *                                    full.
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> work) {
+		long queuedAt = System.nanoTime();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+				return hashTimer.record(work);
+			}, executor).whenCompleteAsync((result, ex) -> {
+			}, completionExecutor);
+		} catch (RejectedExecutionException ex) {
+			rejected.increment();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Gets the number of hashes waiting for a worker.
+	 * 
+	 * @return The queue depth.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Stops the workers when the application shuts down.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+		completionExecutor.shutdown();
+	}
+
+}
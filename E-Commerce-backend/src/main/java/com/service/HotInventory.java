@@ -0,0 +1,462 @@
+package com.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.model.Inventory;
+import com.repository.InventoryDAO;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Stock of designated hot inventory entries, kept in memory so buyers of the
+ * same item do not queue on its row lock. Stock is taken with a compare and
+ * set on the entry's counter. When the order commits, the sale is appended to
+ * a journal file and synced before the commit completes, then written to the
+ * inventory table in the background, all sales of an entry since the last
+ * flush in one statement and all entries in one transaction.
+ * <p>
+ * Each flush marks the sales it writes with a journal checkpoint and stores
+ * the checkpoint number on the rows in the same transaction. After a crash
+ * only the sales under a checkpoint the rows do not hold are applied at
+ * startup, so sales and returns are applied exactly once even if the crash
+ * came between the commit and the journal recording it.
+ * <p>
+ * The counter lives in one JVM, so each hot entry is leased to the node that
+ * designates it, by app.inventory.hot.node, and another node will not keep
+ * the same entry in memory. The lease is released on a clean shutdown. After
+ * a crash it stays with the node until it restarts and applies its journal.
+ * Without hot entries configured nothing is journaled and every entry is
+ * reserved in the database.
+ */
+@Component
+public class HotInventory implements ApplicationRunner {
+
+	/** The Inventory DAO. */
+	private InventoryDAO inventoryDAO;
+	/** The cached product views, refreshed once sales are written. */
+	private ProductViewCache productViewCache;
+	/** Runs each flush in one transaction. */
+	private TransactionTemplate transactionTemplate;
+	/** The inventory entries designated at startup. */
+	private final Set<UUID> designated;
+	/** The journal file. */
+	private final Path journalPath;
+	/** The name of this node on the leases of its hot entries. */
+	private final String node;
+	/** The counters of the hot entries, by inventory id. */
+	private final Map<UUID, Cell> cells = new ConcurrentHashMap<>();
+	/** Orders appends to the journal with the snapshots taken by a flush. */
+	private final Object journalLock = new Object();
+	/** The journal, opened with the first hot entry. */
+	private InventoryJournal journal;
+
+	/**
+	 * The counters of one hot entry.
+	 */
+	private static class Cell {
+		/** The product the entry belongs to. */
+		private final UUID productId;
+		/** The stock left to sell. */
+		private final AtomicLong available;
+		/** Stock sold and journaled but not yet written to the table. */
+		private final LongAdder unflushed = new LongAdder();
+
+		private Cell(UUID productId, long available) {
+			this.productId = productId;
+			this.available = new AtomicLong(available);
+		}
+	}
+
+	/**
+	 * Constructor for spring injection.
+	 *
+	 * @param inventoryDAO
+	 * @param productViewCache
+	 * @param transactionManager
+	 * @param designated         The inventory ids to keep in memory.
+	 * @param journalPath        The journal file.
+	 * @param node               The name of this node, stable across restarts.
+	 */
+	public HotInventory(InventoryDAO inventoryDAO, ProductViewCache productViewCache,
+			PlatformTransactionManager transactionManager,
+			@Value("${app.inventory.hot.skus:}") Set<UUID> designated,
+			@Value("${app.inventory.hot.journalFile:inventory.journal}") Path journalPath,
+			@Value("${app.inventory.hot.node:local}") String node) {
+		this.inventoryDAO = inventoryDAO;
+		this.productViewCache = productViewCache;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.designated = designated;
+		this.journalPath = journalPath;
+		this.node = node;
+	}
+
+	/**
+	 * Applies the sales left in the journal by the last run, then loads the
+	 * designated entries.
+	 */
+	@Override
+	public void run(ApplicationArguments args) throws IOException {
+		if (designated.isEmpty() && !journalPath.toFile().exists()) {
+			return;
+		}
+		synchronized (journalLock) {
+			openJournal();
+		}
+		designated.forEach(this::designate);
+	}
+
+	/**
+	 * Keeps an inventory entry in memory from now on, starting from the stock
+	 * in the table, once it is leased to this node.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @return True if the entry exists and no other node keeps it hot.
+	 */
+	public boolean designate(UUID inventoryId) {
+		if (inventoryDAO.leaseHot(inventoryId, node) == 0) {
+			System.out.println(inventoryDAO.existsById(inventoryId)
+					? "Hot inventory entry " + inventoryId + " is leased to another node"
+					: "Hot inventory entry not found: " + inventoryId);
+			return false;
+		}
+		Optional<Inventory> inventory = inventoryDAO.findById(inventoryId);
+		if (inventory.isEmpty()) {
+			System.out.println("Hot inventory entry not found: " + inventoryId);
+			return false;
+		}
+		synchronized (journalLock) {
+			openJournal();
+			if (inventory.get().getJournalCheckpoint() != null) {
+				journal.advanceTo(inventory.get().getJournalCheckpoint());
+			}
+			cells.computeIfAbsent(inventoryId,
+					id -> new Cell(inventory.get().getProduct().getId(), inventory.get().getQuantity()));
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if an inventory entry is reserved in memory.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @return True if it is hot.
+	 */
+	public boolean isHot(UUID inventoryId) {
+		return cells.containsKey(inventoryId);
+	}
+
+	/**
+	 * Gets the stock left to sell of a hot entry.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @return The stock, or null if the entry is not hot.
+	 */
+	public Long getAvailable(UUID inventoryId) {
+		Cell cell = cells.get(inventoryId);
+		return cell == null ? null : cell.available.get();
+	}
+
+	/**
+	 * Takes stock from a hot entry for the current transaction. The sale is
+	 * journaled before the transaction commits and given back if it rolls back.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @param quantity    How many to take.
+	 * @return True if taken, false if there is not enough.
+	 */
+	public boolean reserve(UUID inventoryId, int quantity) {
+		Cell cell = cells.get(inventoryId);
+		if (cell == null) {
+			return false;
+		}
+		long left;
+		do {
+			left = cell.available.get();
+			if (left < quantity) {
+				return false;
+			}
+		} while (!cell.available.compareAndSet(left, left - quantity));
+		journalOnCommit(inventoryId, cell, quantity);
+		return true;
+	}
+
+	/**
+	 * Gives stock taken by an earlier transaction back to a hot entry once the
+	 * current transaction commits. If the return can not be journaled the
+	 * stock stays hidden rather than risk selling it twice.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @param quantity    How many to give back.
+	 */
+	public void release(UUID inventoryId, int quantity) {
+		Cell cell = cells.get(inventoryId);
+		if (cell == null) {
+			return;
+		}
+		onCompletion(committed -> {
+			if (committed) {
+				try {
+					journalSales(Map.of(inventoryId, (long) quantity));
+					cell.available.addAndGet(quantity);
+				} catch (UncheckedIOException ex) {
+					System.out.println("Unable to journal returned stock of " + inventoryId + ": " + ex.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Changes the stock of a hot entry by a seller's edit, in the table within
+	 * the current transaction and in memory once it commits. Stock removed is
+	 * taken from memory straight away, never below what is left, so it can not
+	 * be sold meanwhile.
+	 *
+	 * @param inventoryId The inventory id.
+	 * @param delta       The change requested.
+	 */
+	public void adjust(UUID inventoryId, int delta) {
+		Cell cell = cells.get(inventoryId);
+		if (delta < 0) {
+			long left;
+			long taken;
+			do {
+				left = cell.available.get();
+				taken = Math.min(left, -delta);
+			} while (!cell.available.compareAndSet(left, left - taken));
+			long removed = taken;
+			inventoryDAO.adjust(inventoryId, (int) -removed);
+			onCompletion(committed -> {
+				if (!committed) {
+					cell.available.addAndGet(removed);
+				}
+			});
+		} else if (delta > 0) {
+			inventoryDAO.adjust(inventoryId, delta);
+			onCompletion(committed -> {
+				if (committed) {
+					cell.available.addAndGet(delta);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops keeping an entry in memory once the current transaction deletes it.
+	 *
+	 * @param inventoryId The inventory id.
+	 */
+	public void remove(UUID inventoryId) {
+		onCompletion(committed -> {
+			if (committed) {
+				cells.remove(inventoryId);
+			}
+		});
+	}
+
+	/**
+	 * Scheduled task writing the journaled sales to the inventory table. Flushes
+	 * run one at a time, so checkpoints are applied in order.
+	 */
+	@Scheduled(fixedDelayString = "${app.inventory.hot.flushMillis:200}")
+	public synchronized void flush() {
+		if (cells.isEmpty()) {
+			return;
+		}
+		Map<UUID, Long> sold = new HashMap<>();
+		long checkpoint;
+		synchronized (journalLock) {
+			cells.forEach((id, cell) -> {
+				long quantity = cell.unflushed.sumThenReset();
+				if (quantity != 0) {
+					sold.put(id, quantity);
+				}
+			});
+			if (sold.isEmpty()) {
+				return;
+			}
+			checkpoint = write(() -> journal.checkpoint());
+		}
+		try {
+			transactionTemplate.executeWithoutResult(status -> sold
+					.forEach((id, quantity) -> inventoryDAO.adjustJournaled(id, (int) -quantity, checkpoint)));
+		} catch (RuntimeException ex) {
+			System.out.println("Unable to write hot inventory sales, retrying: " + ex.getMessage());
+			sold.forEach((id, quantity) -> {
+				Cell cell = cells.get(id);
+				if (cell != null) {
+					cell.unflushed.add(quantity);
+				}
+			});
+			return;
+		}
+		synchronized (journalLock) {
+			write(() -> {
+				journal.applied(checkpoint);
+				return checkpoint;
+			});
+		}
+		sold.keySet().stream().map(cells::get).filter(cell -> cell != null)
+				.forEach(cell -> productViewCache.invalidateProduct(cell.productId));
+	}
+
+	/**
+	 * Writes the last sales and closes the journal on shutdown. The leases are
+	 * released only if every sale reached the table.
+	 */
+	@PreDestroy
+	public void shutdown() throws IOException {
+		flush();
+		if (!cells.isEmpty() && cells.values().stream().allMatch(cell -> cell.unflushed.sum() == 0)) {
+			try {
+				inventoryDAO.releaseHot(node);
+			} catch (RuntimeException ex) {
+				System.out.println("Unable to release the hot inventory leases of " + node + ": " + ex.getMessage());
+			}
+		}
+		synchronized (journalLock) {
+			if (journal != null) {
+				journal.close();
+				journal = null;
+			}
+		}
+	}
+
+	/**
+	 * Registers the journaling of a sale with the current transaction. Without
+	 * one it is journaled straight away.
+	 */
+	private void journalOnCommit(UUID inventoryId, Cell cell, int quantity) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			journalSales(Map.of(inventoryId, (long) -quantity));
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			/** Whether the sale reached the journal. */
+			private boolean journaled;
+
+			@Override
+			public void beforeCommit(boolean readOnly) {
+				journalSales(Map.of(inventoryId, (long) -quantity));
+				journaled = true;
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED) {
+					cell.available.addAndGet(quantity);
+					if (journaled) {
+						journalSales(Map.of(inventoryId, (long) quantity));
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Appends sales to the journal, syncs it and counts them for the next
+	 * flush. Concurrent callers share the sync.
+	 *
+	 * @param deltas The stock taken (negative) or given back, by inventory id.
+	 */
+	private void journalSales(Map<UUID, Long> deltas) {
+		long offset;
+		synchronized (journalLock) {
+			offset = write(() -> journal.append(deltas));
+			deltas.forEach((id, delta) -> {
+				Cell cell = cells.get(id);
+				if (cell != null) {
+					cell.unflushed.add(-delta);
+				}
+			});
+		}
+		write(() -> {
+			journal.force(offset);
+			return offset;
+		});
+	}
+
+	/**
+	 * Runs a callback when the current transaction completes, or straight away
+	 * as committed without one.
+	 */
+	private void onCompletion(Consumer<Boolean> callback) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			callback.accept(true);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				callback.accept(status == STATUS_COMMITTED);
+			}
+		});
+	}
+
+	/**
+	 * Opens the journal if needed, applying what it holds from the last run
+	 * that the table does not. The replayed sales are sealed under a new
+	 * checkpoint first, so a crash before the journal is emptied does not apply
+	 * them again. Must be called under the journal lock.
+	 */
+	private void openJournal() {
+		if (journal != null) {
+			return;
+		}
+		journal = write(() -> {
+			InventoryJournal opened = new InventoryJournal(journalPath);
+			Map<UUID, Long> pending = opened.recover(id -> {
+				Long applied = inventoryDAO.findJournalCheckpoint(id);
+				return applied == null ? 0 : applied;
+			});
+			if (!pending.isEmpty()) {
+				long sealed = opened.checkpoint();
+				transactionTemplate.executeWithoutResult(status -> pending
+						.forEach((id, delta) -> inventoryDAO.adjustJournaled(id, delta.intValue(), sealed)));
+				System.out.println("Applied the journaled sales of " + pending.size() + " hot inventory entries");
+			}
+			opened.clear();
+			return opened;
+		});
+	}
+
+	/**
+	 * A journal operation.
+	 */
+	private interface JournalWrite<T> {
+		T run() throws IOException;
+	}
+
+	/**
+	 * Runs a journal operation, rethrowing a failure unchecked so the order
+	 * being committed rolls back.
+	 */
+	private static <T> T write(JournalWrite<T> operation) {
+		try {
+			return operation.run();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+}
@@ -0,0 +1,310 @@
+package com.service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.model.IdempotencyRecord;
+import com.model.IdempotencyStatus;
+import com.model.LocalUser;
+import com.repository.IdempotencyRecordDAO;
+
+/**
+ * Service running requests sent with an idempotency key at most once. The
+ * executions of recent keys are kept in a bounded in-memory cache, so a retry
+ * on the same instance is answered without a query and a duplicate arriving
+ * while the first is running waits for its response. The idempotency_record
+ * table has the final say: its unique key lets one instance claim a key, and
+ * a successful response is stored in the same transaction as the work.
+ */
+@Service
+public class IdempotencyService {
+
+	/** The longest key accepted. */
+	public static final int MAX_KEY_LENGTH = 255;
+	/** The header marking an answer that was stored earlier. */
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+	/** How often a key claimed by another instance is looked at again. */
+	private static final long POLL_MILLIS = 50;
+
+	/** The Idempotency Record DAO. */
+	private IdempotencyRecordDAO idempotencyRecordDAO;
+	/** Serializes request and response bodies. */
+	private ObjectMapper objectMapper;
+	/** Runs each execution and the storing of its response in one transaction. */
+	private TransactionTemplate transactionTemplate;
+	/** The executions of recent keys, by user id and key. */
+	private final Cache<String, Execution> executions;
+	/** How long a key is remembered. */
+	private final long retentionMillis;
+	/** How long a claim is trusted before another instance may take it over. */
+	private final long leaseMillis;
+	/** How long a duplicate waits for the first execution. */
+	private final long waitMillis;
+
+	/**
+	 * Constructor for spring injection.
+	 *
+	 * @param idempotencyRecordDAO
+	 * @param objectMapper
+	 * @param transactionManager
+	 * @param maxEntries           The number of keys kept in memory.
+	 * @param retentionSeconds     How long a key is remembered.
+	 * @param leaseSeconds         How long a claim is trusted.
+	 * @param waitMillis           How long a duplicate waits for the first
+	 *                             execution.
+	 */
+	public IdempotencyService(IdempotencyRecordDAO idempotencyRecordDAO, ObjectMapper objectMapper,
+			PlatformTransactionManager transactionManager,
+			@Value("${app.idempotency.maxEntries:10000}") long maxEntries,
+			@Value("${app.idempotency.retentionSeconds:86400}") long retentionSeconds,
+			@Value("${app.idempotency.leaseSeconds:60}") long leaseSeconds,
+			@Value("${app.idempotency.waitMillis:10000}") long waitMillis) {
+		this.idempotencyRecordDAO = idempotencyRecordDAO;
+		this.objectMapper = objectMapper;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.retentionMillis = retentionSeconds * 1000;
+		this.leaseMillis = leaseSeconds * 1000;
+		this.waitMillis = waitMillis;
+		this.executions = Caffeine.newBuilder()
+				.maximumSize(maxEntries)
+				.expireAfterWrite(Duration.ofSeconds(retentionSeconds))
+				.build();
+	}
+
+	/**
+	 * Runs a request once per user and key. A retry gets the stored response
+	 * back, a duplicate sent while the first is running waits for it. The
+	 * action runs in a transaction that also stores a successful response;
+	 * client errors are stored after it rolls back, server errors and
+	 * exceptions release the key so the request can be retried.
+	 *
+	 * @param user    The user sending the request.
+	 * @param key     The idempotency key.
+	 * @param request The request body, a key may not be reused with another.
+	 * @param action  Runs the request.
+	 * @return The response, 422 if the key was used for another body or 409 if
+	 *         the first execution is still running after the wait.
+	 */
+	public ResponseEntity<?> execute(LocalUser user, String key, Object request, Supplier<ResponseEntity<?>> action) {
+		String requestHash = JWTService.hash(toJson(request));
+		String cacheKey = user.getId() + ":" + key;
+		Execution mine = new Execution(requestHash);
+		Execution existing;
+		while ((existing = executions.asMap().putIfAbsent(cacheKey, mine)) != null) {
+			if (!existing.requestHash.equals(requestHash)) {
+				return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+			}
+			try {
+				Response response = existing.response.get(waitMillis, TimeUnit.MILLISECONDS);
+				return toEntity(response, response.stored);
+			} catch (TimeoutException ex) {
+				return inProgress();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return inProgress();
+			} catch (ExecutionException ex) {
+				// The first execution failed and released the key, run it again.
+			}
+		}
+		Response response;
+		try {
+			response = executeOnce(user, key, requestHash, action);
+		} catch (RuntimeException ex) {
+			executions.asMap().remove(cacheKey, mine);
+			mine.response.completeExceptionally(ex);
+			throw ex;
+		}
+		if (!response.stored) {
+			executions.asMap().remove(cacheKey, mine);
+		}
+		mine.response.complete(response);
+		return toEntity(response, response.replayed);
+	}
+
+	/**
+	 * Scheduled task deleting the keys older than the retention.
+	 */
+	@Scheduled(fixedDelayString = "${app.idempotency.purgeIntervalMillis:3600000}")
+	public void purgeExpired() {
+		idempotencyRecordDAO.deleteCreatedBefore(new Timestamp(System.currentTimeMillis() - retentionMillis));
+	}
+
+	/**
+	 * Answers from the table or claims the key and runs the action. A key
+	 * claimed by another instance is polled until its response is stored, its
+	 * claim goes stale or the wait runs out.
+	 */
+	private Response executeOnce(LocalUser user, String key, String requestHash, Supplier<ResponseEntity<?>> action) {
+		long deadline = System.currentTimeMillis() + waitMillis;
+		while (true) {
+			Optional<IdempotencyRecord> found = idempotencyRecordDAO.findByUserIdAndIdempotencyKey(user.getId(), key);
+			if (found.isEmpty()) {
+				IdempotencyRecord claimed = claim(user, key, requestHash);
+				if (claimed != null) {
+					return run(claimed, action);
+				}
+				continue;
+			}
+			IdempotencyRecord record = found.get();
+			if (!record.getRequestHash().equals(requestHash)) {
+				return new Response(HttpStatus.UNPROCESSABLE_ENTITY.value(), null, false, false);
+			}
+			if (record.getStatus() == IdempotencyStatus.COMPLETED) {
+				return new Response(record.getResponseStatus(), record.getResponseBody(), true, true);
+			}
+			long now = System.currentTimeMillis();
+			if (idempotencyRecordDAO.takeOver(record.getId(), new Timestamp(now), new Timestamp(now - leaseMillis)) == 1) {
+				System.out.println("Taking over stale idempotency key " + record.getId());
+				return run(record, action);
+			}
+			if (now >= deadline) {
+				return new Response(HttpStatus.CONFLICT.value(), null, false, false);
+			}
+			try {
+				Thread.sleep(POLL_MILLIS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return new Response(HttpStatus.CONFLICT.value(), null, false, false);
+			}
+		}
+	}
+
+	/**
+	 * Inserts the record of a new key.
+	 *
+	 * @return The record, or null if another execution inserted it first.
+	 */
+	private IdempotencyRecord claim(LocalUser user, String key, String requestHash) {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		IdempotencyRecord record = new IdempotencyRecord();
+		record.setUserId(user.getId());
+		record.setIdempotencyKey(key);
+		record.setRequestHash(requestHash);
+		record.setClaimedAt(now);
+		record.setCreatedTimestamp(now);
+		try {
+			return idempotencyRecordDAO.save(record);
+		} catch (DataIntegrityViolationException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Runs the action of a claimed key and stores its response.
+	 */
+	private Response run(IdempotencyRecord record, Supplier<ResponseEntity<?>> action) {
+		Response[] response = new Response[1];
+		Boolean committed;
+		try {
+			committed = transactionTemplate.execute(status -> {
+				ResponseEntity<?> result = action.get();
+				response[0] = new Response(result.getStatusCode().value(),
+						result.hasBody() ? toJson(result.getBody()) : null, true, false);
+				if (status.isRollbackOnly() || !result.getStatusCode().is2xxSuccessful()) {
+					status.setRollbackOnly();
+					return false;
+				}
+				idempotencyRecordDAO.complete(record.getId(), response[0].status, response[0].body);
+				return true;
+			});
+		} catch (RuntimeException ex) {
+			idempotencyRecordDAO.deleteById(record.getId());
+			throw ex;
+		}
+		Response result = response[0];
+		if (!Boolean.TRUE.equals(committed)) {
+			if (result.status >= 500) {
+				idempotencyRecordDAO.deleteById(record.getId());
+				return new Response(result.status, result.body, false, false);
+			}
+			transactionTemplate.executeWithoutResult(
+					status -> idempotencyRecordDAO.complete(record.getId(), result.status, result.body));
+		}
+		return result;
+	}
+
+	/**
+	 * Builds the HTTP response of a stored one.
+	 */
+	private ResponseEntity<?> toEntity(Response response, boolean replayed) {
+		ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.status);
+		if (replayed) {
+			builder.header(REPLAYED_HEADER, "true");
+		} else if (!response.stored && response.status == HttpStatus.CONFLICT.value()) {
+			return inProgress();
+		}
+		if (response.body == null) {
+			return builder.build();
+		}
+		return builder.contentType(MediaType.APPLICATION_JSON).body(response.body);
+	}
+
+	/**
+	 * The answer to a duplicate that waited too long.
+	 */
+	private ResponseEntity<?> inProgress() {
+		return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1").build();
+	}
+
+	/**
+	 * Serializes a body to JSON.
+	 */
+	private String toJson(Object body) {
+		try {
+			return objectMapper.writeValueAsString(body);
+		} catch (JsonProcessingException ex) {
+			throw new IllegalStateException("Unable to serialize idempotent request", ex);
+		}
+	}
+
+	/**
+	 * An execution of a key, completed with its response.
+	 */
+	private static class Execution {
+		private final String requestHash;
+		private final CompletableFuture<Response> response = new CompletableFuture<>();
+
+		private Execution(String requestHash) {
+			this.requestHash = requestHash;
+		}
+	}
+
+	/**
+	 * A response and whether it is remembered for the key.
+	 */
+	private static class Response {
+		private final int status;
+		private final String body;
+		private final boolean stored;
+		private final boolean replayed;
+
+		private Response(int status, String body, boolean stored, boolean replayed) {
+			this.status = status;
+			this.body = body;
+			this.stored = stored;
+			this.replayed = replayed;
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+package com.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Content-addressed store for image bytes. Each blob is an immutable file named
+ * by the SHA-256 of its content and sharded two levels deep, so identical
+ * images are stored once whichever product they belong to.
+ */
+@Component
+public class ImageBlobStore {
+
+	/** The size of the chunks blobs are hashed in. */
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	/** The directory holding the sharded blobs. */
+	private final Path blobDirectory;
+	/** The directory for partially written uploads, on the same file system. */
+	private final Path tempDirectory;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param uploadDirectory The root of the image storage.
+	 */
+	public ImageBlobStore(@Value("${app.uploadDirectory}") String uploadDirectory) {
+		this.blobDirectory = Paths.get(uploadDirectory, "blobs");
+		this.tempDirectory = Paths.get(uploadDirectory, "tmp");
+	}
+
+	/**
+	 * Writes the stream to the store, see storeFile.
+	 * 
+	 * @param inputStream The image bytes.
+	 * @return The hex SHA-256 of the bytes, the key of the blob.
+	 * @throws IOException Thrown if the blob could not be written.
+	 */
+	public String store(InputStream inputStream) throws IOException {
+		Path temp = newTempPath();
+		try {
+			Files.copy(inputStream, temp);
+			return storeFile(temp);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Gets a fresh path in the store's temp directory, on the same file system as
+	 * the blobs so a finished upload can be renamed into place. The file itself
+	 * is not created.
+	 * 
+	 * @return The path.
+	 * @throws IOException Thrown if the temp directory could not be created.
+	 */
+	public Path newTempPath() throws IOException {
+		Files.createDirectories(tempDirectory);
+		return tempDirectory.resolve("upload-" + UUID.randomUUID() + ".tmp").toAbsolutePath();
+	}
+
+	/**
+	 * Moves a file written under newTempPath into the store. The file is hashed
+	 * in 64 KB chunks and then renamed into place atomically, so readers
+	 * never see a partial blob. If the blob already exists the file is left for
+	 * the caller to delete.
+	 * 
+	 * @param temp The file to store.
+	 * @return The hex SHA-256 of the bytes, the key of the blob.
+	 * @throws IOException Thrown if the blob could not be written.
+	 */
+	public String storeFile(Path temp) throws IOException {
+		String hash = hash(temp);
+		Path target = resolve(hash);
+		if (Files.exists(target)) {
+			// Refresh the age so a sweep does not collect a blob just referenced again.
+			Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+		} else {
+			Files.createDirectories(target.getParent());
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException ex) {
+				// A concurrent upload stored the same content first.
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Hashes a file through one small buffer, freed with the call, so memory
+	 * does not grow with the file or with the number of request threads.
+	 * 
+	 * @param file The file to hash.
+	 * @return The hex SHA-256.
+	 * @throws IOException Thrown if the file could not be read.
+	 */
+	private static String hash(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Gets the path of a blob.
+	 * 
+	 * @param hash The hex SHA-256 of the blob.
+	 * @return The path, which may not exist.
+	 */
+	public Path resolve(String hash) {
+		return blobDirectory.resolve(relativePath(hash));
+	}
+
+	/**
+	 * Gets the path of a blob relative to the store root.
+	 * 
+	 * @param hash The hex SHA-256 of the blob.
+	 * @return The relative path.
+	 */
+	public String relativePath(String hash) {
+		if (hash.length() != 64) {
+			throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+		}
+		return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+	}
+
+	/**
+	 * Deletes blobs no longer referenced. Only blobs older than the grace period
+	 * are considered, so one stored by an upload whose index row is not yet
+	 * committed is left alone.
+	 * 
+	 * @param isReferenced Tells whether a hash is still used by the index.
+	 * @param gracePeriod  The minimum age of a blob before it can be deleted.
+	 * @return The number of blobs deleted.
+	 * @throws IOException Thrown if the store could not be walked.
+	 */
+	public int sweep(Predicate<String> isReferenced, Duration gracePeriod) throws IOException {
+		if (!Files.isDirectory(blobDirectory)) {
+			return 0;
+		}
+		Instant cutoff = Instant.now().minus(gracePeriod);
+		int[] deleted = { 0 };
+		Files.walkFileTree(blobDirectory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				String hash = file.getFileName().toString();
+				if (attrs.lastModifiedTime().toInstant().isBefore(cutoff) && !isReferenced.test(hash)) {
+					Files.deleteIfExists(file);
+					deleted[0]++;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return deleted[0];
+	}
+
+	/**
+	 * Creates a SHA-256 digest.
+	 * 
+	 * @return The digest.
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
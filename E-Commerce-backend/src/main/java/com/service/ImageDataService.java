@@ -1,156 +1,313 @@
 package com.service;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-import org.apache.tomcat.util.http.fileupload.FileUtils;
-import org.springframework.beans.factory.annotation.Value;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.exception.UnsupportedImageException;
+import com.model.ImageData;
 import com.repository.ImageDataDAO;
 
+/**
+ * Service for storing and retrieving images. The bytes live in the
+ * content-addressed ImageBlobStore and the ImageData rows are the index.
+ */
 @Service
 public class ImageDataService {
 
-	private ImageDataDAO imageDataDAO;
+	/** How long an unreferenced blob is kept before the sweep deletes it. */
+	private static final Duration ORPHAN_GRACE_PERIOD = Duration.ofHours(1);
+	/** The media type of each accepted format, by the format name ImageIO reports. */
+	private static final Map<String, String> ALLOWED_FORMATS = Map.of("jpeg", "image/jpeg", "png", "image/png",
+			"gif", "image/gif", "webp", "image/webp");
+	/** The media types an image may be served inline as. */
+	public static final Set<String> ALLOWED_CONTENT_TYPES = Set.copyOf(ALLOWED_FORMATS.values());
 
-	@Value("${app.uploadDirectory}")
-	private String uploadDirectory;
+	private ImageDataDAO imageDataDAO;
+	private ImageBlobStore imageBlobStore;
+	private ImageIndexService imageIndexService;
+	private ImageLockManager imageLockManager;
+	private ImageResizeService imageResizeService;
 
 	/**
 	 * Constructor for spring injection.
 	 * 
-	 * @param productDAO
+	 * @param imageDataDAO
+	 * @param imageBlobStore
+	 * @param imageIndexService
+	 * @param imageLockManager
+	 * @param imageResizeService
 	 */
-	public ImageDataService(ImageDataDAO imageDataDAO) {
+	public ImageDataService(ImageDataDAO imageDataDAO, ImageBlobStore imageBlobStore,
+			ImageIndexService imageIndexService, ImageLockManager imageLockManager,
+			ImageResizeService imageResizeService) {
 		this.imageDataDAO = imageDataDAO;
+		this.imageBlobStore = imageBlobStore;
+		this.imageIndexService = imageIndexService;
+		this.imageLockManager = imageLockManager;
+		this.imageResizeService = imageResizeService;
 	}
 
-	public String saveImagesToStorage(String type, UUID holderId, List<MultipartFile> imageFiles) throws IOException {
-		Path directory = Paths.get(uploadDirectory, holderId.toString(), type);
-		Files.createDirectories(directory);
-
-		String zipFileName = type + "_images.zip";
-		Path zipFilePath = directory.resolve(zipFileName);
-
-		if (Files.exists(zipFilePath)) {
-			updateZipFile(zipFilePath, imageFiles);
-		} else {
-			createZipFile(zipFilePath, imageFiles);
+	/**
+	 * Stores the uploaded images for a holder. An image with the same name and
+	 * type replaces the previous one. Each part is moved to the store's temp
+	 * directory with transferTo, which lets the container rename its spooled
+	 * file instead of copying it, so no upload is buffered in memory. The type
+	 * of every part is read from its bytes before any is indexed, so an upload
+	 * with one part that is not an allowed image indexes nothing. Only the index
+	 * write runs under the holder's lock, blobs are immutable and are stored
+	 * without it.
+	 * 
+	 * @param type       The image type.
+	 * @param holderId   The holder of the images.
+	 * @param imageFiles The uploaded files.
+	 * @return The name of the archive the images can be downloaded as.
+	 * @throws IOException               Thrown if an image could not be written.
+	 * @throws UnsupportedImageException Thrown if a part is not an allowed image.
+	 */
+	public String saveImagesToStorage(String type, UUID holderId, List<MultipartFile> imageFiles)
+			throws IOException, UnsupportedImageException {
+		List<String> names = new ArrayList<>();
+		List<String> contentTypes = new ArrayList<>();
+		List<String> hashes = new ArrayList<>();
+		for (MultipartFile imageFile : imageFiles) {
+			String name = cleanName(imageFile.getOriginalFilename());
+			Path temp = imageBlobStore.newTempPath();
+			try {
+				imageFile.transferTo(temp.toFile());
+				String hash = imageBlobStore.storeFile(temp);
+				contentTypes.add(detectContentType(name, hash));
+				names.add(name);
+				hashes.add(hash);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
 		}
+		for (int i = 0; i < names.size(); i++) {
+			index(type, holderId.toString(), names.get(i), contentTypes.get(i), hashes.get(i));
+		}
+		return type + "_images.zip";
+	}
 
-		return zipFileName;
+	/**
+	 * Stores a single image read from a stream.
+	 * 
+	 * @param type        The image type.
+	 * @param holderId    The holder of the image.
+	 * @param fileName    The name the image was uploaded with.
+	 * @param inputStream The image bytes.
+	 * @return The index entry.
+	 * @throws IOException               Thrown if the image could not be written.
+	 * @throws UnsupportedImageException Thrown if the bytes are not an allowed
+	 *                                   image.
+	 */
+	public ImageData saveImage(String type, String holderId, String fileName, InputStream inputStream)
+			throws IOException, UnsupportedImageException {
+		String name = cleanName(fileName);
+		String hash = imageBlobStore.store(inputStream);
+		return index(type, holderId, name, detectContentType(name, hash), hash);
 	}
-	    
-
-	private void createZipFile(Path zipFilePath, List<MultipartFile> imageFiles) throws IOException {
-		try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				ZipOutputStream zipOutputStream = new ZipOutputStream(baos)) {
-
-			for (MultipartFile imageFile : imageFiles) {
-				String uniqueFileName = imageFile.getOriginalFilename();
-				System.out.println(uniqueFileName);
-				ZipEntry zipEntry = new ZipEntry(uniqueFileName);
-				zipOutputStream.putNextEntry(zipEntry);
-
-				byte[] buffer = new byte[1024];
-				int len;
-				try (InputStream inputStream = imageFile.getInputStream()) {
-					while ((len = inputStream.read(buffer)) > 0) {
-						zipOutputStream.write(buffer, 0, len);
-					}
+
+	/**
+	 * Reads the media type of a stored blob from its header. The type the client
+	 * sent is never trusted, it could label a page as an image and have it served
+	 * from the shop's origin. A blob that is rejected is left to the orphan
+	 * sweep.
+	 * 
+	 * @param name The name of the image, for the error.
+	 * @param hash The hash of the stored blob.
+	 * @return One of ALLOWED_CONTENT_TYPES.
+	 * @throws IOException               Thrown if the blob could not be read.
+	 * @throws UnsupportedImageException Thrown if the blob is not an allowed
+	 *                                   image.
+	 */
+	private String detectContentType(String name, String hash) throws IOException, UnsupportedImageException {
+		Path file = imageBlobStore.resolve(hash);
+		try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (readers.hasNext()) {
+				ImageReader reader = readers.next();
+				String contentType = ALLOWED_FORMATS.get(reader.getFormatName().toLowerCase(Locale.ROOT));
+				reader.dispose();
+				if (contentType != null) {
+					return contentType;
 				}
+				throw new UnsupportedImageException(name);
 			}
-
-			zipOutputStream.closeEntry();
-			zipOutputStream.finish();
-
-			Files.write(zipFilePath, baos.toByteArray());
 		}
+		// The JDK has no WebP reader, its RIFF header is checked directly.
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			byte[] header = inputStream.readNBytes(12);
+			if (header.length == 12 && new String(header, 0, 4, StandardCharsets.US_ASCII).equals("RIFF")
+					&& new String(header, 8, 4, StandardCharsets.US_ASCII).equals("WEBP")) {
+				return "image/webp";
+			}
+		}
+		throw new UnsupportedImageException(name);
 	}
 
-
-	private void updateZipFile(Path zipFilePath, List<MultipartFile> imageFiles) throws IOException {
-		Map<String, String> env = new HashMap<>();
-		env.put("create", "false");
-
-		try (FileSystem zipFileSystem = FileSystems.newFileSystem(zipFilePath, env)) {
-			for (MultipartFile imageFile : imageFiles) {
-				String uniqueFileName =  imageFile.getOriginalFilename();
-				Path zipEntryPath = zipFileSystem.getPath(uniqueFileName);
-
-				if (!Files.exists(zipEntryPath)) {
-					try (InputStream inputStream = imageFile.getInputStream()) {
-						Files.copy(inputStream, zipEntryPath);
-					}
-				} else {
-					try (InputStream inputStream = imageFile.getInputStream()) {
-						Files.delete(zipEntryPath);
-						Files.copy(inputStream, zipEntryPath);
-					}
-				}
-			}
+	/**
+	 * Strips any path from an uploaded file name.
+	 * 
+	 * @param fileName The name sent by the client.
+	 * @return The bare file name.
+	 * @throws IOException Thrown if there is no usable name.
+	 */
+	private String cleanName(String fileName) throws IOException {
+		String name = StringUtils.getFilename(StringUtils.cleanPath(fileName == null ? "" : fileName));
+		if (!StringUtils.hasText(name)) {
+			throw new IOException("Image has no file name");
 		}
+		return name;
 	}
 
+	/**
+	 * Points the index entry for a name at a stored blob under the holder's lock,
+	 * then queues the resized derivatives.
+	 * 
+	 * @param type        The image type.
+	 * @param holderId    The holder of the image.
+	 * @param name        The name of the image.
+	 * @param contentType The media type read from the image bytes.
+	 * @param hash        The hash of the stored blob.
+	 * @return The index entry.
+	 * @throws IOException Thrown if the blob could not be read.
+	 */
+	private ImageData index(String type, String holderId, String name, String contentType, String hash)
+			throws IOException {
+		ImageData imageData = imageLockManager.runLocked(holderId,
+				() -> imageIndexService.indexOriginal(type, holderId, name, contentType, hash));
+		imageResizeService.scheduleDerivatives(imageData);
+		return imageData;
+	}
 
+	/**
+	 * Removes an image and its derivatives from a holder's index. The blobs are
+	 * left for the sweep, they may be shared with other holders.
+	 * 
+	 * @param type      The image type.
+	 * @param holderId  The holder of the image.
+	 * @param imageName The name of the image.
+	 * @return True if the image existed.
+	 */
+	public boolean deleteImage(String type, UUID holderId, String imageName) {
+		return imageLockManager.runLocked(holderId.toString(),
+				() -> imageIndexService.deleteImage(type, holderId.toString(), imageName));
+	}
 
-	public void deleteImageFromZip(String type, UUID holderId, String imageName) throws IOException {
+	/**
+	 * Gets the original images of a holder of the given type.
+	 * 
+	 * @param holderId The holder of the images.
+	 * @param type     The image type.
+	 * @return The index entries ordered by name.
+	 */
+	public List<ImageData> getImages(String holderId, String type) {
+		return imageDataDAO.findByHolderIdAndTypeAndWidthOrderByName(holderId, type, ImageData.ORIGINAL_WIDTH);
+	}
 
-		Path zipFilePath = Paths.get(uploadDirectory, holderId.toString(), type, type + "_images.zip");
-		Map<String, String> env = new HashMap<>();
-		env.put("create", "false");
-		try (FileSystem zipFileSystem = FileSystems.newFileSystem(zipFilePath, env)) {
-			Path imagePath = zipFileSystem.getPath(imageName);
-			if (Files.exists(imagePath)) {
-				Files.delete(imagePath);
-			} else {
-				System.out.println("Image '" + imageName + "' does not exist in the ZIP file.");
+	/**
+	 * Gets the variant of an image best suited to a display width: the narrowest
+	 * derivative at least that wide, or the original when none is.
+	 * 
+	 * @param holderId  The holder of the image.
+	 * @param type      The image type.
+	 * @param imageName The name of the image.
+	 * @param width     The width wanted, null for the original.
+	 * @return The index entry if the image exists.
+	 */
+	public Optional<ImageData> getImage(String holderId, String type, String imageName, Integer width) {
+		List<ImageData> variants = imageDataDAO.findByHolderIdAndTypeAndNameOrderByWidth(holderId, type, imageName);
+		if (variants.isEmpty() || variants.get(0).getWidth() != ImageData.ORIGINAL_WIDTH) {
+			return Optional.empty();
+		}
+		if (width != null) {
+			for (ImageData variant : variants) {
+				if (variant.getWidth() >= width) {
+					return Optional.of(variant);
+				}
 			}
 		}
+		return Optional.of(variants.get(0));
 	}
 
-	
-	public String getZipImages(String holderId, String type) throws IOException {
-	    String directoryPath = Paths.get(uploadDirectory, holderId.toString(), type).toString();
-
-	    Path directory = Paths.get(directoryPath);
-	    if (!Files.exists(directory) || !Files.isDirectory(directory)) {
-	        throw new IOException("Directory does not exist or is not a directory: " + directoryPath);
-	    }
-
-	    String zipFilePath = Paths.get(directoryPath, type + "_images.zip").toString();
-	    return zipFilePath;
+	/**
+	 * Gets the file holding an image's bytes.
+	 * 
+	 * @param image The index entry.
+	 * @return The path of the blob.
+	 */
+	public Path getImagePath(ImageData image) {
+		return imageBlobStore.resolve(image.getHash());
 	}
-	
-	public String deleteProductFolder(UUID productId) {
-		try {
 
-			String directoryPath = Paths.get(uploadDirectory, productId.toString()).toString();
-			System.out.println(directoryPath);
+	/**
+	 * Writes the given images as a zip archive. Images are already compressed so
+	 * the entries are stored without deflating them again.
+	 * 
+	 * @param images       The images to write.
+	 * @param outputStream The stream to write the archive to.
+	 * @throws IOException Thrown if a blob could not be read.
+	 */
+	public void writeZipImages(List<ImageData> images, OutputStream outputStream) throws IOException {
+		ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+		zipOutputStream.setLevel(Deflater.NO_COMPRESSION);
+		for (ImageData image : images) {
+			zipOutputStream.putNextEntry(new ZipEntry(image.getName()));
+			Files.copy(imageBlobStore.resolve(image.getHash()), zipOutputStream);
+			zipOutputStream.closeEntry();
+		}
+		zipOutputStream.finish();
+	}
 
-			FileUtils.deleteDirectory(new File(directoryPath));
+	/**
+	 * Removes every image of a holder from the index.
+	 * 
+	 * @param holderId The holder, usually a product.
+	 * @return A message describing the outcome.
+	 */
+	public String deleteHolderImages(UUID holderId) {
+		imageLockManager.runLocked(holderId.toString(), () -> {
+			imageIndexService.deleteHolder(holderId.toString());
+			return null;
+		});
+		return "Images deleted successfully for holderId: " + holderId;
+	}
 
-			return "Images deleted successfully for holderId: " + productId;
+	/**
+	 * Scheduled task to delete blobs no index entry refers to any more.
+	 */
+	@Scheduled(cron = "0 30 3 * * *")
+	public void sweepOrphanBlobs() {
+		try {
+			imageBlobStore.sweep(imageDataDAO::existsByHash, ORPHAN_GRACE_PERIOD);
 		} catch (IOException e) {
 			e.printStackTrace();
-			return "Error deleting images for holderId: " + productId;
 		}
 	}
 
-	
 }
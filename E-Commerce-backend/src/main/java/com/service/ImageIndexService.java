@@ -0,0 +1,133 @@
+package com.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.stereotype.Service;
+
+import com.model.ImageData;
+import com.repository.ImageDataDAO;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Service for the transactional writes to the image index. Callers hold the
+ * holder's stripe from ImageLockManager around each call.
+ */
+@Service
+public class ImageIndexService {
+
+	private ImageDataDAO imageDataDAO;
+	private ImageBlobStore imageBlobStore;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param imageDataDAO
+	 * @param imageBlobStore
+	 */
+	public ImageIndexService(ImageDataDAO imageDataDAO, ImageBlobStore imageBlobStore) {
+		this.imageDataDAO = imageDataDAO;
+		this.imageBlobStore = imageBlobStore;
+	}
+
+	/**
+	 * Points the index entry for an original at a stored blob. The derivatives of
+	 * a replaced image are dropped so the new original is served until they are
+	 * regenerated.
+	 * 
+	 * @param type        The image type.
+	 * @param holderId    The holder of the image.
+	 * @param name        The name of the image.
+	 * @param contentType The media type read from the image bytes.
+	 * @param hash        The hash of the stored blob.
+	 * @return The index entry.
+	 * @throws IOException Thrown if the blob could not be read.
+	 */
+	@Transactional
+	public ImageData indexOriginal(String type, String holderId, String name, String contentType, String hash)
+			throws IOException {
+		ImageData imageData = imageDataDAO
+				.findByHolderIdAndTypeAndNameAndWidth(holderId, type, name, ImageData.ORIGINAL_WIDTH)
+				.orElseGet(ImageData::new);
+		if (imageData.getId() != null && !hash.equals(imageData.getHash())) {
+			imageDataDAO.deleteAll(imageDataDAO.findByHolderIdAndTypeAndNameOrderByWidth(holderId, type, name).stream()
+					.filter(image -> image.getWidth() != ImageData.ORIGINAL_WIDTH).toList());
+		}
+		imageData.setHolderId(holderId);
+		imageData.setType(type);
+		imageData.setName(name);
+		imageData.setHash(hash);
+		imageData.setSize(Files.size(imageBlobStore.resolve(hash)));
+		imageData.setContentType(contentType);
+		imageData.setUrl(imageBlobStore.relativePath(hash));
+		imageData.setCreatedTimestamp(new Timestamp(System.currentTimeMillis()));
+		return imageDataDAO.save(imageData);
+	}
+
+	/**
+	 * Points the index entry for a width at a derivative, unless the original was
+	 * replaced or deleted since the derivative was rendered from it.
+	 * 
+	 * @param type        The image type.
+	 * @param holderId    The holder of the image.
+	 * @param name        The name of the image.
+	 * @param sourceHash  The hash of the original the derivative was made from.
+	 * @param width       The width of the derivative.
+	 * @param contentType The media type of the derivative.
+	 * @param hash        The hash of the derivative blob.
+	 * @param size        The size of the derivative in bytes.
+	 * @return False if the original changed and no more derivatives are wanted.
+	 */
+	@Transactional
+	public boolean indexDerivative(String type, String holderId, String name, String sourceHash, int width,
+			String contentType, String hash, long size) {
+		Optional<ImageData> original = imageDataDAO.findByHolderIdAndTypeAndNameAndWidth(holderId, type, name,
+				ImageData.ORIGINAL_WIDTH);
+		if (original.isEmpty() || !original.get().getHash().equals(sourceHash)) {
+			return false;
+		}
+		ImageData derivative = imageDataDAO.findByHolderIdAndTypeAndNameAndWidth(holderId, type, name, width)
+				.orElseGet(ImageData::new);
+		derivative.setHolderId(holderId);
+		derivative.setType(type);
+		derivative.setName(name);
+		derivative.setWidth(width);
+		derivative.setHash(hash);
+		derivative.setSize(size);
+		derivative.setContentType(contentType);
+		derivative.setUrl(imageBlobStore.relativePath(hash));
+		derivative.setCreatedTimestamp(new Timestamp(System.currentTimeMillis()));
+		imageDataDAO.save(derivative);
+		return true;
+	}
+
+	/**
+	 * Removes an image and its derivatives from the index.
+	 * 
+	 * @param type      The image type.
+	 * @param holderId  The holder of the image.
+	 * @param imageName The name of the image.
+	 * @return True if the image existed.
+	 */
+	@Transactional
+	public boolean deleteImage(String type, String holderId, String imageName) {
+		List<ImageData> images = imageDataDAO.findByHolderIdAndTypeAndNameOrderByWidth(holderId, type, imageName);
+		imageDataDAO.deleteAll(images);
+		return !images.isEmpty();
+	}
+
+	/**
+	 * Removes every image of a holder from the index.
+	 * 
+	 * @param holderId The holder.
+	 */
+	@Transactional
+	public void deleteHolder(String holderId) {
+		imageDataDAO.deleteAll(imageDataDAO.findByHolderId(holderId));
+	}
+
+}
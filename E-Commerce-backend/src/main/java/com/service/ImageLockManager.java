@@ -0,0 +1,79 @@
+package com.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Striped locks serializing image index writes per holder. Writes to the same
+ * holder run one at a time while unrelated holders proceed in parallel on
+ * other stripes. All image types of a holder share a stripe so deleting a
+ * holder excludes every upload to it.
+ */
+@Component
+public class ImageLockManager {
+
+	/** The lock stripes. */
+	private final ReentrantLock[] stripes;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param stripeCount The number of stripes.
+	 */
+	public ImageLockManager(@Value("${app.images.lockStripes:1024}") int stripeCount) {
+		stripes = new ReentrantLock[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Runs an action while holding the holder's stripe. If the caller is inside a
+	 * transaction the stripe is held until it completes, so the next writer sees
+	 * the committed rows.
+	 * 
+	 * @param <T>      The result type.
+	 * @param <E>      The exception the action may throw.
+	 * @param holderId The holder being written.
+	 * @param action   The write.
+	 * @return The result of the action.
+	 * @throws E Thrown by the action.
+	 */
+	public <T, E extends Exception> T runLocked(String holderId, LockedAction<T, E> action) throws E {
+		ReentrantLock lock = stripes[Math.floorMod(holderId.hashCode(), stripes.length)];
+		lock.lock();
+		boolean deferred = false;
+		try {
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+					@Override
+					public void afterCompletion(int status) {
+						lock.unlock();
+					}
+				});
+				deferred = true;
+			}
+			return action.run();
+		} finally {
+			if (!deferred) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * A write performed under a holder lock.
+	 * 
+	 * @param <T> The result type.
+	 * @param <E> The exception the write may throw.
+	 */
+	@FunctionalInterface
+	public interface LockedAction<T, E extends Exception> {
+		T run() throws E;
+	}
+
+}
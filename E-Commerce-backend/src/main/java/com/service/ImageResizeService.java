@@ -0,0 +1,224 @@
+package com.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.model.ImageData;
+
+import jakarta.annotation.PreDestroy;
+import net.coobird.thumbnailator.Thumbnails;
+
+/**
+ * Service generating resized JPEG derivatives of uploaded images on a bounded
+ * background pool. Until a derivative exists the original is served in its
+ * place, so a rejected or failed job only costs bandwidth.
+ */
+@Service
+public class ImageResizeService {
+
+	/** The media type of the derivatives. */
+	private static final String DERIVATIVE_CONTENT_TYPE = "image/jpeg";
+
+	/** The widths generated for every upload, ascending. */
+	private final int[] widths;
+	/** The JPEG quality of the derivatives. */
+	private final float quality;
+	/** The largest image, in pixels, that is decoded for resizing. */
+	private final long maxPixels;
+	/** The worker pool, with a bounded queue. */
+	private final ThreadPoolExecutor executor;
+	private ImageBlobStore imageBlobStore;
+	private ImageIndexService imageIndexService;
+	private ImageLockManager imageLockManager;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param imageBlobStore
+	 * @param imageIndexService
+	 * @param imageLockManager
+	 * @param widths        The widths to generate.
+	 * @param quality       The JPEG quality between 0 and 1.
+	 * @param maxPixels     The largest image decoded, larger ones keep only the
+	 *                      original.
+	 * @param threads       The number of worker threads.
+	 * @param queueCapacity The number of jobs allowed to wait.
+	 */
+	public ImageResizeService(ImageBlobStore imageBlobStore, ImageIndexService imageIndexService,
+			ImageLockManager imageLockManager,
+			@Value("${app.images.widths:160,480,1200}") int[] widths,
+			@Value("${app.images.quality:0.8}") float quality,
+			@Value("${app.images.maxResizePixels:40000000}") long maxPixels,
+			@Value("${app.images.resizeThreads:2}") int threads,
+			@Value("${app.images.resizeQueue:500}") int queueCapacity) {
+		this.imageBlobStore = imageBlobStore;
+		this.imageIndexService = imageIndexService;
+		this.imageLockManager = imageLockManager;
+		this.widths = widths.clone();
+		Arrays.sort(this.widths);
+		this.quality = quality;
+		this.maxPixels = maxPixels;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("image-resize-"),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Queues the derivatives of an original to be generated once the current
+	 * transaction commits, so the job sees the committed index entry.
+	 * 
+	 * @param original The index entry of the uploaded original.
+	 */
+	public void scheduleDerivatives(ImageData original) {
+		String holderId = original.getHolderId();
+		String type = original.getType();
+		String name = original.getName();
+		String hash = original.getHash();
+		Runnable submit = () -> {
+			try {
+				executor.execute(() -> generateDerivatives(holderId, type, name, hash));
+			} catch (RejectedExecutionException ex) {
+				System.out.println("Resize queue full, serving original for " + holderId + "/" + type + "/" + name);
+			}
+		};
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					submit.run();
+				}
+			});
+		} else {
+			submit.run();
+		}
+	}
+
+	/**
+	 * Decodes the original once and writes a derivative for every configured
+	 * width narrower than it. Images are never scaled up, and images whose pixel
+	 * count exceeds the limit are not decoded at all.
+	 * 
+	 * @param holderId The holder of the image.
+	 * @param type     The image type.
+	 * @param name     The name of the image.
+	 * @param hash     The hash of the original the job was queued for.
+	 */
+	private void generateDerivatives(String holderId, String type, String name, String hash) {
+		try {
+			File file = imageBlobStore.resolve(hash).toFile();
+			if (!withinPixelLimit(file)) {
+				return;
+			}
+			BufferedImage source = ImageIO.read(file);
+			if (source == null) {
+				return;
+			}
+			BufferedImage opaque = toRgb(source);
+			for (int width : widths) {
+				if (width >= opaque.getWidth()) {
+					break;
+				}
+				ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+				Thumbnails.of(opaque).width(width).outputFormat("jpg").outputQuality(quality)
+						.toOutputStream(outputStream);
+				String derivativeHash = imageBlobStore.store(new ByteArrayInputStream(outputStream.toByteArray()));
+				if (!registerDerivative(holderId, type, name, hash, width, derivativeHash, outputStream.size())) {
+					return;
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			System.out.println("Unable to resize " + holderId + "/" + type + "/" + name + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Points the index entry for a width at a derivative under the holder's lock,
+	 * unless the original was replaced while the job ran.
+	 * 
+	 * @return False if the original changed and the job should stop.
+	 */
+	private boolean registerDerivative(String holderId, String type, String name, String sourceHash, int width,
+			String hash, long size) {
+		return imageLockManager.runLocked(holderId, () -> imageIndexService.indexDerivative(type, holderId, name,
+				sourceHash, width, DERIVATIVE_CONTENT_TYPE, hash, size));
+	}
+
+	/**
+	 * Reads the dimensions from the image header without decoding the pixels.
+	 * 
+	 * @param file The image file.
+	 * @return True if the image is readable and small enough to decode.
+	 * @throws IOException Thrown if the file could not be read.
+	 */
+	private boolean withinPixelLimit(File file) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				return false;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				return (long) reader.getWidth(0) * reader.getHeight(0) <= maxPixels;
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Flattens transparency onto white, JPEG has no alpha channel.
+	 * 
+	 * @param source The decoded image.
+	 * @return An RGB image.
+	 */
+	private static BufferedImage toRgb(BufferedImage source) {
+		if (source.getType() == BufferedImage.TYPE_INT_RGB) {
+			return source;
+		}
+		BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = rgb.createGraphics();
+		graphics.drawImage(source, 0, 0, Color.WHITE, null);
+		graphics.dispose();
+		return rgb;
+	}
+
+	/**
+	 * Gets the number of jobs waiting for a worker.
+	 * 
+	 * @return The queue depth.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Stops the workers when the application shuts down.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+}
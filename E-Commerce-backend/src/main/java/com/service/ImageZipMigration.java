@@ -0,0 +1,101 @@
+package com.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import com.exception.UnsupportedImageException;
+
+/**
+ * One-off tool converting the legacy {holderId}/{type}/{type}_images.zip
+ * archives into the content-addressed blob store. Enabled by starting the
+ * application with app.images.migrateZips=true. Each archive is renamed to
+ * .zip.migrated once its entries are indexed, so the run can be repeated.
+ */
+@Component
+@ConditionalOnProperty(name = "app.images.migrateZips", havingValue = "true")
+public class ImageZipMigration implements ApplicationRunner {
+
+	/** The root of the image storage. */
+	@Value("${app.uploadDirectory}")
+	private String uploadDirectory;
+	/** The image service the entries are stored through. */
+	private ImageDataService imageDataService;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param imageDataService
+	 */
+	public ImageZipMigration(ImageDataService imageDataService) {
+		this.imageDataService = imageDataService;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run(ApplicationArguments args) throws IOException {
+		Path root = Paths.get(uploadDirectory);
+		if (!Files.isDirectory(root)) {
+			return;
+		}
+		int archives = 0;
+		try (DirectoryStream<Path> holders = Files.newDirectoryStream(root, Files::isDirectory)) {
+			for (Path holder : holders) {
+				try (DirectoryStream<Path> types = Files.newDirectoryStream(holder, Files::isDirectory)) {
+					for (Path typeDirectory : types) {
+						String type = typeDirectory.getFileName().toString();
+						Path zipFile = typeDirectory.resolve(type + "_images.zip");
+						if (Files.isRegularFile(zipFile)) {
+							migrateArchive(holder.getFileName().toString(), type, zipFile);
+							archives++;
+						}
+					}
+				}
+			}
+		}
+		System.out.println("Migrated " + archives + " image archives to the blob store.");
+	}
+
+	/**
+	 * Indexes every entry of one archive and marks the archive as migrated.
+	 * 
+	 * @param holderId The holder the archive belongs to.
+	 * @param type     The image type.
+	 * @param zipFile  The archive.
+	 * @throws IOException Thrown if the archive could not be read.
+	 */
+	private void migrateArchive(String holderId, String type, Path zipFile) throws IOException {
+		try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zipFile))) {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				if (!entry.isDirectory()) {
+					InputStream entryStream = StreamUtils.nonClosing(zipInputStream);
+					try {
+						imageDataService.saveImage(type, holderId, entry.getName(), entryStream);
+					} catch (UnsupportedImageException ex) {
+						System.out.println("Skipped " + holderId + "/" + type + "/" + entry.getName()
+								+ ", it is not an allowed image type.");
+					}
+				}
+			}
+		}
+		Files.move(zipFile, zipFile.resolveSibling(zipFile.getFileName() + ".migrated"),
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * Rate limit store for a single instance. Tokens are taken with a compare and
+ * set on the bucket, so requests never lock. A bucket left alone for its
+ * window has refilled completely and is no different from a new one, so it is
+ * evicted then.
+ */
+@Component
+@ConditionalOnProperty(name = "app.rateLimit.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+	/** The buckets by key. */
+	private final Cache<String, Bucket> buckets;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param maxKeys The most buckets kept, the least recently used go first.
+	 */
+	public InMemoryRateLimitStore(@Value("${app.rateLimit.maxKeys:100000}") long maxKeys) {
+		this.buckets = Caffeine.newBuilder()
+				.maximumSize(maxKeys)
+				.expireAfter(new Expiry<String, Bucket>() {
+					@Override
+					public long expireAfterCreate(String key, Bucket bucket, long currentTime) {
+						return bucket.windowNanos;
+					}
+
+					@Override
+					public long expireAfterUpdate(String key, Bucket bucket, long currentTime, long currentDuration) {
+						return bucket.windowNanos;
+					}
+
+					@Override
+					public long expireAfterRead(String key, Bucket bucket, long currentTime, long currentDuration) {
+						return bucket.windowNanos;
+					}
+				})
+				.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long tryAcquire(String key, int capacity, Duration window) {
+		return buckets.get(key, k -> new Bucket(capacity, window)).tryAcquire();
+	}
+
+	/**
+	 * A token bucket.
+	 */
+	private static final class Bucket {
+
+		/** The most tokens held. */
+		private final int capacity;
+		/** The time to refill from empty. */
+		private final long windowNanos;
+		/** The tokens and when they were counted. */
+		private final AtomicReference<State> state;
+
+		Bucket(int capacity, Duration window) {
+			this.capacity = capacity;
+			this.windowNanos = window.toNanos();
+			this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+		}
+
+		/**
+		 * Refills the bucket for the time passed and takes a token.
+		 * 
+		 * @return 0 if a token was taken, otherwise the milliseconds until one is
+		 *         available.
+		 */
+		long tryAcquire() {
+			double tokensPerNano = (double) capacity / windowNanos;
+			while (true) {
+				long now = System.nanoTime();
+				State current = state.get();
+				double tokens = Math.min(capacity, current.tokens + (now - current.countedAt) * tokensPerNano);
+				if (tokens < 1) {
+					return Math.max(1, TimeUnit.NANOSECONDS.toMillis((long) Math.ceil((1 - tokens) / tokensPerNano)));
+				}
+				if (state.compareAndSet(current, new State(tokens - 1, now))) {
+					return 0;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * The tokens in a bucket at a point in time.
+	 */
+	private record State(double tokens, long countedAt) {
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * Used token store for a single instance. Each record expires with its token,
+ * so the store only ever holds tokens that could still be redeemed.
+ */
+@Component
+@ConditionalOnProperty(name = "app.tokens.usedStore", havingValue = "memory", matchIfMissing = true)
+public class InMemoryUsedTokenStore implements UsedTokenStore {
+
+	/** The used tokens by hash, with their expiry. */
+	private final Cache<String, Instant> usedTokens = Caffeine.newBuilder()
+			.expireAfter(new Expiry<String, Instant>() {
+				@Override
+				public long expireAfterCreate(String tokenHash, Instant expiresAt, long currentTime) {
+					return Math.max(0, Duration.between(Instant.now(), expiresAt).toNanos());
+				}
+
+				@Override
+				public long expireAfterUpdate(String tokenHash, Instant expiresAt, long currentTime,
+						long currentDuration) {
+					return currentDuration;
+				}
+
+				@Override
+				public long expireAfterRead(String tokenHash, Instant expiresAt, long currentTime,
+						long currentDuration) {
+					return currentDuration;
+				}
+			})
+			.build();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean markUsed(String tokenHash, Instant expiresAt) {
+		return usedTokens.asMap().putIfAbsent(tokenHash, expiresAt) == null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(String tokenHash) {
+		usedTokens.invalidate(tokenHash);
+	}
+
+}
@@ -0,0 +1,285 @@
+package com.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.ToLongFunction;
+
+/**
+ * Append only file recording the stock taken from hot inventory entries
+ * before it is written to the database. Each line is one of:
+ * <ul>
+ * <li>{@code R <inventory id> <delta>} stock taken (negative) or given back,</li>
+ * <li>{@code C <n>} checkpoint n, the records above it are being written,</li>
+ * <li>{@code A <n>} checkpoint n is written to the database.</li>
+ * </ul>
+ * The database stores the number of the checkpoint it last applied to each
+ * entry in the same transaction as the stock, so a checkpoint written just
+ * before a crash is not applied again even if its {@code A} line was lost.
+ * Checkpoint numbers keep growing across restarts for that reason.
+ * Offsets are logical, they keep growing when the file is compacted.
+ * Appends and checkpoints must be called under one lock held by the caller,
+ * {@link #force(long)} may be called without it.
+ */
+public class InventoryJournal implements Closeable {
+
+	/** The journal file. */
+	private final Path path;
+	/** Guards the channel against a concurrent compaction while forcing. */
+	private final Object forceLock = new Object();
+	/** The open journal file. */
+	private volatile FileChannel channel;
+	/** The logical offset of the first byte in the file. */
+	private long base;
+	/** The logical offset after the last byte appended. */
+	private volatile long written;
+	/** The logical offset up to which the file is on disk. */
+	private volatile long forced;
+	/** The number of the last checkpoint. */
+	private long checkpoint;
+	/** The logical offsets just after each open checkpoint, by number. */
+	private final Map<Long, Long> checkpointOffsets = new HashMap<>();
+
+	/**
+	 * Opens the journal, creating the file if missing. Anything already in it
+	 * should be read with {@link #recover(ToLongFunction)} first.
+	 *
+	 * @param path The journal file.
+	 * @throws IOException Thrown if the file can not be opened.
+	 */
+	public InventoryJournal(Path path) throws IOException {
+		this.path = path;
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		written = channel.size();
+		channel.position(written);
+		forced = written;
+	}
+
+	/**
+	 * Sums the stock taken per inventory entry that the database does not hold
+	 * yet: the records after the last checkpoint, and those of checkpoints newer
+	 * than both the last {@code A} line and the checkpoint the database applied
+	 * to the entry. A torn last line is ignored. Checkpoints made afterwards are
+	 * numbered above every one seen here.
+	 *
+	 * @param appliedCheckpoint The checkpoint the database last applied to an
+	 *                          entry, 0 if none.
+	 * @return The deltas to apply, by inventory id.
+	 * @throws IOException Thrown if the file can not be read.
+	 */
+	public Map<UUID, Long> recover(ToLongFunction<UUID> appliedCheckpoint) throws IOException {
+		String content = Files.readString(path, StandardCharsets.UTF_8);
+		List<String> lines = new ArrayList<>(content.lines().toList());
+		if (!content.isEmpty() && !content.endsWith("\n")) {
+			lines.remove(lines.size() - 1);
+		}
+		long confirmed = lines.stream().filter(line -> line.startsWith("A ")).mapToLong(InventoryJournal::parseNumber)
+				.max().orElse(0);
+		Map<UUID, Long> applied = new HashMap<>();
+		Map<UUID, Long> deltas = new HashMap<>();
+		Map<UUID, Long> open = new HashMap<>();
+		for (String line : lines) {
+			String[] parts = line.split(" ");
+			if (parts.length == 2 && parts[0].equals("C")) {
+				long number = parseNumber(line);
+				checkpoint = Math.max(checkpoint, number);
+				open.forEach((id, delta) -> {
+					long done = Math.max(confirmed, applied.computeIfAbsent(id, appliedCheckpoint::applyAsLong));
+					if (number > done) {
+						deltas.merge(id, delta, Long::sum);
+					}
+				});
+				open.clear();
+			} else if (parts.length == 3 && parts[0].equals("R")) {
+				try {
+					open.merge(UUID.fromString(parts[1]), Long.parseLong(parts[2]), Long::sum);
+				} catch (IllegalArgumentException ex) {
+					System.out.println("Skipping unreadable inventory journal line: " + line);
+				}
+			}
+		}
+		open.forEach((id, delta) -> deltas.merge(id, delta, Long::sum));
+		checkpoint = Math.max(checkpoint, confirmed);
+		applied.values().forEach(this::advanceTo);
+		deltas.values().removeIf(delta -> delta == 0);
+		return deltas;
+	}
+
+	/**
+	 * Makes the next checkpoint number larger than one the database holds.
+	 *
+	 * @param number The checkpoint number.
+	 */
+	public void advanceTo(long number) {
+		checkpoint = Math.max(checkpoint, number);
+	}
+
+	/**
+	 * Reads the number of a checkpoint line.
+	 *
+	 * @return The number, 0 if unreadable.
+	 */
+	private static long parseNumber(String line) {
+		try {
+			return Long.parseLong(line.substring(2));
+		} catch (NumberFormatException ex) {
+			System.out.println("Skipping unreadable inventory journal line: " + line);
+			return 0;
+		}
+	}
+
+	/**
+	 * Appends stock taken or given back.
+	 *
+	 * @param deltas The deltas by inventory id.
+	 * @return The offset to force up to for the records to be durable.
+	 * @throws IOException Thrown if the file can not be written.
+	 */
+	public long append(Map<UUID, Long> deltas) throws IOException {
+		StringBuilder records = new StringBuilder();
+		deltas.forEach((id, delta) -> records.append("R ").append(id).append(' ').append(delta).append('\n'));
+		return write(records.toString());
+	}
+
+	/**
+	 * Appends a checkpoint, marking every record above it as being written to
+	 * the database. The checkpoint is synced before it is returned, so the
+	 * database never records a checkpoint the journal could lose.
+	 *
+	 * @return The checkpoint number.
+	 * @throws IOException Thrown if the file can not be written.
+	 */
+	public long checkpoint() throws IOException {
+		long number = ++checkpoint;
+		long offset = write("C " + number + "\n");
+		checkpointOffsets.put(number, offset);
+		force(offset);
+		return number;
+	}
+
+	/**
+	 * Records that a checkpoint is written to the database and drops the
+	 * records above it from the file.
+	 *
+	 * @param number The checkpoint number.
+	 * @throws IOException Thrown if the file can not be written.
+	 */
+	public void applied(long number) throws IOException {
+		force(write("A " + number + "\n"));
+		Long offset = checkpointOffsets.remove(number);
+		checkpointOffsets.keySet().removeIf(older -> older < number);
+		if (offset != null) {
+			compact(offset);
+		}
+	}
+
+	/**
+	 * Makes everything appended up to an offset durable. Callers arriving while
+	 * another one forces share its sync.
+	 *
+	 * @param offset The offset returned by an append.
+	 * @throws IOException Thrown if the file can not be synced.
+	 */
+	public void force(long offset) throws IOException {
+		if (forced >= offset) {
+			return;
+		}
+		synchronized (forceLock) {
+			if (forced >= offset) {
+				return;
+			}
+			long target = written;
+			channel.force(false);
+			forced = target;
+		}
+	}
+
+	/**
+	 * Empties the journal once everything in it is in the database.
+	 *
+	 * @throws IOException Thrown if the file can not be truncated.
+	 */
+	public void clear() throws IOException {
+		synchronized (forceLock) {
+			base = written;
+			channel.truncate(0);
+			channel.position(0);
+			channel.force(true);
+			forced = written;
+		}
+	}
+
+	/**
+	 * Writes text at the end of the file.
+	 *
+	 * @return The logical offset after it.
+	 */
+	private long write(String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		written += bytes.length;
+		return written;
+	}
+
+	/**
+	 * Replaces the file with the part after an offset. The new file is synced
+	 * and moved into place, so a crash leaves either the old or the new one.
+	 */
+	private void compact(long offset) throws IOException {
+		synchronized (forceLock) {
+			long start = offset - base;
+			long length = written - offset;
+			ByteBuffer tail = ByteBuffer.allocate((int) length);
+			while (tail.hasRemaining()) {
+				if (channel.read(tail, start + tail.position()) < 0) {
+					throw new IOException("Inventory journal is shorter than expected");
+				}
+			}
+			tail.flip();
+			Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+			try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				while (tail.hasRemaining()) {
+					out.write(tail);
+				}
+				out.force(true);
+			}
+			channel.close();
+			Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			channel.position(length);
+			base = offset;
+			forced = written;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (forceLock) {
+			channel.force(false);
+			channel.close();
+		}
+	}
+
+}
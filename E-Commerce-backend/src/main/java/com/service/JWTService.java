@@ -1,25 +1,34 @@
 package com.service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HexFormat;
+import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.model.LocalUser;
 
 import jakarta.annotation.PostConstruct;
 
 @Service
 public class JWTService {
-	
-	private final Set<String> usedTokens = new HashSet<>();
+
+	/** The store of redeemed password reset tokens. */
+	private final UsedTokenStore usedTokenStore;
 
 	/** The secret key to encrypt the JWTs with. */
 	@Value("${jwt.algorithm.key}")
@@ -30,22 +39,58 @@ public class JWTService {
 	/** How many seconds from generation should the JWT expire? */
 	@Value("${jwt.expiryInSeconds}")
 	private int expiryInSeconds;
+	/** How many verified tokens are remembered. */
+	@Value("${jwt.cache.maxEntries:10000}")
+	private long verifiedCacheSize;
 	/** The algorithm generated post construction. */
 	private Algorithm algorithm;
+	/** The verifier built post construction, it is thread safe. */
+	private JWTVerifier verifier;
+	/** Tokens already verified, by the hash of their signature, until they expire. */
+	private Cache<String, DecodedJWT> verifiedTokens;
 	/** The JWT claim keys. */
 	private static final String USERNAME_KEY = "USERNAME";
 	private static final String VERIFICATION_EMAIL_KEY = "EMAIL";
 	private static final String RESET_PASSWORD_EMAIL_KEY = "EMAIL";
 
 	/**
-	 * Post construction method.
+	 * Constructor for spring injection.
+	 * 
+	 * @param usedTokenStore
 	 */
+	public JWTService(UsedTokenStore usedTokenStore) {
+		this.usedTokenStore = usedTokenStore;
+	}
+
 	/**
 	 * Post construction method.
 	 */
 	@PostConstruct
 	public void postConstruct() {
 		algorithm = Algorithm.HMAC256(algorithmKey);
+		verifier = JWT.require(algorithm).withIssuer(issuer).build();
+		verifiedTokens = Caffeine.newBuilder()
+				.maximumSize(verifiedCacheSize)
+				.expireAfter(new Expiry<String, DecodedJWT>() {
+					@Override
+					public long expireAfterCreate(String key, DecodedJWT jwt, long currentTime) {
+						Instant expiresAt = jwt.getExpiresAtAsInstant();
+						return expiresAt == null ? 0 : Math.max(0, Duration.between(Instant.now(), expiresAt).toNanos());
+					}
+
+					@Override
+					public long expireAfterUpdate(String key, DecodedJWT jwt, long currentTime,
+							long currentDuration) {
+						return currentDuration;
+					}
+
+					@Override
+					public long expireAfterRead(String key, DecodedJWT jwt, long currentTime,
+							long currentDuration) {
+						return currentDuration;
+					}
+				})
+				.build();
 	}
 
 	/**
@@ -64,6 +109,10 @@ public class JWTService {
 				// user passed as a parameter.
 				.withClaim(USERNAME_KEY, user.getUsername())
 
+				// Give every token its own id so caches can tell tokens of the same
+				// user apart.
+				.withJWTId(UUID.randomUUID().toString())
+
 				// Set the expiration time for the token (in milliseconds from the current
 				// time).
 				// This ensures that the token is valid only for a certain period, after which
@@ -89,6 +138,7 @@ public class JWTService {
 	 */
 	public String generateVerificationJWT(LocalUser user) {
 		return JWT.create().withClaim(VERIFICATION_EMAIL_KEY, user.getEmail())
+				.withJWTId(UUID.randomUUID().toString())
 				.withExpiresAt(new Date(System.currentTimeMillis() + (1000 * expiryInSeconds))).withIssuer(issuer)
 				.sign(algorithm);
 	}
@@ -112,7 +162,37 @@ public class JWTService {
 	 */
 
 	public String getUsername(String token) {
-		DecodedJWT jwt = JWT.require(algorithm).withIssuer(issuer).build().verify(token);
+		return getUsername(verifyJWT(token));
+	}
+
+	/**
+	 * Verifies the signature, issuer and expiry of a JWT and decodes it. A token
+	 * is only verified the first time it is seen, later calls until it expires
+	 * return the cached result. Entries are keyed by the SHA-256 of the
+	 * signature segment, and a hit is only used for the exact token it was
+	 * verified for, so a valid signature spliced onto another payload is still
+	 * verified, and rejected.
+	 * 
+	 * @param token The JWT to verify.
+	 * @return The decoded JWT.
+	 */
+	public DecodedJWT verifyJWT(String token) {
+		String key = hash(token.substring(token.lastIndexOf('.') + 1));
+		DecodedJWT jwt = verifiedTokens.getIfPresent(key);
+		if (jwt == null || !jwt.getToken().equals(token)) {
+			jwt = verifier.verify(token);
+			verifiedTokens.put(key, jwt);
+		}
+		return jwt;
+	}
+
+	/**
+	 * Gets the username out of a verified JWT.
+	 * 
+	 * @param jwt The decoded JWT.
+	 * @return The username stored inside.
+	 */
+	public String getUsername(DecodedJWT jwt) {
 		return jwt.getClaim(USERNAME_KEY).asString();
 	}
 
@@ -124,31 +204,71 @@ public class JWTService {
 	 */
 	public String generatePasswordResetJWT(LocalUser user) {
 		return JWT.create().withClaim(RESET_PASSWORD_EMAIL_KEY, user.getEmail())
+				.withJWTId(UUID.randomUUID().toString())
 				.withExpiresAt(new Date(System.currentTimeMillis() + (1000 * 60 * 30))).withIssuer(issuer)
 				.sign(algorithm);
 	}
 	
 	/**
-	 * Gets the email from a password reset token.
+	 * Gets the email from a password reset token. The token is verified first and
+	 * then redeemed, a token that was already redeemed is rejected.
 	 * 
 	 * @param token The token to use.
 	 * @return The email in the token if valid.
 	 */
 	public String getResetPasswordEmail(String token) {
-        if (usedTokens.contains(token)) {
-            throw new JWTVerificationException("Token already used");
-        }
-        usedTokens.add(token);
-		DecodedJWT jwt = JWT.require(algorithm).withIssuer(issuer).build().verify(token);
-		return jwt.getClaim(RESET_PASSWORD_EMAIL_KEY).asString();
+		redeemResetPasswordToken(token);
+		return verifyResetPasswordToken(token);
+	}
+
+	/**
+	 * Gets the email from a password reset token without redeeming it, for a
+	 * caller that redeems it once its own work can no longer be turned away.
+	 * 
+	 * @param token The token to check.
+	 * @return The email in the token if valid.
+	 */
+	public String verifyResetPasswordToken(String token) {
+		return verifier.verify(token).getClaim(RESET_PASSWORD_EMAIL_KEY).asString();
+	}
+
+	/**
+	 * Redeems a password reset token.
+	 * 
+	 * @param token The token.
+	 * @throws JWTVerificationException Thrown if it is invalid or was already
+	 *                                  redeemed.
+	 */
+	public void redeemResetPasswordToken(String token) {
+		DecodedJWT jwt = verifier.verify(token);
+		if (!usedTokenStore.markUsed(hash(token), jwt.getExpiresAtAsInstant())) {
+			throw new JWTVerificationException("Token already used");
+		}
+	}
+
+	/**
+	 * Gives a redeemed password reset token back, when the reset it was
+	 * redeemed for failed.
+	 * 
+	 * @param token The token.
+	 */
+	public void releaseResetPasswordToken(String token) {
+		usedTokenStore.release(hash(token));
+	}
+
+	/**
+	 * Hashes a token so it is not kept in plain text.
+	 * 
+	 * @param token The token.
+	 * @return The hex SHA-256 digest.
+	 */
+	static String hash(String token) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
 	}
-	
-    /**
-     * Scheduled task to clear the usedTokens set every day.
-     */
-    @Scheduled(cron = "0 0 0 * * *") // Run at midnight every day
-    public void clearUsedTokens() {
-        usedTokens.clear();
-    }
 
 }
@@ -0,0 +1,61 @@
+package com.service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Used token store shared by every instance through the used_token table. The
+ * primary key on the token hash makes the first insert win on any node.
+ */
+@Component
+@ConditionalOnProperty(name = "app.tokens.usedStore", havingValue = "jdbc")
+public class JdbcUsedTokenStore implements UsedTokenStore {
+
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param jdbcTemplate
+	 */
+	public JdbcUsedTokenStore(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean markUsed(String tokenHash, Instant expiresAt) {
+		try {
+			jdbcTemplate.update("INSERT INTO used_token (token_hash, expires_at) VALUES (?, ?)", tokenHash,
+					Timestamp.from(expiresAt));
+			return true;
+		} catch (DuplicateKeyException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(String tokenHash) {
+		jdbcTemplate.update("DELETE FROM used_token WHERE token_hash = ?", tokenHash);
+	}
+
+	/**
+	 * Scheduled task to delete the records of tokens that have expired.
+	 */
+	@Scheduled(fixedDelayString = "${app.tokens.purgeIntervalMillis:3600000}")
+	public void purgeExpired() {
+		jdbcTemplate.update("DELETE FROM used_token WHERE expires_at < ?", Timestamp.from(Instant.now()));
+	}
+
+}
@@ -2,36 +2,179 @@ package com.service;
 
 import org.springframework.stereotype.Service;
 
+import org.springframework.data.domain.Limit;
+
+import com.api.model.OrderBody;
+import com.api.model.OrderLineBody;
+import com.api.model.OrderPage;
+import com.api.model.OrderSummary;
+import com.exception.AddressNotFoundException;
+import com.exception.OutOfStockException;
+import com.model.Address;
+import com.model.Inventory;
 import com.model.LocalUser;
 import com.model.WebOrder;
+import com.model.WebOrderQuantities;
+import com.repository.AddressDAO;
+import com.repository.InventoryDAO;
+import com.repository.ProductDAO;
 import com.repository.WebOrderDAO;
 
+import jakarta.transaction.Transactional;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 
-/**
- * Service for handling order actions.
- */
 @Service
 public class OrderService {
 
-  /** The Web Order DAO. */
   private WebOrderDAO webOrderDAO;
+  private InventoryDAO inventoryDAO;
+  private AddressDAO addressDAO;
+  private ProductViewCache productViewCache;
+  private CartService cartService;
+  private ProductDAO productDAO;
+
+  /** The largest page a client may request from the order history. */
+  private static final int MAX_PAGE_SIZE = 100;
 
   /**
    * Constructor for spring injection.
    * @param webOrderDAO
+   * @param inventoryDAO
+   * @param addressDAO
+   * @param productViewCache
+   * @param cartService
+   * @param productDAO
    */
-  public OrderService(WebOrderDAO webOrderDAO) {
+  public OrderService(WebOrderDAO webOrderDAO, InventoryDAO inventoryDAO, AddressDAO addressDAO,
+                      ProductViewCache productViewCache, CartService cartService,
+                      ProductDAO productDAO) {
     this.webOrderDAO = webOrderDAO;
+    this.inventoryDAO = inventoryDAO;
+    this.addressDAO = addressDAO;
+    this.productViewCache = productViewCache;
+    this.cartService = cartService;
+    this.productDAO = productDAO;
+  }
+
+  /**
+   * Gets one page of the user's orders as summaries, newest first, using the
+   * last seen order as a seek cursor. Each page is one statement.
+   * @param user The user.
+   * @param afterTimestamp When the last order seen was placed, null for the first page.
+   * @param afterId The id of the last order seen, null for the first page.
+   * @param size The requested page size, capped at MAX_PAGE_SIZE.
+   * @return The page of orders.
+   */
+  public OrderPage getOrderPage(LocalUser user, Long afterTimestamp, UUID afterId, int size) {
+    int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    // Fetch one extra row to know whether another page follows.
+    Limit limit = Limit.of(pageSize + 1);
+    List<OrderSummary> orders;
+    if (afterTimestamp == null || afterId == null) {
+      orders = webOrderDAO.findFirstPage(user.getId(), limit);
+    } else {
+      orders = webOrderDAO.findPageAfter(user.getId(), new Timestamp(afterTimestamp), afterId, limit);
+    }
+    boolean hasMore = orders.size() > pageSize;
+    if (hasMore) {
+      orders = orders.subList(0, pageSize);
+    }
+    return new OrderPage(orders, hasMore);
+  }
+
+  /**
+   * Gets one of the user's orders with its address, lines and their products
+   * fully loaded, in three statements.
+   * @param user The user.
+   * @param orderId The order id.
+   * @return The order, or null if it is not one of the user's.
+   */
+  @Transactional
+  public WebOrder getOrder(LocalUser user, UUID orderId) {
+    Optional<WebOrder> order = webOrderDAO.findWithDetailsByIdAndUser_Id(orderId, user.getId());
+    if (order.isEmpty()) {
+      return null;
+    }
+    List<UUID> productIds = order.get().getQuantities().stream()
+        .map(quantities -> quantities.getProduct().getId()).distinct().toList();
+    if (!productIds.isEmpty()) {
+      productDAO.fetchInventory(productIds);
+      productDAO.fetchCategories(productIds);
+    }
+    return order.get();
   }
 
   /**
-   * Gets the list of orders for a given user.
-   * @param user The user to search for.
-   * @return The list of orders.
+   * Places an order, reserving the stock of every line in one transaction.
+   * Each line is taken with a conditional update, so there is no read and
+   * write back of the count and buyers of different items never wait on each
+   * other. Lines are applied in inventory id order, so two orders sharing
+   * items lock the rows in the same order and cannot deadlock. The first line
+   * that is short stops the order and rolls back the lines already taken.
+   * Hot entries are taken from memory instead, see {@link HotInventory}. Stock
+   * the user holds in their cart is used first and any left over is given back.
+   * @param user The user placing the order.
+   * @param body The address and lines.
+   * @return The order.
+   * @throws AddressNotFoundException Thrown if the address is not one of the user's.
+   * @throws OutOfStockException Thrown if a line asks for more than is in stock
+   * or for an entry that no longer exists.
    */
-  public List<WebOrder> getOrders(LocalUser user) {
-    return webOrderDAO.findByUser(user);
+  @Transactional(rollbackOn = OutOfStockException.class)
+  public WebOrder placeOrder(LocalUser user, OrderBody body) throws AddressNotFoundException, OutOfStockException {
+    Optional<Address> opAddress = addressDAO.findById(body.getAddressId());
+    if (opAddress.isEmpty() || !opAddress.get().getUser().getId().equals(user.getId())) {
+      throw new AddressNotFoundException();
+    }
+    Map<UUID, Integer> quantities = new TreeMap<>();
+    for (OrderLineBody line : body.getLines()) {
+      quantities.merge(line.getInventoryId(), line.getQuantity(), Integer::sum);
+    }
+    Map<UUID, Integer> held = cartService.claimHolds(user, quantities.keySet());
+    for (Map.Entry<UUID, Integer> line : quantities.entrySet()) {
+      int missing = line.getValue() - held.getOrDefault(line.getKey(), 0);
+      if (missing > 0 && !cartService.takeStock(line.getKey(), missing)) {
+        throw new OutOfStockException(line.getKey());
+      } else if (missing < 0) {
+        cartService.returnStock(line.getKey(), -missing);
+      }
+    }
+
+    WebOrder order = new WebOrder();
+    order.setUser(user);
+    order.setAddress(opAddress.get());
+    order.setCreatedTimestamp(new Timestamp(System.currentTimeMillis()));
+    Set<UUID> productIds = new HashSet<>();
+    List<Inventory> inventories = inventoryDAO.findAllById(quantities.keySet());
+    if (inventories.size() < quantities.size()) {
+      // An entry delisted while its stock was held or taken, the order must not go without it.
+      Set<UUID> found = new HashSet<>();
+      inventories.forEach(inventory -> found.add(inventory.getId()));
+      for (UUID inventoryId : quantities.keySet()) {
+        if (!found.contains(inventoryId)) {
+          throw new OutOfStockException(inventoryId);
+        }
+      }
+    }
+    for (Inventory inventory : inventories) {
+      WebOrderQuantities orderQuantities = new WebOrderQuantities();
+      orderQuantities.setOrder(order);
+      orderQuantities.setInventoryId(inventory.getId());
+      orderQuantities.setProduct(inventory.getProduct());
+      orderQuantities.setQuantity(quantities.get(inventory.getId()));
+      order.getQuantities().add(orderQuantities);
+      productIds.add(inventory.getProduct().getId());
+    }
+    productIds.forEach(productViewCache::invalidateProduct);
+    return webOrderDAO.save(order);
   }
 
-}
\ No newline at end of file
+}
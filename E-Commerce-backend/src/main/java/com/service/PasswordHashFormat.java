@@ -0,0 +1,43 @@
+package com.service;
+
+/**
+ * A password hash format. Every hash carries its own salt and cost, so hashes
+ * made under an older configuration stay verifiable and can be recognised for
+ * upgrading.
+ */
+public interface PasswordHashFormat {
+
+	/**
+	 * Checks whether a stored hash was made in this format.
+	 * 
+	 * @param hash The stored hash.
+	 * @return True if this format can verify it.
+	 */
+	boolean matchesFormat(String hash);
+
+	/**
+	 * Hashes a password with a fresh salt at the configured cost.
+	 * 
+	 * @param password The plain text password.
+	 * @return The encoded hash.
+	 */
+	String hash(String password);
+
+	/**
+	 * Verifies a password against a hash in this format.
+	 * 
+	 * @param password The plain text password.
+	 * @param hash     The stored hash.
+	 * @return True if the password is correct.
+	 */
+	boolean verify(String password, String hash);
+
+	/**
+	 * Checks whether a hash in this format was made below the configured cost.
+	 * 
+	 * @param hash The stored hash.
+	 * @return True if it should be rehashed.
+	 */
+	boolean isBelowCost(String hash);
+
+}
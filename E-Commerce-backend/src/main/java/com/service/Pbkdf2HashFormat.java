@@ -0,0 +1,97 @@
+package com.service;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PBKDF2 with HMAC-SHA256 hashes, encoded as
+ * $pbkdf2-sha256$[iterations]$[salt]$[hash] with Base64 salt and hash.
+ */
+public class Pbkdf2HashFormat implements PasswordHashFormat {
+
+	/** The prefix of the encoded hashes. */
+	private static final String PREFIX = "$pbkdf2-sha256$";
+	/** The salt length in bytes. */
+	private static final int SALT_BYTES = 16;
+	/** The derived key length in bits. */
+	private static final int KEY_BITS = 256;
+
+	/** The iteration count new hashes are made with. */
+	private final int iterations;
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * Creates the format.
+	 * 
+	 * @param iterations The iteration count of new hashes.
+	 */
+	public Pbkdf2HashFormat(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean matchesFormat(String hash) {
+		return hash.startsWith(PREFIX);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String hash(String password) {
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+		return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$"
+				+ encoder.encodeToString(derive(password, salt, iterations));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean verify(String password, String hash) {
+		String[] parts = hash.substring(PREFIX.length()).split("\\$");
+		Base64.Decoder decoder = Base64.getDecoder();
+		byte[] expected = decoder.decode(parts[2]);
+		byte[] actual = derive(password, decoder.decode(parts[1]), Integer.parseInt(parts[0]));
+		return MessageDigest.isEqual(expected, actual);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isBelowCost(String hash) {
+		String count = hash.substring(PREFIX.length(), hash.indexOf('$', PREFIX.length()));
+		return Integer.parseInt(count) < iterations;
+	}
+
+	/**
+	 * Derives the key for a password.
+	 * 
+	 * @param password   The plain text password.
+	 * @param salt       The salt.
+	 * @param iterations The iteration count.
+	 * @return The derived key.
+	 */
+	private static byte[] derive(String password, byte[] salt, int iterations) {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+		try {
+			return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.model.LocalUser;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Bounded in-memory cache of the users authenticated by JWT, keyed by username
+ * and token id. An entry lives until its token expires or the maximum time to
+ * live passes, whichever comes first, so changes made outside UserService are
+ * picked up after at most that long.
+ */
+@Component
+public class PrincipalCache {
+
+	/** The cache of principals by username and token id. */
+	private final Cache<String, Principal> cache;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param maxEntries    The number of principals kept.
+	 * @param maxTtlSeconds The longest an entry is trusted.
+	 * @param meterRegistry The registry the hit and miss counters are bound to.
+	 */
+	public PrincipalCache(@Value("${cache.principal.maxEntries:10000}") long maxEntries,
+			@Value("${cache.principal.maxTtlSeconds:300}") long maxTtlSeconds, MeterRegistry meterRegistry) {
+		long maxTtlNanos = Duration.ofSeconds(maxTtlSeconds).toNanos();
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maxEntries)
+				.expireAfter(new Expiry<String, Principal>() {
+					@Override
+					public long expireAfterCreate(String key, Principal value, long currentTime) {
+						long untilExpiry = Duration.between(Instant.now(), value.expiresAt).toNanos();
+						return Math.max(0, Math.min(untilExpiry, maxTtlNanos));
+					}
+
+					@Override
+					public long expireAfterUpdate(String key, Principal value, long currentTime,
+							long currentDuration) {
+						return expireAfterCreate(key, value, currentTime);
+					}
+
+					@Override
+					public long expireAfterRead(String key, Principal value, long currentTime,
+							long currentDuration) {
+						return currentDuration;
+					}
+				})
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "principals");
+	}
+
+	/**
+	 * Gets the user a token was issued to, loading it once on a miss.
+	 * 
+	 * @param username  The username claimed by the verified token.
+	 * @param tokenId   The id of the token.
+	 * @param expiresAt When the token expires.
+	 * @param loader    Loads the user, returns null when the token should not
+	 *                  authenticate.
+	 * @return The user, or null if the loader returned null.
+	 */
+	public LocalUser get(String username, String tokenId, Instant expiresAt, Supplier<LocalUser> loader) {
+		Principal principal = cache.get(key(username) + tokenId, k -> {
+			LocalUser user = loader.get();
+			return user == null ? null : new Principal(user, expiresAt);
+		});
+		return principal == null ? null : principal.user;
+	}
+
+	/**
+	 * Removes every cached principal of a user. When called inside a transaction
+	 * this happens after commit, so a request cannot reload the old row in
+	 * between.
+	 * 
+	 * @param username The user changed.
+	 */
+	public void invalidateUser(String username) {
+		String prefix = key(username);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+				}
+			});
+		} else {
+			cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Builds the key prefix of a user, usernames are matched ignoring case.
+	 * 
+	 * @param username The username.
+	 * @return The prefix.
+	 */
+	private static String key(String username) {
+		return username.toLowerCase(Locale.ROOT) + ":";
+	}
+
+	/**
+	 * A cached user and the expiry of the token it was loaded for.
+	 */
+	private static class Principal {
+
+		private final LocalUser user;
+		private final Instant expiresAt;
+
+		Principal(LocalUser user, Instant expiresAt) {
+			this.user = user;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+}
@@ -8,15 +8,19 @@ import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import com.api.model.ProductPage;
 import com.model.Category;
 import com.model.Inventory;
 import com.model.Product;
+import com.model.ProductStatus;
 import com.repository.CategoryDAO;
 import com.repository.InventoryDAO;
 import com.repository.ProductDAO;
 
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 
 /**
@@ -29,8 +33,12 @@ public class ProductService {
     private InventoryDAO inventoryDAO;
     private CategoryDAO categoryDAO;
     private ImageDataService imageDataService;
+    private ProductViewCache productViewCache;
+    private HotInventory hotInventory;
+    private EntityManager entityManager;
     
-    
+    /** The largest page a client may request from the catalog. */
+    private final int maxPageSize;
     
     @Value("${encryption.salt.rounds}")
     private int saltRounds;
@@ -39,12 +47,19 @@ public class ProductService {
      * Constructor for spring injection.
      * 
      * @param productDAO
+     * @param maxPageSize The largest page a client may request from the catalog.
      */
-    public ProductService(ProductDAO productDAO, InventoryDAO inventoryDAO, CategoryDAO categoryDAO, ImageDataService imageDataService) {
+    public ProductService(ProductDAO productDAO, InventoryDAO inventoryDAO, CategoryDAO categoryDAO, ImageDataService imageDataService,
+            ProductViewCache productViewCache, HotInventory hotInventory, EntityManager entityManager,
+            @Value("${app.catalog.maxPageSize:100}") int maxPageSize) {
         this.productDAO = productDAO;
         this.inventoryDAO = inventoryDAO;
         this.categoryDAO = categoryDAO;
         this.imageDataService = imageDataService;
+        this.productViewCache = productViewCache;
+        this.hotInventory = hotInventory;
+        this.entityManager = entityManager;
+        this.maxPageSize = maxPageSize;
     }
 
     /**
@@ -52,8 +67,73 @@ public class ProductService {
      * 
      * @return The list of products.
      */
+    @Transactional
     public List<Product> getProducts() {
-        return productDAO.findAll();
+        return fetchDetails(productDAO.findAll());
+    }
+
+    /**
+     * Gets a single product with its categories and inventory loaded.
+     * 
+     * @param productId The id of the product.
+     * @return The product, or null if it does not exist.
+     */
+    @Transactional
+    public Product getProduct(UUID productId) {
+        Optional<Product> product = productDAO.findWithInventoryById(productId);
+        if (product.isEmpty()) {
+            return null;
+        }
+        productDAO.fetchCategories(List.of(productId));
+        return product.get();
+    }
+
+    /**
+     * Loads the categories and inventory of the given products with one query per
+     * collection, so serializing a listing does not trigger a lazy load per row.
+     * 
+     * @param products Products loaded in the current persistence context.
+     * @return The same list, with collections initialised.
+     */
+    private List<Product> fetchDetails(List<Product> products) {
+        if (!products.isEmpty()) {
+            List<UUID> ids = products.stream().map(Product::getId).toList();
+            productDAO.fetchInventory(ids);
+            productDAO.fetchCategories(ids);
+        }
+        return products;
+    }
+
+    /**
+     * Gets one page of the catalog ordered by name, using the last seen product
+     * as a seek cursor so the cost does not grow with how deep the client pages.
+     * 
+     * @param status     Optional status filter.
+     * @param categoryId Optional category filter.
+     * @param minPrice   Optional lowest inventory price.
+     * @param maxPrice   Optional highest inventory price.
+     * @param afterName  Name of the last product seen, null for the first page.
+     * @param afterId    Id of the last product seen, null for the first page.
+     * @param size       The requested page size, capped at app.catalog.maxPageSize.
+     * @return The page of products.
+     */
+    @Transactional
+    public ProductPage getProductPage(ProductStatus status, UUID categoryId, Double minPrice, Double maxPrice,
+            String afterName, UUID afterId, int size) {
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        // Fetch one extra row to know whether another page follows.
+        Limit limit = Limit.of(pageSize + 1);
+        List<Product> products;
+        if (afterName == null || afterId == null) {
+            products = productDAO.findFirstPage(status, categoryId, minPrice, maxPrice, limit);
+        } else {
+            products = productDAO.findPageAfter(afterName, afterId, status, categoryId, minPrice, maxPrice, limit);
+        }
+        boolean hasMore = products.size() > pageSize;
+        if (hasMore) {
+            products = products.subList(0, pageSize);
+        }
+        return new ProductPage(fetchDetails(products), hasMore);
     }
 
     /**
@@ -108,6 +188,7 @@ public class ProductService {
         
         newProduct.setInventory(newInventories);
 
+        productViewCache.invalidateProduct(newProduct.getId());
         return productDAO.save(newProduct);
     }
 
@@ -122,7 +203,7 @@ public class ProductService {
      */
     @Transactional
     public Product updateProduct(UUID productId, Product updatedProduct) {
-        Optional<Product> existingProductOptional = productDAO.findById(productId);
+        Optional<Product> existingProductOptional = productDAO.findWithInventoryById(productId);
         if (existingProductOptional.isPresent()) {
             Product existingProduct = existingProductOptional.get();
             existingProduct.setName(updatedProduct.getName());
@@ -144,11 +225,24 @@ public class ProductService {
                     boolean found = false;
                     for (Inventory existingInventory : existingInventories) {
                         if (existingInventory.getId().equals(updatedInventory.getId())) {
+                            boolean hot = hotInventory.isHot(existingInventory.getId());
                             if (updatedInventory.getQuantity() == 0) {
                                 existingInventories.remove(existingInventory);
                                 inventoryDAO.delete(existingInventory);
+                                if (hot) {
+                                    hotInventory.remove(existingInventory.getId());
+                                }
                             } else {
-                                existingInventory.setQuantity(updatedInventory.getQuantity());
+                                // Orders take stock with updates this load has not seen, so the
+                                // edit is applied as a change against the stock loaded, never as
+                                // the new count, and the entry is reloaded to return the result.
+                                int delta = updatedInventory.getQuantity() - existingInventory.getQuantity();
+                                if (hot) {
+                                    hotInventory.adjust(existingInventory.getId(), delta);
+                                } else if (delta != 0) {
+                                    inventoryDAO.adjustNotBelowZero(existingInventory.getId(), delta);
+                                }
+                                entityManager.refresh(existingInventory);
                                 existingInventory.setColor(updatedInventory.getColor());
                                 existingInventory.setModel(updatedInventory.getModel());
                                 existingInventory.setPrice(updatedInventory.getPrice());
@@ -169,6 +263,7 @@ public class ProductService {
                     }
                 }
             }
+            productViewCache.invalidateProduct(productId);
             return productDAO.save(existingProduct);
         } else {
             return null;
@@ -191,6 +286,7 @@ public class ProductService {
         
         categoryDAO.save(categoryData);
         productDAO.save(product);
+        productViewCache.invalidateProduct(product.getId());
     }
     
     
@@ -199,13 +295,15 @@ public class ProductService {
     public void deleteProduct(UUID productId) {
         Optional<Product> existingProductOptional = productDAO.findById(productId);
         if (existingProductOptional.isPresent()) {
-        	imageDataService.deleteProductFolder(productId);
+        	imageDataService.deleteHolderImages(productId);
             Product existingProduct = existingProductOptional.get();
             productDAO.delete(existingProduct);
+            productViewCache.invalidateProduct(productId);
         }
     }
     
+    @Transactional
     public List<Product> findProductsByUserId(UUID userId) {
-        return productDAO.findByUserId(userId);
+        return fetchDetails(productDAO.findByUserId(userId));
     }
 }
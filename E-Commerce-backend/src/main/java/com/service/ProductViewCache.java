@@ -0,0 +1,147 @@
+package com.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Bounded in-memory cache of serialized product views. Each entry is a UTF-8
+ * JSON snapshot versioned by a hash of its content, weighed by its size in
+ * bytes and evicted with Caffeine's TinyLFU policy.
+ */
+@Component
+public class ProductViewCache {
+
+	/** Key of the full catalog listing. */
+	public static final String CATALOG_KEY = "catalog";
+	/** Prefix of the keys for catalog pages. */
+	public static final String PAGE_PREFIX = "page:";
+	/** Prefix of the keys for single products. */
+	public static final String PRODUCT_PREFIX = "product:";
+
+	/** The cache of snapshots by view key. */
+	private final Cache<String, Snapshot> cache;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param maxBytes      The total size of the cached views allowed.
+	 * @param meterRegistry The registry the hit and miss counters are bound to.
+	 */
+	public ProductViewCache(@Value("${cache.product.maxBytes:33554432}") long maxBytes, MeterRegistry meterRegistry) {
+		this.cache = Caffeine.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher((String key, Snapshot value) -> key.length() + value.getBody().length + value.getETag().length())
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "productViews");
+	}
+
+	/**
+	 * Gets a view, rendering it once on a miss. Concurrent readers of the same key
+	 * wait for the single load.
+	 * 
+	 * @param key    The view key.
+	 * @param loader Serializes the view from the database, returns null when
+	 *               there is nothing to cache.
+	 * @return The snapshot, or null if the loader returned null.
+	 */
+	public Snapshot get(String key, Supplier<byte[]> loader) {
+		return cache.get(key, k -> {
+			byte[] body = loader.get();
+			return body == null ? null : new Snapshot(body);
+		});
+	}
+
+	/**
+	 * Removes the views affected by a change to a product: the product itself,
+	 * the catalog and every catalog page. When called inside a transaction this
+	 * happens after commit, so a reader cannot reload the old rows in between.
+	 * 
+	 * @param productId The product changed, may be null for a new product.
+	 */
+	public void invalidateProduct(UUID productId) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					evictProduct(productId);
+				}
+			});
+		} else {
+			evictProduct(productId);
+		}
+	}
+
+	/**
+	 * Evicts the product, catalog and page entries straight away.
+	 * 
+	 * @param productId The product changed, may be null.
+	 */
+	private void evictProduct(UUID productId) {
+		if (productId != null) {
+			cache.invalidate(PRODUCT_PREFIX + productId);
+		}
+		cache.invalidate(CATALOG_KEY);
+		cache.asMap().keySet().removeIf(key -> key.startsWith(PAGE_PREFIX));
+	}
+
+	/**
+	 * A pre-rendered view and the entity tag derived from its content.
+	 */
+	public static class Snapshot {
+
+		/** The UTF-8 JSON body. */
+		private final byte[] body;
+		/** The quoted strong entity tag of the body. */
+		private final String eTag;
+
+		/**
+		 * Creates a snapshot, hashing the body once.
+		 * 
+		 * @param body The UTF-8 JSON body.
+		 */
+		public Snapshot(byte[] body) {
+			this.body = body;
+			this.eTag = "\"" + hash(body) + "\"";
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * Hashes the body with SHA-256.
+		 * 
+		 * @param body The bytes to hash.
+		 * @return The URL safe Base64 digest.
+		 */
+		private static String hash(byte[] body) {
+			try {
+				byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+				return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+	}
+
+}
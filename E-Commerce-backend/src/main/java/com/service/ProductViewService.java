@@ -0,0 +1,90 @@
+package com.service;
+
+import java.util.UUID;
+
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.model.Product;
+import com.model.ProductStatus;
+
+/**
+ * Service for serving the catalog as pre-serialized JSON, read through the
+ * product view cache.
+ */
+@Service
+public class ProductViewService {
+
+	/** The product service the views are loaded from. */
+	private ProductService productService;
+	/** The cache of serialized views. */
+	private ProductViewCache productViewCache;
+	/** The object mapper used to serialize views. */
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param productService
+	 * @param productViewCache
+	 * @param objectMapper
+	 */
+	public ProductViewService(ProductService productService, ProductViewCache productViewCache,
+			ObjectMapper objectMapper) {
+		this.productService = productService;
+		this.productViewCache = productViewCache;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Gets the full catalog as JSON.
+	 * 
+	 * @return The snapshot.
+	 */
+	public ProductViewCache.Snapshot getCatalog() {
+		return productViewCache.get(ProductViewCache.CATALOG_KEY, () -> toJson(productService.getProducts()));
+	}
+
+	/**
+	 * Gets a page of the catalog as JSON.
+	 * 
+	 * @see ProductService#getProductPage
+	 * @return The snapshot.
+	 */
+	public ProductViewCache.Snapshot getPage(ProductStatus status, UUID categoryId, Double minPrice, Double maxPrice, String afterName,
+			UUID afterId, int size) {
+		String key = ProductViewCache.PAGE_PREFIX + status + "|" + categoryId + "|" + minPrice + "|" + maxPrice + "|"
+				+ afterName + "|" + afterId + "|" + size;
+		return productViewCache.get(key, () -> toJson(
+				productService.getProductPage(status, categoryId, minPrice, maxPrice, afterName, afterId, size)));
+	}
+
+	/**
+	 * Gets a single product as JSON.
+	 * 
+	 * @param productId The product id.
+	 * @return The snapshot, or null if the product does not exist.
+	 */
+	public ProductViewCache.Snapshot getProduct(UUID productId) {
+		return productViewCache.get(ProductViewCache.PRODUCT_PREFIX + productId, () -> {
+			Product product = productService.getProduct(productId);
+			return product == null ? null : toJson(product);
+		});
+	}
+
+	/**
+	 * Serializes a view.
+	 * 
+	 * @param view The object to serialize.
+	 * @return The UTF-8 JSON bytes.
+	 */
+	private byte[] toJson(Object view) {
+		try {
+			return objectMapper.writeValueAsBytes(view);
+		} catch (JsonProcessingException ex) {
+			throw new IllegalStateException("Unable to serialize product view", ex);
+		}
+	}
+
+}
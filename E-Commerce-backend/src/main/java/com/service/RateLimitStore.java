@@ -0,0 +1,23 @@
+package com.service;
+
+import java.time.Duration;
+
+/**
+ * Holds the token buckets of the rate limiter. A bucket holds up to capacity
+ * tokens and refills at capacity per window. Implementations must take a token
+ * atomically, a shared implementation lets every instance enforce one limit.
+ */
+public interface RateLimitStore {
+
+	/**
+	 * Takes a token from a bucket, creating it full if it does not exist.
+	 * 
+	 * @param key      The bucket.
+	 * @param capacity The most tokens the bucket holds.
+	 * @param window   The time the bucket takes to refill completely.
+	 * @return 0 if a token was taken, otherwise the milliseconds until one is
+	 *         available.
+	 */
+	long tryAcquire(String key, int capacity, Duration window);
+
+}
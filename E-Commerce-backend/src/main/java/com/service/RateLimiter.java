@@ -0,0 +1,121 @@
+package com.service;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.exception.TooManyRequestsException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Throttles the authentication endpoints with token buckets, one per client
+ * address and one per account. Each limit is the number of requests allowed
+ * per window, a limit of 0 turns that bucket off.
+ */
+@Component
+public class RateLimiter {
+
+	/** The store holding the buckets. */
+	private RateLimitStore rateLimitStore;
+	/** The registry rejections are counted in. */
+	private MeterRegistry meterRegistry;
+	/** The time a bucket takes to refill completely. */
+	private final Duration window;
+	/** Login attempts per address. */
+	@Value("${app.rateLimit.login.perIp:30}")
+	private int loginPerIp;
+	/** Login attempts per username. */
+	@Value("${app.rateLimit.login.perAccount:10}")
+	private int loginPerAccount;
+	/** Registrations per address. */
+	@Value("${app.rateLimit.register.perIp:10}")
+	private int registerPerIp;
+	/** Registrations per email. */
+	@Value("${app.rateLimit.register.perAccount:3}")
+	private int registerPerAccount;
+	/** Password reset emails per address. */
+	@Value("${app.rateLimit.forgot.perIp:10}")
+	private int forgotPerIp;
+	/** Password reset emails per email. */
+	@Value("${app.rateLimit.forgot.perAccount:3}")
+	private int forgotPerAccount;
+
+	/**
+	 * Constructor for spring injection.
+	 *
+	 * @param rateLimitStore
+	 * @param meterRegistry
+	 * @param windowSeconds  The time a bucket takes to refill completely.
+	 */
+	public RateLimiter(RateLimitStore rateLimitStore, MeterRegistry meterRegistry,
+			@Value("${app.rateLimit.windowSeconds:60}") long windowSeconds) {
+		this.rateLimitStore = rateLimitStore;
+		this.meterRegistry = meterRegistry;
+		this.window = Duration.ofSeconds(windowSeconds);
+	}
+
+	/**
+	 * Takes a login attempt from the address and the username.
+	 *
+	 * @param ip       The client address.
+	 * @param username The username logging in.
+	 * @throws TooManyRequestsException Thrown if either is over its limit.
+	 */
+	public void checkLogin(String ip, String username) throws TooManyRequestsException {
+		check("login", ip, loginPerIp, username, loginPerAccount);
+	}
+
+	/**
+	 * Takes a registration from the address and the email.
+	 *
+	 * @param ip    The client address.
+	 * @param email The email registering.
+	 * @throws TooManyRequestsException Thrown if either is over its limit.
+	 */
+	public void checkRegister(String ip, String email) throws TooManyRequestsException {
+		check("register", ip, registerPerIp, email, registerPerAccount);
+	}
+
+	/**
+	 * Takes a password reset email from the address and the email.
+	 *
+	 * @param ip    The client address.
+	 * @param email The email the reset is for.
+	 * @throws TooManyRequestsException Thrown if either is over its limit.
+	 */
+	public void checkForgot(String ip, String email) throws TooManyRequestsException {
+		check("forgot", ip, forgotPerIp, email, forgotPerAccount);
+	}
+
+	/**
+	 * Takes a token from the address bucket and then the account bucket of an
+	 * endpoint.
+	 */
+	private void check(String endpoint, String ip, int ipLimit, String account, int accountLimit)
+			throws TooManyRequestsException {
+		acquire(endpoint, "ip:" + ip, ipLimit);
+		if (account != null) {
+			acquire(endpoint, "account:" + account.toLowerCase(Locale.ROOT), accountLimit);
+		}
+	}
+
+	/**
+	 * Takes a token from a bucket.
+	 *
+	 * @throws TooManyRequestsException Thrown if the bucket is empty.
+	 */
+	private void acquire(String endpoint, String key, int limit) throws TooManyRequestsException {
+		if (limit <= 0) {
+			return;
+		}
+		long waitMillis = rateLimitStore.tryAcquire(endpoint + ":" + key, limit, window);
+		if (waitMillis > 0) {
+			meterRegistry.counter("auth.ratelimit.rejected", "endpoint", endpoint).increment();
+			throw new TooManyRequestsException((waitMillis + 999) / 1000);
+		}
+	}
+
+}
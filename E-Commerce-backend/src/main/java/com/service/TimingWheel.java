@@ -0,0 +1,223 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel of keys waiting for a deadline. Time is counted in
+ * ticks. Each of the four levels has 64 slots and a slot of a level spans a
+ * full turn of the level below, so the wheel covers 2^24 ticks ahead and
+ * further deadlines are parked at its far end. Scheduling and cancelling are
+ * O(1), a key is moved down a level at most four times before it expires.
+ * <p>
+ * Thread safe, every method locks the wheel.
+ *
+ * @param <K> The key type.
+ */
+public class TimingWheel<K> {
+
+	/** The bits of a tick picking the slot of a level. */
+	private static final int SLOT_BITS = 6;
+	/** The slots per level. */
+	private static final int SLOTS = 1 << SLOT_BITS;
+	/** The slot index mask. */
+	private static final int SLOT_MASK = SLOTS - 1;
+	/** The number of levels. */
+	private static final int LEVELS = 4;
+	/** The ticks covered by the whole wheel. */
+	private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+	/**
+	 * A scheduled key, linked into the list of its slot.
+	 */
+	private static class Node<K> {
+		private final K key;
+		private final long deadline;
+		private Node<K> previous;
+		private Node<K> next;
+
+		private Node(K key, long deadline) {
+			this.key = key;
+			this.deadline = deadline;
+		}
+	}
+
+	/** The length of a tick in milliseconds. */
+	private final long tickMillis;
+	/** The head sentinel of every slot, by level and slot. */
+	private final Node<K>[][] slots;
+	/** The scheduled nodes by key, so cancelling finds them in O(1). */
+	private final Map<K, Node<K>> nodes = new HashMap<>();
+	/** The last tick processed. */
+	private long currentTick;
+
+	/**
+	 * Creates an empty wheel.
+	 *
+	 * @param tickMillis The length of a tick in milliseconds.
+	 * @param nowMillis  The current time.
+	 */
+	public TimingWheel(long tickMillis, long nowMillis) {
+		this.tickMillis = tickMillis;
+		this.currentTick = nowMillis / tickMillis;
+		// A generic array can not be created. The cast is safe, the array never
+		// leaves the wheel and only holds the Node<K> heads made below.
+		@SuppressWarnings("unchecked")
+		Node<K>[][] heads = (Node<K>[][]) new Node<?>[LEVELS][SLOTS];
+		this.slots = heads;
+		for (Node<K>[] level : slots) {
+			for (int i = 0; i < SLOTS; i++) {
+				Node<K> head = new Node<>(null, 0);
+				head.previous = head;
+				head.next = head;
+				level[i] = head;
+			}
+		}
+	}
+
+	/**
+	 * Schedules a key, replacing its earlier deadline if any. A deadline in the
+	 * past expires on the next tick.
+	 *
+	 * @param key            The key.
+	 * @param deadlineMillis When it expires.
+	 */
+	public synchronized void schedule(K key, long deadlineMillis) {
+		Node<K> existing = nodes.remove(key);
+		if (existing != null) {
+			unlink(existing);
+		}
+		Node<K> node = new Node<>(key, Math.max(ceilDiv(deadlineMillis, tickMillis), currentTick + 1));
+		nodes.put(key, node);
+		place(node, currentTick + 1);
+	}
+
+	/**
+	 * Cancels a key.
+	 *
+	 * @param key The key.
+	 * @return True if it was scheduled.
+	 */
+	public synchronized boolean cancel(K key) {
+		Node<K> node = nodes.remove(key);
+		if (node == null) {
+			return false;
+		}
+		unlink(node);
+		return true;
+	}
+
+	/**
+	 * Moves the wheel up to the current time.
+	 *
+	 * @param nowMillis The current time.
+	 * @return The keys that expired, they are no longer scheduled.
+	 */
+	public synchronized List<K> advance(long nowMillis) {
+		long nowTick = nowMillis / tickMillis;
+		List<K> expired = new ArrayList<>();
+		if (nodes.isEmpty()) {
+			currentTick = Math.max(currentTick, nowTick);
+			return expired;
+		}
+		while (currentTick < nowTick) {
+			long tick = ++currentTick;
+			// Higher levels first, so keys moved down in this tick are seen by the
+			// level below.
+			for (int level = LEVELS - 1; level > 0; level--) {
+				int shift = SLOT_BITS * level;
+				if ((tick & ((1L << shift) - 1)) == 0) {
+					Node<K> head = slots[level][(int) (tick >>> shift) & SLOT_MASK];
+					for (Node<K> node = detach(head); node != null;) {
+						Node<K> next = node.next;
+						place(node, tick);
+						node = next;
+					}
+				}
+			}
+			Node<K> head = slots[0][(int) tick & SLOT_MASK];
+			for (Node<K> node = detach(head); node != null;) {
+				Node<K> next = node.next;
+				if (node.deadline > tick) {
+					place(node, tick + 1);
+				} else {
+					nodes.remove(node.key);
+					expired.add(node.key);
+				}
+				node = next;
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Gets the number of keys scheduled.
+	 *
+	 * @return The count.
+	 */
+	public synchronized int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Links a node into the slot of its deadline. The level is the highest group
+	 * of slot bits where the deadline and the first tick still to process
+	 * differ, so the slot is reached before the deadline.
+	 *
+	 * @param node The node.
+	 * @param base The first tick still to process.
+	 */
+	private void place(Node<K> node, long base) {
+		long deadline = Math.max(node.deadline, base);
+		if ((deadline ^ base) >= SPAN) {
+			// Parked on the last tick of the current turn, then placed again.
+			deadline = base | (SPAN - 1);
+		}
+		int level = 0;
+		while (level < LEVELS - 1 && (deadline >>> (SLOT_BITS * (level + 1))) != (base >>> (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		Node<K> head = slots[level][(int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK];
+		node.previous = head.previous;
+		node.next = head;
+		head.previous.next = node;
+		head.previous = node;
+	}
+
+	/**
+	 * Unlinks a node from its slot.
+	 */
+	private void unlink(Node<K> node) {
+		node.previous.next = node.next;
+		node.next.previous = node.previous;
+		node.previous = null;
+		node.next = null;
+	}
+
+	/**
+	 * Empties a slot.
+	 *
+	 * @return The first node of what the slot held, linked through next and
+	 *         ending with null.
+	 */
+	private Node<K> detach(Node<K> head) {
+		if (head.next == head) {
+			return null;
+		}
+		Node<K> first = head.next;
+		head.previous.next = null;
+		head.previous = head;
+		head.next = head;
+		return first;
+	}
+
+	/**
+	 * Divides rounding up, so a key never expires early.
+	 */
+	private static long ceilDiv(long dividend, long divisor) {
+		return -Math.floorDiv(-dividend, divisor);
+	}
+
+}
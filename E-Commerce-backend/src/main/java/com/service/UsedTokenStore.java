@@ -0,0 +1,29 @@
+package com.service;
+
+import java.time.Instant;
+
+/**
+ * Records single use tokens once they are redeemed. Implementations must make
+ * the check and the insert one atomic step, so a token racing itself is
+ * accepted at most once.
+ */
+public interface UsedTokenStore {
+
+	/**
+	 * Marks a token as used.
+	 * 
+	 * @param tokenHash The SHA-256 of the token.
+	 * @param expiresAt When the token expires, after which the record may go.
+	 * @return True if this was the first use, false if it was already used.
+	 */
+	boolean markUsed(String tokenHash, Instant expiresAt);
+
+	/**
+	 * Forgets a use, for a redemption whose work failed, so the token can be
+	 * used again.
+	 * 
+	 * @param tokenHash The SHA-256 of the token.
+	 */
+	void release(String tokenHash);
+
+}
@@ -0,0 +1,63 @@
+package com.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import com.model.LocalUser;
+import com.repository.LocalUserDAO;
+
+/**
+ * Fills the lower case username and email columns of users created before
+ * they existed, at startup. Each user is updated on its own, so users that
+ * differ only by case from another one are skipped and reported instead of
+ * stopping the others. Skipped users keep working through the fallback
+ * lookups of LocalUserDAO until they are merged. Once every row is filled
+ * there is nothing to do.
+ */
+@Component
+public class UserNormalizationMigration implements ApplicationRunner {
+
+	/** The Local User DAO. */
+	private LocalUserDAO localUserDAO;
+
+	/**
+	 * Constructor for spring injection.
+	 *
+	 * @param localUserDAO
+	 */
+	public UserNormalizationMigration(LocalUserDAO localUserDAO) {
+		this.localUserDAO = localUserDAO;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		int updated = 0;
+		List<String> conflicts = new ArrayList<>();
+		for (LocalUserDAO.Unnormalized user : localUserDAO.findAllUnnormalized()) {
+			try {
+				updated += localUserDAO.setNormalized(user.getId(), LocalUser.normalize(user.getUsername()),
+						LocalUser.normalize(user.getEmail()));
+			} catch (DataIntegrityViolationException ex) {
+				conflicts.add(user.getId() + " (" + user.getUsername() + ", " + user.getEmail() + ")");
+			}
+		}
+		if (updated > 0) {
+			System.out.println("Normalized the username and email of " + updated + " users");
+		}
+		if (!conflicts.isEmpty()) {
+			System.out.println("WARNING: " + conflicts.size() + " users differ only by case from another user and"
+					+ " were not normalized. They must be merged, until then each is only found by a username or email"
+					+ " no other user has in any case: "
+					+ String.join(", ", conflicts));
+		}
+	}
+
+}
@@ -1,12 +1,15 @@
 package com.service;
 
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.CrossOrigin;
 
 import com.api.model.LoginBody;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.api.model.PasswordResetBody;
 import com.api.model.RegistrationBody;
-import com.exception.EmailFailureException;
 import com.exception.EmailNotFoundException;
 import com.exception.UserAlreadyExistsException;
 import com.exception.UserNotVerifiedException;
@@ -18,9 +21,11 @@ import com.repository.VerificationTokenDAO;
 import jakarta.transaction.Transactional;
 
 import java.sql.Timestamp;
-import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Service for handling user actions.
@@ -38,6 +43,10 @@ public class UserService {
   private JWTService jwtService;
   /** The email service. */
   private EmailService emailService;
+  /** The cache of authenticated users. */
+  private PrincipalCache principalCache;
+  /** The pool passwords are hashed on. */
+  private HashingExecutor hashingExecutor;
 
   /**
    * Constructor injected by spring.
@@ -47,109 +56,177 @@ public class UserService {
    * @param encryptionService
    * @param jwtService
    * @param emailService
+   * @param principalCache
+   * @param hashingExecutor
    */
   public UserService(LocalUserDAO localUserDAO, VerificationTokenDAO verificationTokenDAO, EncryptionService encryptionService,
-                     JWTService jwtService, EmailService emailService) {
+                     JWTService jwtService, EmailService emailService, PrincipalCache principalCache,
+                     HashingExecutor hashingExecutor) {
     this.localUserDAO = localUserDAO;
     this.verificationTokenDAO = verificationTokenDAO;
     this.encryptionService = encryptionService;
     this.jwtService = jwtService;
     this.emailService = emailService;
+    this.principalCache = principalCache;
+    this.hashingExecutor = hashingExecutor;
   }
 
   /**
-   * Attempts to register a user given the information provided.
+   * Attempts to register a user given the information provided. The password
+   * is hashed on the hashing pool, the user is saved and the verification
+   * email queued once it is done.
    * @param registrationBody The registration information.
-   * @return The local user that has been written to the database.
+   * @return The local user that has been written to the database. Completes
+   * with UserAlreadyExistsException if a concurrent registration took the
+   * username or email first.
    * @throws UserAlreadyExistsException Thrown if there is already a user with the given information.
+   * @throws RejectedExecutionException Thrown if the hashing pool is full.
    */
-  public LocalUser registerUser(RegistrationBody registrationBody) throws UserAlreadyExistsException, EmailFailureException {
-    if (localUserDAO.findByEmailIgnoreCase(registrationBody.getEmail()).isPresent()
-        || localUserDAO.findByUsernameIgnoreCase(registrationBody.getUsername()).isPresent()) {
+  public CompletableFuture<LocalUser> registerUser(RegistrationBody registrationBody) throws UserAlreadyExistsException {
+    if (localUserDAO.existsByUsernameOrEmail(registrationBody.getUsername(), registrationBody.getEmail())) {
       throw new UserAlreadyExistsException();
     }
-    LocalUser user = new LocalUser();
-    user.setEmail(registrationBody.getEmail());
-    user.setUsername(registrationBody.getUsername());
-    user.setFirstName(registrationBody.getFirstName());
-    user.setLastName(registrationBody.getLastName());
-    user.setPassword(encryptionService.encryptPassword(registrationBody.getPassword()));
-    VerificationToken verificationToken = createVerificationToken(user);
-    emailService.sendVerificationEmail(verificationToken);
-    return localUserDAO.save(user);
+    return hashingExecutor.submit(() -> encryptionService.encryptPassword(registrationBody.getPassword()))
+        .thenApply(hash -> {
+          LocalUser user = new LocalUser();
+          user.setEmail(registrationBody.getEmail());
+          user.setUsername(registrationBody.getUsername());
+          user.setFirstName(registrationBody.getFirstName());
+          user.setLastName(registrationBody.getLastName());
+          user.setPassword(hash);
+          VerificationToken verificationToken = createVerificationToken(user);
+          user.getVerificationTokens().add(verificationToken);
+          LocalUser saved;
+          try {
+            saved = localUserDAO.save(user);
+          } catch (DataIntegrityViolationException ex) {
+            // Another registration took the username or email since the check.
+            throw new CompletionException(new UserAlreadyExistsException());
+          }
+          emailService.sendVerificationEmail(verificationToken);
+          return saved;
+        });
   }
 
   /**
-   * Creates a VerificationToken object for sending to the user.
+   * Creates a VerificationToken object for sending to the user. Only the hash
+   * of the token is stored, the token itself is only in the email.
    * @param user The user the token is being generated for.
    * @return The object created.
    */
   private VerificationToken createVerificationToken(LocalUser user) {
+    String token = jwtService.generateVerificationJWT(user);
     VerificationToken verificationToken = new VerificationToken();
-    verificationToken.setToken(jwtService.generateVerificationJWT(user));
+    verificationToken.setToken(token);
+    verificationToken.setTokenHash(JWTService.hash(token));
     verificationToken.setCreatedTimestamp(new Timestamp(System.currentTimeMillis()));
+    verificationToken.setExpiresAt(Timestamp.from(JWT.decode(token).getExpiresAtAsInstant()));
     verificationToken.setUser(user);
-    user.getVerificationTokens().add(verificationToken);
     return verificationToken;
   }
 
   /**
-   * Logins in a user and provides an authentication token back.
+   * Logins in a user and provides an authentication token back. The password
+   * is checked on the hashing pool.
    * @param loginBody The login request.
-   * @return The authentication token. Null if the request was invalid.
+   * @return The authentication token. Null if the request was invalid. Completes
+   * with UserNotVerifiedException if the user is not verified.
+   * @throws RejectedExecutionException Thrown if the hashing pool is full.
    */
-
-  public String loginUser(LoginBody loginBody) throws UserNotVerifiedException, EmailFailureException {
+  public CompletableFuture<String> loginUser(LoginBody loginBody) {
     Optional<LocalUser> opUser = localUserDAO.findByUsernameIgnoreCase(loginBody.getUsername());
-    if (opUser.isPresent()) {
-      LocalUser user = opUser.get();
-      if (encryptionService.verifyPassword(loginBody.getPassword(), user.getPassword())) {
-        if (user.isEmailVerified()) {
-          return jwtService.generateJWT(user);
-        } else {
-          List<VerificationToken> verificationTokens = user.getVerificationTokens();
-          boolean resend = verificationTokens.size() == 0 ||
-              verificationTokens.get(0).getCreatedTimestamp().before(new Timestamp(System.currentTimeMillis() - (60 * 60 * 1000)));
-          if (resend) {
-            VerificationToken verificationToken = createVerificationToken(user);
-            verificationTokenDAO.save(verificationToken);
-            emailService.sendVerificationEmail(verificationToken);
+    if (opUser.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    LocalUser user = opUser.get();
+    return hashingExecutor.submit(() -> encryptionService.verifyPassword(loginBody.getPassword(), user.getPassword()))
+        .thenApply(matches -> {
+          if (!matches) {
+            return null;
+          }
+          rehashIfOutdated(user, loginBody.getPassword());
+          if (user.isEmailVerified()) {
+            return jwtService.generateJWT(user);
           }
-          throw new UserNotVerifiedException(resend);
-        }
+          throw new CompletionException(new UserNotVerifiedException(resendVerificationEmail(user)));
+        });
+  }
+
+  /**
+   * Upgrades a password hash made in an older format or at a lower cost than
+   * configured, in the background. The new hash only replaces the old one if
+   * the password was not changed in the meantime.
+   * @param user The user who just logged in.
+   * @param password The password they logged in with.
+   */
+  private void rehashIfOutdated(LocalUser user, String password) {
+    String oldHash = user.getPassword();
+    if (encryptionService.needsRehash(oldHash)) {
+      try {
+        hashingExecutor.submit(() -> encryptionService.encryptPassword(password))
+            .thenAccept(newHash -> localUserDAO.replacePassword(user.getId(), oldHash, newHash));
+      } catch (RejectedExecutionException ex) {
+        // The pool is busy with logins, the hash is upgraded on a later one.
       }
     }
-    return null;
+  }
+
+  /**
+   * Queues a new verification email unless one was sent in the last hour. Only
+   * the latest token of the user is queried.
+   * @param user The unverified user.
+   * @return True if a new email was queued.
+   */
+  private boolean resendVerificationEmail(LocalUser user) {
+    Optional<VerificationToken> latest = verificationTokenDAO.findFirstByUser_IdOrderByCreatedTimestampDesc(user.getId());
+    boolean resend = latest.isEmpty() ||
+        latest.get().getCreatedTimestamp().before(new Timestamp(System.currentTimeMillis() - (60 * 60 * 1000)));
+    if (resend) {
+      VerificationToken verificationToken = createVerificationToken(user);
+      verificationTokenDAO.save(verificationToken);
+      emailService.sendVerificationEmail(verificationToken);
+    }
+    return resend;
   }
 
   /**
    * Verifies a user from the given token.
    * @param token The token to use to verify a user.
-   * @return True if it was verified, false if already verified or token invalid.
+   * @return True if it was verified, false if already verified or token invalid
+   * or expired.
    */
   @Transactional
   public boolean verifyUser(String token) {
-    Optional<VerificationToken> opToken = verificationTokenDAO.findByToken(token);
-    if (opToken.isPresent()) {
+    Optional<VerificationToken> opToken = verificationTokenDAO.findByTokenHash(JWTService.hash(token));
+    if (opToken.isPresent() && opToken.get().getExpiresAt().after(new Timestamp(System.currentTimeMillis()))) {
       VerificationToken verificationToken = opToken.get();
       LocalUser user = verificationToken.getUser();
       if (!user.isEmailVerified()) {
         user.setEmailVerified(true);
         localUserDAO.save(user);
         verificationTokenDAO.deleteByUser(user);
+        principalCache.invalidateUser(user.getUsername());
         return true;
       }
     }
     return false;
   }
 
+  /**
+   * Scheduled task to delete the verification tokens that have expired, so
+   * sign-ups that are never verified do not grow the table forever.
+   */
+  @Scheduled(fixedDelayString = "${app.tokens.purgeIntervalMillis:3600000}")
+  public void purgeExpiredVerificationTokens() {
+    verificationTokenDAO.deleteExpired(new Timestamp(System.currentTimeMillis()));
+  }
+
   /**
    * Sends the user a forgot password reset based on the email provided.
    * @param email The email to send to.
    * @throws EmailNotFoundException Thrown if there is no user with that email.
-   * @throws EmailFailureException
    */
-  public void forgotPassword(String email) throws EmailNotFoundException, EmailFailureException {
+  public void forgotPassword(String email) throws EmailNotFoundException {
     Optional<LocalUser> opUser = localUserDAO.findByEmailIgnoreCase(email);
     if (opUser.isPresent()) {
       LocalUser user = opUser.get();
@@ -161,17 +238,37 @@ public class UserService {
   }
 
   /**
-   * Resets the users password using a given token and email.
+   * Resets the users password using a given token and email. The new password
+   * is hashed on the hashing pool and the token is only redeemed once the hash
+   * is done, so a reset turned away by a full pool can be retried with the
+   * same token. The token is given back if the password can not be saved.
    * @param body The password reset information.
+   * @return Completes once the password is saved, or with
+   * JWTVerificationException if the token was redeemed in the meantime.
+   * @throws JWTVerificationException Thrown if the token is invalid.
+   * @throws RejectedExecutionException Thrown if the hashing pool is full.
    */
-  public void resetPassword(PasswordResetBody body) {
-    String email = jwtService.getResetPasswordEmail(body.getToken());
+  public CompletableFuture<Void> resetPassword(PasswordResetBody body) {
+    String token = body.getToken();
+    String email = jwtService.verifyResetPasswordToken(token);
     Optional<LocalUser> opUser = localUserDAO.findByEmailIgnoreCase(email);
-    if (opUser.isPresent()) {
-      LocalUser user = opUser.get();
-      user.setPassword(encryptionService.encryptPassword(body.getPassword()));
-      localUserDAO.save(user);
+    if (opUser.isEmpty()) {
+      jwtService.redeemResetPasswordToken(token);
+      return CompletableFuture.completedFuture(null);
     }
+    LocalUser user = opUser.get();
+    return hashingExecutor.submit(() -> encryptionService.encryptPassword(body.getPassword()))
+        .thenAccept(hash -> {
+          jwtService.redeemResetPasswordToken(token);
+          try {
+            user.setPassword(hash);
+            localUserDAO.save(user);
+          } catch (RuntimeException ex) {
+            jwtService.releaseResetPasswordToken(token);
+            throw ex;
+          }
+          principalCache.invalidateUser(user.getUsername());
+        });
   }
   
   /**
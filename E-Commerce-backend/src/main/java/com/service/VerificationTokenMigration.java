@@ -0,0 +1,128 @@
+package com.service;
+
+import java.sql.Clob;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+
+/**
+ * Moves verification tokens stored in plain text to the hashed columns at
+ * startup. Each legacy row gets the hash and expiry of its token, rows whose
+ * token can not be decoded are deleted, then the old token column is dropped
+ * so inserts, which no longer fill it, stop failing on its NOT NULL
+ * constraint. Once the column is gone this does nothing.
+ */
+@Component
+public class VerificationTokenMigration implements ApplicationRunner {
+
+	/** The JDBC template, the legacy column is not mapped by the entity. */
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * Constructor for spring injection.
+	 * 
+	 * @param jdbcTemplate
+	 */
+	public VerificationTokenMigration(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!hasLegacyTokenColumn()) {
+			return;
+		}
+		List<Map<String, Object>> rows = jdbcTemplate
+				.queryForList("SELECT id, token FROM verification_token WHERE token_hash IS NULL");
+		int hashed = 0;
+		int deleted = 0;
+		for (Map<String, Object> row : rows) {
+			Object id = row.get("id");
+			String token = readToken(row.get("token"));
+			Instant expiresAt = expiresAt(token);
+			if (expiresAt == null) {
+				jdbcTemplate.update("DELETE FROM verification_token WHERE id = ?", id);
+				deleted++;
+			} else {
+				jdbcTemplate.update("UPDATE verification_token SET token_hash = ?, expires_at = ? WHERE id = ?",
+						JWTService.hash(token), Timestamp.from(expiresAt), id);
+				hashed++;
+			}
+		}
+		jdbcTemplate.execute("ALTER TABLE verification_token DROP COLUMN token");
+		System.out.println("Hashed " + hashed + " verification tokens, deleted " + deleted
+				+ " unreadable ones and dropped the plain text column");
+	}
+
+	/**
+	 * Reads the legacy token column, a CLOB on MySQL.
+	 * 
+	 * @param value The column value.
+	 * @return The token, null if missing or unreadable.
+	 */
+	private static String readToken(Object value) {
+		try {
+			if (value instanceof Clob clob) {
+				return clob.getSubString(1, (int) clob.length());
+			}
+		} catch (SQLException ex) {
+			return null;
+		}
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Gets the expiry of a token.
+	 * 
+	 * @param token The token.
+	 * @return When it expires, null if it can not be decoded or never expires.
+	 */
+	private static Instant expiresAt(String token) {
+		if (token == null) {
+			return null;
+		}
+		try {
+			return JWT.decode(token).getExpiresAtAsInstant();
+		} catch (JWTDecodeException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether the table still has the plain text token column.
+	 * 
+	 * @return True if it does.
+	 */
+	private boolean hasLegacyTokenColumn() {
+		return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+			DatabaseMetaData metaData = connection.getMetaData();
+			for (String table : new String[] { "verification_token", "VERIFICATION_TOKEN" }) {
+				try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, null)) {
+					while (columns.next()) {
+						if ("token".equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}));
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.service;
+
+import java.sql.Timestamp;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import com.repository.WebOrderDAO;
+
+/**
+ * Gives orders placed before the created timestamp column existed a time at
+ * startup, so the order history can seek through them. Their real time is
+ * unknown, they get the epoch and so come after every other order of their
+ * user, ordered by id among themselves. Once every row has a time there is
+ * nothing to do.
+ */
+@Component
+public class WebOrderTimestampMigration implements ApplicationRunner {
+
+	/** The time given to legacy orders. */
+	public static final Timestamp LEGACY_TIMESTAMP = new Timestamp(0);
+
+	/** The Web Order DAO. */
+	private WebOrderDAO webOrderDAO;
+
+	/**
+	 * Constructor for spring injection.
+	 *
+	 * @param webOrderDAO
+	 */
+	public WebOrderTimestampMigration(WebOrderDAO webOrderDAO) {
+		this.webOrderDAO = webOrderDAO;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		int updated = webOrderDAO.backfillCreatedTimestamp(LEGACY_TIMESTAMP);
+		if (updated > 0) {
+			System.out.println("Gave " + updated + " orders placed before order timestamps existed the epoch");
+		}
+	}
+
+}
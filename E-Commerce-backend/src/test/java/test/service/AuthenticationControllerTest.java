@@ -0,0 +1,64 @@
+package test.service;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.ECommerceBackendApplication;
+
+/**
+ * Test class to test the rate limits of the AuthenticationController class
+ * through the embedded server, behind a proxy sending X-Forwarded-For. The
+ * server runs in a context of its own, so it gets its own database and
+ * inventory journal.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "spring.datasource.url=jdbc:h2:mem:authentication-controller-test",
+				"app.inventory.hot.journalFile=target/test-inventory-authentication.journal" })
+public class AuthenticationControllerTest {
+
+	/** The client sending requests to the embedded server. */
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	/**
+	 * Asks for a password reset email as if forwarded by a proxy on the loopback
+	 * address.
+	 * 
+	 * @param forwardedFor The X-Forwarded-For header.
+	 * @return The response status.
+	 */
+	private HttpStatus forgot(String forwardedFor) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-Forwarded-For", forwardedFor);
+		ResponseEntity<Void> response = restTemplate.postForEntity(
+				"/auth/forgot?email=" + UUID.randomUUID() + "@junit.com", new HttpEntity<>(headers), Void.class);
+		return HttpStatus.valueOf(response.getStatusCode().value());
+	}
+
+	/**
+	 * Tests that clients behind the same proxy get a bucket each, keyed on the
+	 * forwarded address, and that an address spoofed in front of it is ignored.
+	 */
+	@Test
+	public void testForwardedClientsAreLimitedSeparately() {
+		for (int i = 0; i < 10; i++) {
+			Assertions.assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, forgot("198.51.100.7"));
+		}
+		Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, forgot("198.51.100.7"),
+				"The client should be over its limit.");
+		Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, forgot("203.0.113.99, 198.51.100.7"),
+				"An address the client put in front should not give it a new bucket.");
+		Assertions.assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, forgot("198.51.100.8"),
+				"Another client behind the same proxy should have its own bucket.");
+	}
+
+}
@@ -0,0 +1,251 @@
+package test.service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import com.ECommerceBackendApplication;
+import com.api.model.OrderBody;
+import com.api.model.OrderLineBody;
+import com.exception.OutOfStockException;
+import com.model.Address;
+import com.model.Inventory;
+import com.model.LocalUser;
+import com.model.Product;
+import com.model.ProductStatus;
+import com.model.StockHold;
+import com.repository.AddressDAO;
+import com.repository.InventoryDAO;
+import com.repository.LocalUserDAO;
+import com.repository.StockHoldDAO;
+import com.service.CartService;
+import com.service.OrderService;
+import com.service.ProductService;
+
+/**
+ * Test class to unit test the CartService class. Holds last one second in the
+ * test configuration.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class CartServiceTest {
+
+	/** The CartService to test. */
+	@Autowired
+	private CartService cartService;
+	/** The OrderService, to buy held stock. */
+	@Autowired
+	private OrderService orderService;
+	/** The ProductService, to create stock. */
+	@Autowired
+	private ProductService productService;
+	/** The Inventory DAO. */
+	@Autowired
+	private InventoryDAO inventoryDAO;
+	/** The Stock Hold DAO. */
+	@Autowired
+	private StockHoldDAO stockHoldDAO;
+	/** The Address DAO. */
+	@Autowired
+	private AddressDAO addressDAO;
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+	/** The channel websocket messages are sent to the broker on. */
+	@Autowired
+	@Qualifier("brokerChannel")
+	private AbstractSubscribableChannel brokerChannel;
+	/** The user holding stock. */
+	private LocalUser user;
+
+	/**
+	 * Loads UserA.
+	 */
+	@BeforeEach
+	public void setUp() {
+		user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+	}
+
+	/**
+	 * Creates a product with one inventory entry.
+	 * 
+	 * @param quantity The stock.
+	 * @return The product.
+	 */
+	private Product createProduct(int quantity) {
+		Product product = new Product();
+		product.setName("CartServiceTest-" + UUID.randomUUID());
+		product.setStatus(ProductStatus.ACTIVE);
+		product.setUserId(user.getId());
+		Inventory inventory = new Inventory();
+		inventory.setQuantity(quantity);
+		inventory.setPrice(10.0);
+		product.getInventory().add(inventory);
+		return productService.addProduct(product);
+	}
+
+	/**
+	 * Builds a line.
+	 */
+	private OrderLineBody line(UUID inventoryId, int quantity) {
+		OrderLineBody line = new OrderLineBody();
+		line.setInventoryId(inventoryId);
+		line.setQuantity(quantity);
+		return line;
+	}
+
+	/**
+	 * Reads the stock of an inventory entry.
+	 */
+	private int stock(UUID inventoryId) {
+		return inventoryDAO.findById(inventoryId).get().getQuantity();
+	}
+
+	/**
+	 * Waits for the stock of an inventory entry to reach a value.
+	 */
+	private void awaitStock(UUID inventoryId, int expected) throws InterruptedException {
+		long giveUpAt = System.currentTimeMillis() + 10000;
+		while (stock(inventoryId) != expected && System.currentTimeMillis() < giveUpAt) {
+			Thread.sleep(20);
+		}
+		Assertions.assertEquals(expected, stock(inventoryId));
+	}
+
+	/**
+	 * Tests that a hold takes stock and releasing it gives it back once.
+	 */
+	@Test
+	public void testHoldAndRelease() throws Exception {
+		UUID inventoryId = createProduct(5).getInventory().get(0).getId();
+		StockHold hold = cartService.hold(user, line(inventoryId, 3));
+		Assertions.assertEquals(2, stock(inventoryId));
+		Assertions.assertTrue(cartService.getHolds(user).stream().anyMatch(h -> h.getId().equals(hold.getId())));
+		Assertions.assertThrows(OutOfStockException.class,
+				() -> cartService.hold(user, line(inventoryId, 3)));
+
+		LocalUser other = localUserDAO.findByUsernameIgnoreCase("UserB").get();
+		Assertions.assertFalse(cartService.release(other, hold.getId()), "Only the owner may release a hold.");
+		Assertions.assertTrue(cartService.release(user, hold.getId()));
+		Assertions.assertFalse(cartService.release(user, hold.getId()), "A hold is only released once.");
+		Assertions.assertEquals(5, stock(inventoryId));
+	}
+
+	/**
+	 * Tests that an expired hold gives its stock back and publishes the product.
+	 */
+	@Test
+	public void testHoldExpires() throws Exception {
+		Product product = createProduct(5);
+		UUID inventoryId = product.getInventory().get(0).getId();
+		List<String> published = new CopyOnWriteArrayList<>();
+		ChannelInterceptor interceptor = new ChannelInterceptor() {
+			@Override
+			public Message<?> preSend(Message<?> message, MessageChannel channel) {
+				if ("/topic/product".equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))
+						&& message.getPayload() instanceof byte[] payload) {
+					published.add(new String(payload, StandardCharsets.UTF_8));
+				}
+				return message;
+			}
+		};
+		brokerChannel.addInterceptor(interceptor);
+		try {
+			cartService.hold(user, line(inventoryId, 2));
+			Assertions.assertEquals(3, stock(inventoryId));
+			awaitStock(inventoryId, 5);
+			long giveUpAt = System.currentTimeMillis() + 5000;
+			while (published.stream().noneMatch(json -> json.contains(product.getId().toString()))
+					&& System.currentTimeMillis() < giveUpAt) {
+				Thread.sleep(20);
+			}
+			Assertions.assertTrue(published.stream().anyMatch(
+					json -> json.contains(product.getId().toString()) && json.contains("\"changeType\":\"UPDATE\"")),
+					"The product should be published with its stock back.");
+		} finally {
+			brokerChannel.removeInterceptor(interceptor);
+		}
+		Assertions.assertTrue(stockHoldDAO.findByUserIdAndInventoryIdIn(user.getId(), List.of(inventoryId)).isEmpty());
+	}
+
+	/**
+	 * Tests that an order uses the stock held by the cart first.
+	 */
+	@Test
+	public void testOrderUsesHolds() throws Exception {
+		Address address = new Address();
+		address.setAddressLine1("1 Cart Street");
+		address.setCity("Testville");
+		address.setCountry("Testland");
+		address.setUser(user);
+		address = addressDAO.save(address);
+		UUID inventoryId = createProduct(5).getInventory().get(0).getId();
+
+		cartService.hold(user, line(inventoryId, 3));
+		OrderBody body = new OrderBody();
+		body.setAddressId(address.getId());
+		body.getLines().add(line(inventoryId, 4));
+		orderService.placeOrder(user, body);
+		Assertions.assertEquals(1, stock(inventoryId), "The held stock and one more should be sold.");
+
+		UUID otherId = createProduct(5).getInventory().get(0).getId();
+		cartService.hold(user, line(otherId, 3));
+		body.getLines().set(0, line(otherId, 1));
+		orderService.placeOrder(user, body);
+		Assertions.assertEquals(4, stock(otherId), "Held stock not ordered should be given back.");
+		Assertions.assertTrue(stockHoldDAO.findByUserIdAndInventoryIdIn(user.getId(), List.of(inventoryId, otherId))
+				.isEmpty());
+	}
+
+	/**
+	 * Tests that holds left in the table are scheduled again on startup.
+	 */
+	@Test
+	public void testHoldsRescheduledOnStartup() throws Exception {
+		UUID inventoryId = createProduct(3).getInventory().get(0).getId();
+		StockHold hold = new StockHold();
+		hold.setUserId(user.getId());
+		hold.setInventoryId(inventoryId);
+		hold.setQuantity(2);
+		hold.setExpiresAt(new Timestamp(System.currentTimeMillis() - 1000));
+		stockHoldDAO.save(hold);
+
+		cartService.run(null);
+		awaitStock(inventoryId, 5);
+	}
+
+	/**
+	 * Tests that the sweep gives back the stock of overdue holds that are on no
+	 * wheel of this node, once.
+	 */
+	@Test
+	public void testSweepExpiresUnscheduledHolds() throws Exception {
+		UUID inventoryId = createProduct(3).getInventory().get(0).getId();
+		StockHold hold = new StockHold();
+		hold.setUserId(user.getId());
+		hold.setInventoryId(inventoryId);
+		hold.setQuantity(2);
+		hold.setExpiresAt(new Timestamp(System.currentTimeMillis() - 1000));
+		hold = stockHoldDAO.save(hold);
+
+		cartService.sweep();
+		Assertions.assertEquals(5, stock(inventoryId));
+		Assertions.assertTrue(stockHoldDAO.findById(hold.getId()).isEmpty());
+		cartService.sweep();
+		Assertions.assertEquals(5, stock(inventoryId), "The stock should be given back once.");
+	}
+
+}
@@ -0,0 +1,150 @@
+package test.service;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import com.ECommerceBackendApplication;
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.model.LocalUser;
+import com.model.OutboundEmail;
+import com.model.OutboundEmailStatus;
+import com.repository.OutboundEmailDAO;
+import com.service.EmailDispatcher;
+import com.service.EmailService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+
+/**
+ * Test class to unit test the EmailService class and the outbox behind it.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class EmailServiceTest {
+
+	/** Extension for mocking email sending. */
+	@RegisterExtension
+	private static GreenMailExtension greenMailExtension = new GreenMailExtension(ServerSetupTest.SMTP)
+			.withConfiguration(GreenMailConfiguration.aConfig().withUser("springboot", "secret"))
+			.withPerMethodLifecycle(true);
+
+	/** The EmailService to test. */
+	@Autowired
+	private EmailService emailService;
+
+	/** The outbox. */
+	@Autowired
+	private OutboundEmailDAO outboundEmailDAO;
+
+	/** The dispatcher sending the outbox. */
+	@Autowired
+	private EmailDispatcher emailDispatcher;
+
+	/**
+	 * Tests that queued emails are delivered in the background and removed from
+	 * the outbox.
+	 * 
+	 * @throws MessagingException   Thrown if the mocked email service fails
+	 *                              somehow.
+	 * @throws InterruptedException Thrown if interrupted while waiting.
+	 */
+	@Test
+	public void testQueuedEmailsAreSent() throws MessagingException, InterruptedException {
+		for (int i = 0; i < 120; i++) {
+			LocalUser user = new LocalUser();
+			user.setEmail("EmailServiceTest" + i + "@junit.com");
+			emailService.sendPasswordResetEmail(user, "token" + i);
+		}
+		Assertions.assertTrue(greenMailExtension.waitForIncomingEmail(10000, 120), "Every email should be sent.");
+		Message[] messages = greenMailExtension.getReceivedMessages();
+		Assertions.assertEquals(120, messages.length, "No email should be sent twice.");
+		Assertions.assertEquals("no.reply.ecotester@gmail.com", messages[0].getFrom()[0].toString());
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!outboundEmailDAO.findByStatus(OutboundEmailStatus.PENDING).isEmpty()
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Assertions.assertTrue(outboundEmailDAO.findByStatus(OutboundEmailStatus.PENDING).isEmpty(),
+				"Sent emails should leave the outbox.");
+	}
+
+	/**
+	 * Tests that a failed send is retried after a backoff and dead-lettered after
+	 * the last attempt, using a dispatcher pointed at a server that is not
+	 * running.
+	 */
+	@Test
+	public void testFailedEmailsAreRetriedThenDeadLettered() {
+		JavaMailSenderImpl unreachable = new JavaMailSenderImpl();
+		unreachable.setHost("localhost");
+		unreachable.setPort(1);
+		EmailDispatcher dispatcher = new EmailDispatcher(outboundEmailDAO, unreachable, "no.reply@junit.com", 50,
+				60000, 60000, 2, 300000, 3600000, 60000, new SimpleMeterRegistry());
+
+		OutboundEmail email = new OutboundEmail();
+		email.setRecipient("EmailServiceTest$dead@junit.com");
+		email.setSubject("Subject");
+		email.setBody("Body");
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		email.setNextAttemptAt(now);
+		email.setCreatedTimestamp(now);
+		email = outboundEmailDAO.save(email);
+
+		Assertions.assertEquals(1, dispatcher.dispatchBatch());
+		OutboundEmail retry = outboundEmailDAO.findById(email.getId()).get();
+		Assertions.assertEquals(OutboundEmailStatus.PENDING, retry.getStatus());
+		Assertions.assertEquals(1, retry.getAttempts());
+		Assertions.assertNotNull(retry.getLastError());
+		Assertions.assertTrue(retry.getNextAttemptAt().getTime() >= now.getTime() + 59000,
+				"The retry should wait for the backoff.");
+		Assertions.assertEquals(0, dispatcher.dispatchBatch(), "The email should not be due yet.");
+
+		retry.setNextAttemptAt(now);
+		outboundEmailDAO.save(retry);
+		Assertions.assertEquals(1, dispatcher.dispatchBatch());
+		List<OutboundEmail> dead = outboundEmailDAO.findByStatus(OutboundEmailStatus.DEAD);
+		Assertions.assertEquals(1, dead.size(), "The email should be dead-lettered after the last attempt.");
+		Assertions.assertEquals(2, dead.get(0).getAttempts());
+		Assertions.assertEquals("", dead.get(0).getBody(), "A dead email should not keep its token.");
+		Assertions.assertEquals(0, dispatcher.dispatchBatch(), "Dead emails should not be sent.");
+
+		dispatcher.purgeDead();
+		Assertions.assertTrue(outboundEmailDAO.existsById(email.getId()), "A dead email should be kept a while.");
+		OutboundEmail expired = dead.get(0);
+		expired.setNextAttemptAt(new Timestamp(now.getTime() - 120000));
+		outboundEmailDAO.save(expired);
+		dispatcher.purgeDead();
+		Assertions.assertFalse(outboundEmailDAO.existsById(email.getId()), "An old dead email should be removed.");
+	}
+
+	/**
+	 * Tests that the purge blanks dead-lettered emails left with a body by an
+	 * older version.
+	 */
+	@Test
+	public void testLegacyDeadEmailsAreBlanked() {
+		OutboundEmail email = new OutboundEmail();
+		email.setRecipient("EmailServiceTest$legacy@junit.com");
+		email.setSubject("Subject");
+		email.setBody("http://ecommerce.com/reset?token=legacy");
+		email.setStatus(OutboundEmailStatus.DEAD);
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		email.setNextAttemptAt(now);
+		email.setCreatedTimestamp(now);
+		email = outboundEmailDAO.save(email);
+
+		emailDispatcher.purgeDead();
+		Assertions.assertEquals("", outboundEmailDAO.findById(email.getId()).get().getBody());
+		outboundEmailDAO.deleteById(email.getId());
+	}
+
+}
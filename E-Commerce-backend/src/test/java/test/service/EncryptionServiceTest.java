@@ -0,0 +1,68 @@
+package test.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.service.EncryptionService;
+
+/**
+ * Test class to unit test the EncryptionService class.
+ */
+public class EncryptionServiceTest {
+
+	/**
+	 * Creates a service configured like the application properties would.
+	 * 
+	 * @param algorithm  The format of new hashes.
+	 * @param rounds     The BCrypt cost.
+	 * @param iterations The PBKDF2 iteration count.
+	 * @return The service.
+	 */
+	private EncryptionService encryptionService(String algorithm, int rounds, int iterations) {
+		EncryptionService encryptionService = new EncryptionService();
+		ReflectionTestUtils.setField(encryptionService, "algorithm", algorithm);
+		ReflectionTestUtils.setField(encryptionService, "saltRounds", rounds);
+		ReflectionTestUtils.setField(encryptionService, "pbkdf2Iterations", iterations);
+		encryptionService.postConstruct();
+		return encryptionService;
+	}
+
+	/**
+	 * Tests that every hash gets its own salt and that hashes of either format
+	 * verify whatever the configured format is.
+	 */
+	@Test
+	public void testHashesAreSaltedAndVerifiable() {
+		EncryptionService bcrypt = encryptionService("bcrypt", 4, 1000);
+		EncryptionService pbkdf2 = encryptionService("pbkdf2", 4, 1000);
+		String first = bcrypt.encryptPassword("PasswordA123");
+		Assertions.assertNotEquals(first, bcrypt.encryptPassword("PasswordA123"), "Each hash should have its own salt.");
+		String other = pbkdf2.encryptPassword("PasswordA123");
+		Assertions.assertTrue(other.startsWith("$pbkdf2-sha256$1000$"));
+		Assertions.assertNotEquals(other, pbkdf2.encryptPassword("PasswordA123"), "Each hash should have its own salt.");
+
+		Assertions.assertTrue(bcrypt.verifyPassword("PasswordA123", other));
+		Assertions.assertTrue(pbkdf2.verifyPassword("PasswordA123", first));
+		Assertions.assertFalse(pbkdf2.verifyPassword("PasswordA1234", other));
+		Assertions.assertFalse(bcrypt.verifyPassword("PasswordA123", "plain"), "Unknown formats should not verify.");
+	}
+
+	/**
+	 * Tests that hashes in another format or below the configured cost are
+	 * flagged for rehashing.
+	 */
+	@Test
+	public void testNeedsRehash() {
+		EncryptionService weak = encryptionService("bcrypt", 4, 1000);
+		EncryptionService strong = encryptionService("bcrypt", 5, 2000);
+		EncryptionService pbkdf2 = encryptionService("pbkdf2", 5, 2000);
+		String hash = weak.encryptPassword("PasswordA123");
+		Assertions.assertFalse(weak.needsRehash(hash));
+		Assertions.assertTrue(strong.needsRehash(hash), "A lower cost should be upgraded.");
+		Assertions.assertTrue(pbkdf2.needsRehash(hash), "Another format should be upgraded.");
+		Assertions.assertTrue(pbkdf2.needsRehash(encryptionService("pbkdf2", 4, 1000).encryptPassword("PasswordA123")));
+		Assertions.assertFalse(pbkdf2.needsRehash(pbkdf2.encryptPassword("PasswordA123")));
+	}
+
+}
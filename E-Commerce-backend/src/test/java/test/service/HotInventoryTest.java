@@ -0,0 +1,305 @@
+package test.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ECommerceBackendApplication;
+import com.api.model.OrderBody;
+import com.api.model.OrderLineBody;
+import com.exception.OutOfStockException;
+import com.model.Address;
+import com.model.Inventory;
+import com.model.LocalUser;
+import com.model.Product;
+import com.model.ProductStatus;
+import com.repository.AddressDAO;
+import com.repository.InventoryDAO;
+import com.repository.LocalUserDAO;
+import com.service.HotInventory;
+import com.service.InventoryJournal;
+import com.service.OrderService;
+import com.service.ProductService;
+import com.service.ProductViewCache;
+
+/**
+ * Test class to unit test the HotInventory class.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class HotInventoryTest {
+
+	/** The HotInventory to test. */
+	@Autowired
+	private HotInventory hotInventory;
+	/** The OrderService, to buy hot entries. */
+	@Autowired
+	private OrderService orderService;
+	/** The ProductService, to create and edit stock. */
+	@Autowired
+	private ProductService productService;
+	/** The Inventory DAO. */
+	@Autowired
+	private InventoryDAO inventoryDAO;
+	/** The Address DAO. */
+	@Autowired
+	private AddressDAO addressDAO;
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+	/** The cached product views. */
+	@Autowired
+	private ProductViewCache productViewCache;
+	/** The transaction manager. */
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	/** The user placing orders. */
+	private LocalUser user;
+	/** The address of the user. */
+	private Address address;
+
+	/**
+	 * Gives UserA an address to ship to.
+	 */
+	@BeforeEach
+	public void setUp() {
+		user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		address = new Address();
+		address.setAddressLine1("1 Drop Street");
+		address.setCity("Testville");
+		address.setCountry("Testland");
+		address.setUser(user);
+		address = addressDAO.save(address);
+	}
+
+	/**
+	 * Creates a product with one hot inventory entry.
+	 * 
+	 * @param quantity The stock.
+	 * @return The product.
+	 */
+	private Product createHotProduct(int quantity) {
+		Product product = createProduct(quantity);
+		Assertions.assertTrue(hotInventory.designate(product.getInventory().get(0).getId()));
+		return product;
+	}
+
+	/**
+	 * Creates a product with one inventory entry kept in the database.
+	 * 
+	 * @param quantity The stock.
+	 * @return The product.
+	 */
+	private Product createProduct(int quantity) {
+		Product product = new Product();
+		product.setName("HotInventoryTest-" + UUID.randomUUID());
+		product.setStatus(ProductStatus.ACTIVE);
+		product.setUserId(user.getId());
+		Inventory inventory = new Inventory();
+		inventory.setQuantity(quantity);
+		inventory.setPrice(10.0);
+		product.getInventory().add(inventory);
+		return productService.addProduct(product);
+	}
+
+	/**
+	 * Places an order of one line.
+	 */
+	private void buy(UUID inventoryId, int quantity) throws Exception {
+		OrderBody body = new OrderBody();
+		body.setAddressId(address.getId());
+		OrderLineBody line = new OrderLineBody();
+		line.setInventoryId(inventoryId);
+		line.setQuantity(quantity);
+		body.getLines().add(line);
+		orderService.placeOrder(user, body);
+	}
+
+	/**
+	 * Reads the stock of an inventory entry in the table.
+	 */
+	private int stored(UUID inventoryId) {
+		return inventoryDAO.findById(inventoryId).get().getQuantity();
+	}
+
+	/**
+	 * Tests that buyers racing for a hot entry never oversell, and that the
+	 * sales reach the table and leave the journal once flushed.
+	 */
+	@Test
+	public void testConcurrentOrdersDoNotOversell() throws Exception {
+		UUID inventoryId = createHotProduct(50).getInventory().get(0).getId();
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					try {
+						buy(inventoryId, 1);
+						return true;
+					} catch (OutOfStockException ex) {
+						return false;
+					}
+				}));
+			}
+			start.countDown();
+			int placed = 0;
+			for (Future<Boolean> result : results) {
+				if (result.get()) {
+					placed++;
+				}
+			}
+			Assertions.assertEquals(50, placed, "Exactly the stock should be sold.");
+		} finally {
+			executor.shutdownNow();
+		}
+		Assertions.assertEquals(0L, hotInventory.getAvailable(inventoryId));
+		Assertions.assertEquals(50, stored(inventoryId), "Sales should be written behind.");
+
+		hotInventory.flush();
+		Assertions.assertEquals(0, stored(inventoryId));
+		Assertions.assertTrue(Files.readAllLines(Path.of("target/test-inventory.journal")).stream()
+				.noneMatch(line -> line.startsWith("R ")), "Written sales should be dropped from the journal.");
+	}
+
+	/**
+	 * Tests that stock taken by a transaction that rolls back is given back.
+	 */
+	@Test
+	public void testRollbackGivesStockBack() {
+		UUID inventoryId = createHotProduct(5).getInventory().get(0).getId();
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			Assertions.assertTrue(hotInventory.reserve(inventoryId, 3));
+			Assertions.assertFalse(hotInventory.reserve(inventoryId, 3));
+			status.setRollbackOnly();
+		});
+		Assertions.assertEquals(5L, hotInventory.getAvailable(inventoryId));
+		hotInventory.flush();
+		Assertions.assertEquals(5, stored(inventoryId));
+	}
+
+	/**
+	 * Tests that a seller's edit is applied against the stock they saw, without
+	 * losing sales not yet written to the table.
+	 */
+	@Test
+	public void testUpdateProductReconciles() throws Exception {
+		Product product = createHotProduct(10);
+		UUID inventoryId = product.getInventory().get(0).getId();
+		buy(inventoryId, 3);
+		Assertions.assertEquals(7L, hotInventory.getAvailable(inventoryId));
+		Assertions.assertEquals(10, stored(inventoryId));
+
+		product.getInventory().get(0).setQuantity(15);
+		productService.updateProduct(product.getId(), product);
+		Assertions.assertEquals(12L, hotInventory.getAvailable(inventoryId), "A restock should add to the stock left.");
+		hotInventory.flush();
+		Assertions.assertEquals(12, stored(inventoryId));
+
+		product.getInventory().get(0).setQuantity(2);
+		productService.updateProduct(product.getId(), product);
+		Assertions.assertEquals(2L, hotInventory.getAvailable(inventoryId));
+		Assertions.assertEquals(2, stored(inventoryId));
+
+		buy(inventoryId, 2);
+		product.getInventory().get(0).setQuantity(1);
+		productService.updateProduct(product.getId(), product);
+		Assertions.assertEquals(0L, hotInventory.getAvailable(inventoryId),
+				"Stock removed should never go below what is left.");
+		hotInventory.flush();
+		Assertions.assertEquals(0, stored(inventoryId));
+	}
+
+	/**
+	 * Tests that sales journaled but never confirmed written are applied when the
+	 * journal is opened again.
+	 */
+	@Test
+	public void testJournalRecovery(@TempDir Path directory) throws Exception {
+		Product product = createHotProduct(20);
+		UUID inventoryId = product.getInventory().get(0).getId();
+		Path path = directory.resolve("crashed.journal");
+		try (InventoryJournal journal = new InventoryJournal(path)) {
+			journal.append(Map.of(inventoryId, -2L));
+			journal.applied(journal.checkpoint());
+			journal.append(Map.of(inventoryId, -3L));
+			journal.checkpoint();
+			journal.append(Map.of(inventoryId, -4L, UUID.randomUUID(), -1L));
+		}
+		Files.writeString(path, "R " + inventoryId, StandardOpenOption.APPEND);
+
+		HotInventory restarted = new HotInventory(inventoryDAO, productViewCache, transactionManager, Set.of(), path,
+				"HotInventoryTest-restarted");
+		restarted.run(null);
+		Assertions.assertEquals(13, stored(inventoryId), "Only the sales after the applied checkpoint should be replayed.");
+		Assertions.assertEquals(0, Files.size(path), "The journal should be emptied once applied.");
+		restarted.shutdown();
+	}
+
+	/**
+	 * Tests that a checkpoint written to the table just before a crash, with its
+	 * confirmation lost, is not applied again, returns included, while the
+	 * sales after it are.
+	 */
+	@Test
+	public void testCommittedCheckpointIsNotReplayed(@TempDir Path directory) throws Exception {
+		UUID inventoryId = createHotProduct(20).getInventory().get(0).getId();
+		Path path = directory.resolve("crashed.journal");
+		try (InventoryJournal journal = new InventoryJournal(path)) {
+			journal.append(Map.of(inventoryId, -5L));
+			journal.append(Map.of(inventoryId, 2L));
+			long checkpoint = journal.checkpoint();
+			new TransactionTemplate(transactionManager)
+					.executeWithoutResult(status -> inventoryDAO.adjustJournaled(inventoryId, -3, checkpoint));
+			journal.append(Map.of(inventoryId, 1L));
+		}
+
+		HotInventory restarted = new HotInventory(inventoryDAO, productViewCache, transactionManager, Set.of(), path,
+				"HotInventoryTest-restarted");
+		restarted.run(null);
+		Assertions.assertEquals(18, stored(inventoryId), "Only the return after the written checkpoint should be replayed.");
+		restarted.shutdown();
+	}
+
+	/**
+	 * Tests that an entry kept hot by one node is refused by another until the
+	 * first shuts down cleanly.
+	 */
+	@Test
+	public void testHotEntriesAreLeasedToOneNode(@TempDir Path directory) throws Exception {
+		UUID leased = createHotProduct(5).getInventory().get(0).getId();
+		UUID free = createProduct(5).getInventory().get(0).getId();
+		HotInventory other = new HotInventory(inventoryDAO, productViewCache, transactionManager, Set.of(),
+				directory.resolve("other.journal"), "HotInventoryTest-other");
+		Assertions.assertFalse(other.designate(leased), "An entry hot on another node should be refused.");
+		Assertions.assertFalse(other.isHot(leased));
+
+		Assertions.assertTrue(other.designate(free));
+		Assertions.assertTrue(other.reserve(free, 2));
+		Assertions.assertFalse(hotInventory.designate(free), "This node should not sell the other node's stock.");
+		other.shutdown();
+		Assertions.assertEquals(3, stored(free), "The sale should be written before the lease is released.");
+		Assertions.assertTrue(hotInventory.designate(free), "A released entry can be taken over.");
+		Assertions.assertEquals(3L, hotInventory.getAvailable(free));
+	}
+
+}
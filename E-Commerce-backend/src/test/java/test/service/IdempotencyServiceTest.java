@@ -0,0 +1,244 @@
+package test.service;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.ECommerceBackendApplication;
+import com.api.model.OrderBody;
+import com.api.model.OrderLineBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.model.Address;
+import com.model.Inventory;
+import com.model.LocalUser;
+import com.model.Product;
+import com.model.ProductStatus;
+import com.repository.AddressDAO;
+import com.repository.IdempotencyRecordDAO;
+import com.repository.InventoryDAO;
+import com.repository.LocalUserDAO;
+import com.repository.WebOrderDAO;
+import com.service.IdempotencyService;
+import com.service.JWTService;
+import com.service.ProductService;
+
+/**
+ * Test class to test the IdempotencyService class through POST /order.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class IdempotencyServiceTest {
+
+	/** The application context. */
+	@Autowired
+	private WebApplicationContext context;
+	/** The IdempotencyService to test. */
+	@Autowired
+	private IdempotencyService idempotencyService;
+	/** The Idempotency Record DAO. */
+	@Autowired
+	private IdempotencyRecordDAO idempotencyRecordDAO;
+	/** The transaction manager, to build a second service. */
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	/** The ProductService, to create stock. */
+	@Autowired
+	private ProductService productService;
+	/** The JWT service. */
+	@Autowired
+	private JWTService jwtService;
+	/** The Inventory DAO. */
+	@Autowired
+	private InventoryDAO inventoryDAO;
+	/** The Address DAO. */
+	@Autowired
+	private AddressDAO addressDAO;
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+	/** The Web Order DAO. */
+	@Autowired
+	private WebOrderDAO webOrderDAO;
+	/** The object mapper. */
+	@Autowired
+	private ObjectMapper objectMapper;
+	/** The MockMvc sending the requests. */
+	private MockMvc mvc;
+	/** The user placing orders. */
+	private LocalUser user;
+	/** The token of the user. */
+	private String token;
+	/** The stock ordered. */
+	private Inventory inventory;
+	/** The address of the user. */
+	private Address address;
+
+	/**
+	 * Creates an inventory entry with 10 items and an address for UserA.
+	 */
+	@BeforeEach
+	public void setUp() {
+		mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+		user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		token = jwtService.generateJWT(user);
+		address = new Address();
+		address.setAddressLine1("1 Retry Street");
+		address.setCity("Testville");
+		address.setCountry("Testland");
+		address.setUser(user);
+		address = addressDAO.save(address);
+		Product product = new Product();
+		product.setName("IdempotencyServiceTest-" + UUID.randomUUID());
+		product.setStatus(ProductStatus.ACTIVE);
+		product.setUserId(user.getId());
+		Inventory entry = new Inventory();
+		entry.setQuantity(10);
+		entry.setPrice(10.0);
+		product.getInventory().add(entry);
+		inventory = productService.addProduct(product).getInventory().get(0);
+	}
+
+	/**
+	 * Builds an order body for the user's address.
+	 */
+	private OrderBody order(int quantity) {
+		OrderBody body = new OrderBody();
+		body.setAddressId(address.getId());
+		OrderLineBody line = new OrderLineBody();
+		line.setInventoryId(inventory.getId());
+		line.setQuantity(quantity);
+		body.getLines().add(line);
+		return body;
+	}
+
+	/**
+	 * Posts an order with an idempotency key.
+	 */
+	private MockHttpServletResponse place(String key, OrderBody body) throws Exception {
+		return mvc.perform(post("/order").header("Authorization", "Bearer " + token).header("Idempotency-Key", key)
+				.contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(body)))
+				.andReturn().getResponse();
+	}
+
+	/**
+	 * Reads the current stock of the inventory entry.
+	 */
+	private int stock() {
+		return inventoryDAO.findById(inventory.getId()).get().getQuantity();
+	}
+
+	/**
+	 * Tests that a retry gets the original order back without placing another.
+	 */
+	@Test
+	public void testRetryReturnsOriginalResponse() throws Exception {
+		String key = UUID.randomUUID().toString();
+		long ordersBefore = webOrderDAO.countByUser_Id(user.getId());
+		MockHttpServletResponse first = place(key, order(2));
+		MockHttpServletResponse retry = place(key, order(2));
+		Assertions.assertEquals(200, first.getStatus());
+		Assertions.assertEquals(200, retry.getStatus());
+		Assertions.assertEquals(first.getContentAsString(), retry.getContentAsString());
+		Assertions.assertNull(first.getHeader(IdempotencyService.REPLAYED_HEADER));
+		Assertions.assertEquals("true", retry.getHeader(IdempotencyService.REPLAYED_HEADER));
+		Assertions.assertEquals(8, stock(), "The stock should be taken once.");
+		Assertions.assertEquals(ordersBefore + 1, webOrderDAO.countByUser_Id(user.getId()));
+
+		Assertions.assertEquals(422, place(key, order(3)).getStatus(), "A key should not be reused for another order.");
+		Assertions.assertEquals(200, place(UUID.randomUUID().toString(), order(2)).getStatus());
+		Assertions.assertEquals(6, stock());
+	}
+
+	/**
+	 * Tests that duplicates sent at the same time wait for the first one and get
+	 * its response.
+	 */
+	@Test
+	public void testConcurrentDuplicatesWaitForFirst() throws Exception {
+		String key = UUID.randomUUID().toString();
+		long ordersBefore = webOrderDAO.countByUser_Id(user.getId());
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<MockHttpServletResponse>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return place(key, order(1));
+				}));
+			}
+			start.countDown();
+			String body = null;
+			for (Future<MockHttpServletResponse> result : results) {
+				MockHttpServletResponse response = result.get();
+				Assertions.assertEquals(200, response.getStatus());
+				body = body == null ? response.getContentAsString() : body;
+				Assertions.assertEquals(body, response.getContentAsString());
+			}
+			Assertions.assertEquals(9, stock(), "The order should be placed once.");
+			Assertions.assertEquals(ordersBefore + 1, webOrderDAO.countByUser_Id(user.getId()));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that a rejected order is remembered too, and that the table answers
+	 * once the key is no longer in memory.
+	 */
+	@Test
+	public void testStoredResponseOutlivesMemory() throws Exception {
+		String key = UUID.randomUUID().toString();
+		Assertions.assertEquals(409, place(key, order(11)).getStatus());
+		Assertions.assertEquals(10, stock());
+		Assertions.assertTrue(idempotencyRecordDAO.findByUserIdAndIdempotencyKey(user.getId(), key).isPresent());
+
+		IdempotencyService restarted = new IdempotencyService(idempotencyRecordDAO, objectMapper, transactionManager,
+				100, 60, 60, 1000);
+		AtomicInteger runs = new AtomicInteger();
+		ResponseEntity<?> replay = restarted.execute(user, key, order(11), () -> {
+			runs.incrementAndGet();
+			return ResponseEntity.ok().build();
+		});
+		Assertions.assertEquals(0, runs.get(), "A stored response should not run the request again.");
+		Assertions.assertEquals(409, replay.getStatusCode().value());
+		Assertions.assertEquals("true", replay.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+	}
+
+	/**
+	 * Tests that a request failing with an exception releases its key, so a
+	 * retry runs it again.
+	 */
+	@Test
+	public void testFailureReleasesKey() {
+		String key = UUID.randomUUID().toString();
+		Assertions.assertThrows(IllegalStateException.class, () -> idempotencyService.execute(user, key, "body", () -> {
+			throw new IllegalStateException("Simulated failure");
+		}));
+		Assertions.assertTrue(idempotencyRecordDAO.findByUserIdAndIdempotencyKey(user.getId(), key).isEmpty());
+		ResponseEntity<?> retry = idempotencyService.execute(user, key, "body", () -> ResponseEntity.ok("done"));
+		Assertions.assertEquals(200, retry.getStatusCode().value());
+		Assertions.assertEquals("\"done\"", retry.getBody());
+	}
+
+}
@@ -0,0 +1,434 @@
+package test.service;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.ECommerceBackendApplication;
+import com.exception.UnsupportedImageException;
+import com.model.ImageData;
+import com.repository.ImageDataDAO;
+import com.repository.LocalUserDAO;
+import com.service.ImageBlobStore;
+import com.service.ImageDataService;
+import com.service.ImageZipMigration;
+import com.service.JWTService;
+
+/**
+ * Test class to unit test the ImageDataService class.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class ImageDataServiceTest {
+
+	/** The ImageDataService to test. */
+	@Autowired
+	private ImageDataService imageDataService;
+
+	/** The blob store behind the service. */
+	@Autowired
+	private ImageBlobStore imageBlobStore;
+
+	/** The image index behind the service. */
+	@Autowired
+	private ImageDataDAO imageDataDAO;
+
+	/** The root of the image storage. */
+	@Value("${app.uploadDirectory}")
+	private String uploadDirectory;
+
+	/** The largest part the container accepts. */
+	@Value("${spring.servlet.multipart.max-file-size}")
+	private DataSize maxFileSize;
+
+	/** The application context. */
+	@Autowired
+	private WebApplicationContext context;
+
+	/** The JWT service. */
+	@Autowired
+	private JWTService jwtService;
+
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+
+	/** A one pixel PNG, the bytes after it are ignored by readers. */
+	private static final byte[] PIXEL = pixel();
+
+	/**
+	 * Encodes a one pixel PNG, the image every test upload starts with.
+	 * 
+	 * @return The PNG bytes.
+	 */
+	private static byte[] pixel() {
+		try {
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			ImageIO.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "png", png);
+			return png.toByteArray();
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Builds the bytes of an image carrying a marker after the PNG data.
+	 * 
+	 * @param content The marker.
+	 * @return The image bytes.
+	 */
+	private static byte[] image(String content) {
+		byte[] marker = content.getBytes(StandardCharsets.UTF_8);
+		byte[] bytes = Arrays.copyOf(PIXEL, PIXEL.length + marker.length);
+		System.arraycopy(marker, 0, bytes, PIXEL.length, marker.length);
+		return bytes;
+	}
+
+	/**
+	 * Reads back the marker of a stored image.
+	 * 
+	 * @param image The index entry.
+	 * @return The marker.
+	 * @throws IOException Thrown if the blob could not be read.
+	 */
+	private String content(ImageData image) throws IOException {
+		byte[] bytes = Files.readAllBytes(imageBlobStore.resolve(image.getHash()));
+		return new String(bytes, PIXEL.length, bytes.length - PIXEL.length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates an upload.
+	 * 
+	 * @param name    The file name.
+	 * @param content The marker carried by the image.
+	 * @return The upload.
+	 */
+	private MockMultipartFile file(String name, String content) {
+		return new MockMultipartFile("file", name, "image/png", image(content));
+	}
+
+	/**
+	 * Tests that identical images are stored once, across holders, and that
+	 * uploading a name again replaces its index entry.
+	 */
+	@Test
+	public void testImagesAreContentAddressed() throws Exception {
+		UUID holderA = UUID.randomUUID();
+		UUID holderB = UUID.randomUUID();
+		imageDataService.saveImagesToStorage("gallery", holderA, List.of(file("a.png", "same"), file("b.png", "other")));
+		imageDataService.saveImagesToStorage("gallery", holderB, List.of(file("c.png", "same")));
+
+		List<ImageData> imagesA = imageDataService.getImages(holderA.toString(), "gallery");
+		List<ImageData> imagesB = imageDataService.getImages(holderB.toString(), "gallery");
+		Assertions.assertEquals(2, imagesA.size());
+		Assertions.assertEquals(imagesA.get(0).getHash(), imagesB.get(0).getHash(), "Same content should share a blob.");
+		Assertions.assertEquals("same", content(imagesA.get(0)));
+		Assertions.assertEquals("image/png", imagesA.get(0).getContentType());
+
+		imageDataService.saveImagesToStorage("gallery", holderA, List.of(file("a.png", "changed")));
+		imagesA = imageDataService.getImages(holderA.toString(), "gallery");
+		Assertions.assertEquals(2, imagesA.size(), "Re-uploading a name should replace it.");
+		Assertions.assertNotEquals(imagesB.get(0).getHash(), imagesA.get(0).getHash());
+
+		Assertions.assertTrue(imageDataService.deleteImage("gallery", holderA, "b.png"));
+		Assertions.assertFalse(imageDataService.deleteImage("gallery", holderA, "b.png"));
+		imageDataService.deleteHolderImages(holderA);
+		Assertions.assertTrue(imageDataService.getImages(holderA.toString(), "gallery").isEmpty());
+		Assertions.assertTrue(Files.exists(imageBlobStore.resolve(imagesB.get(0).getHash())),
+				"Blob shared with another holder should remain.");
+	}
+
+	/**
+	 * Tests that hundreds of concurrent uploads and deletes against the same names
+	 * all succeed and leave a consistent index: one row per name and width, each
+	 * pointing at a blob holding content uploaded under that name.
+	 */
+	@Test
+	public void testConcurrentMutationsKeepIndexConsistent() throws Exception {
+		List<UUID> holders = List.of(UUID.randomUUID(), UUID.randomUUID());
+		List<String> names = List.of("a.png", "b.png", "c.png", "d.png");
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < 400; i++) {
+				int operation = i;
+				UUID holderId = holders.get(i % holders.size());
+				String name = names.get((i / holders.size()) % names.size());
+				futures.add(executor.submit(() -> {
+					if (operation % 50 == 49) {
+						imageDataService.deleteHolderImages(holderId);
+					} else if (operation % 5 == 4) {
+						imageDataService.deleteImage("gallery", holderId, name);
+					} else {
+						imageDataService.saveImagesToStorage("gallery", holderId,
+								List.of(file(name, holderId + "/" + name + "/" + operation)));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		for (UUID holderId : holders) {
+			Set<String> keys = new HashSet<>();
+			for (ImageData image : imageDataDAO.findByHolderId(holderId.toString())) {
+				Assertions.assertTrue(keys.add(image.getType() + "/" + image.getName() + "/" + image.getWidth()),
+						"Duplicate index entry for " + image.getName());
+				Assertions.assertTrue(content(image).startsWith(holderId + "/" + image.getName() + "/"),
+						"Index entry points at another image's blob.");
+				Assertions.assertEquals(Files.size(imageBlobStore.resolve(image.getHash())), image.getSize());
+			}
+		}
+	}
+
+	/**
+	 * Tests that resized copies are generated in the background and chosen by
+	 * display width.
+	 */
+	@Test
+	public void testDerivativesAreGenerated() throws Exception {
+		UUID holderId = UUID.randomUUID();
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(1600, 800, BufferedImage.TYPE_INT_ARGB), "png", png);
+		imageDataService.saveImagesToStorage("gallery", holderId,
+				List.of(new MockMultipartFile("file", "wide.png", "image/png", png.toByteArray())));
+
+		long deadline = System.currentTimeMillis() + 20000;
+		while (imageDataService.getImage(holderId.toString(), "gallery", "wide.png", 1200).get().getWidth() != 1200
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		ImageData medium = imageDataService.getImage(holderId.toString(), "gallery", "wide.png", 300).get();
+		Assertions.assertEquals(480, medium.getWidth(), "The narrowest copy covering the width should be chosen.");
+		Assertions.assertEquals("image/jpeg", medium.getContentType());
+		BufferedImage decoded = ImageIO.read(imageBlobStore.resolve(medium.getHash()).toFile());
+		Assertions.assertEquals(480, decoded.getWidth());
+		Assertions.assertEquals(240, decoded.getHeight(), "Aspect ratio should be kept.");
+		Assertions.assertEquals(ImageData.ORIGINAL_WIDTH,
+				imageDataService.getImage(holderId.toString(), "gallery", "wide.png", 4000).get().getWidth(),
+				"The original should be served when no copy is wide enough.");
+		Assertions.assertEquals(1, imageDataService.getImages(holderId.toString(), "gallery").size(),
+				"Only the original should be listed.");
+	}
+
+	/**
+	 * Tests that an upload of the largest size the container accepts (500 MB) is
+	 * stored without the bytes passing through the heap, by measuring what the
+	 * uploading thread allocates.
+	 */
+	@Test
+	public void testLargeUploadIsNotBufferedOnHeap() throws Exception {
+		long size = maxFileSize.toBytes();
+		Assertions.assertTrue(size >= 500L * 1024 * 1024, "Uploads of 500 MB should be accepted.");
+		Path spooled = Files.createTempFile(Paths.get("target"), "spooled-upload", ".tmp");
+		try (RandomAccessFile file = new RandomAccessFile(spooled.toFile(), "rw")) {
+			file.write(PIXEL);
+			file.setLength(size);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		UUID holderId = UUID.randomUUID();
+
+		long before = threads.getThreadAllocatedBytes(threadId);
+		imageDataService.saveImagesToStorage("gallery", holderId, List.of(new SpooledMultipartFile(spooled, "big.bin")));
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+		ImageData image = imageDataService.getImages(holderId.toString(), "gallery").get(0);
+		Assertions.assertEquals(size, image.getSize());
+		Assertions.assertTrue(allocated < 32L * 1024 * 1024, "Upload allocated " + allocated + " bytes on the heap.");
+		Files.deleteIfExists(imageBlobStore.resolve(image.getHash()));
+		Files.deleteIfExists(spooled);
+	}
+
+	/**
+	 * Stands in for the part Tomcat hands over with file-size-threshold=0: the
+	 * bytes are already in a file on disk, and transferTo renames that file the
+	 * way Tomcat's DiskFileItem does when the target is on the same file system.
+	 * The multipart parsing itself is the container's and is not exercised here.
+	 */
+	private static class SpooledMultipartFile implements MultipartFile {
+
+		/** The spooled file. */
+		private final Path path;
+		/** The name sent by the client. */
+		private final String originalFilename;
+
+		SpooledMultipartFile(Path path, String originalFilename) {
+			this.path = path;
+			this.originalFilename = originalFilename;
+		}
+
+		@Override
+		public String getName() {
+			return "file";
+		}
+
+		@Override
+		public String getOriginalFilename() {
+			return originalFilename;
+		}
+
+		@Override
+		public String getContentType() {
+			return "application/octet-stream";
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return getSize() == 0;
+		}
+
+		@Override
+		public long getSize() {
+			try {
+				return Files.size(path);
+			} catch (IOException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		@Override
+		public byte[] getBytes() throws IOException {
+			throw new UnsupportedOperationException("Uploads should not be read into memory.");
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return Files.newInputStream(path);
+		}
+
+		@Override
+		public void transferTo(File dest) throws IOException {
+			Files.move(path, dest.toPath());
+		}
+
+	}
+
+	/**
+	 * Tests that a legacy zip archive is converted into index entries.
+	 */
+	@Test
+	public void testZipMigration() throws Exception {
+		String holderId = UUID.randomUUID().toString();
+		Path typeDirectory = Paths.get(uploadDirectory, holderId, "thumbnail");
+		Files.createDirectories(typeDirectory);
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(archive)) {
+			for (String name : List.of("x.png", "y.png")) {
+				zipOutputStream.putNextEntry(new ZipEntry(name));
+				zipOutputStream.write(image(name));
+				zipOutputStream.closeEntry();
+			}
+			zipOutputStream.putNextEntry(new ZipEntry("z.html"));
+			zipOutputStream.write("<script>alert(1)</script>".getBytes(StandardCharsets.UTF_8));
+			zipOutputStream.closeEntry();
+		}
+		Path zipFile = typeDirectory.resolve("thumbnail_images.zip");
+		Files.write(zipFile, archive.toByteArray());
+
+		ImageZipMigration migration = new ImageZipMigration(imageDataService);
+		ReflectionTestUtils.setField(migration, "uploadDirectory", uploadDirectory);
+		migration.run(null);
+
+		List<ImageData> images = imageDataService.getImages(holderId, "thumbnail");
+		Assertions.assertEquals(2, images.size(), "Entries that are not images should be skipped.");
+		Assertions.assertEquals("x.png", images.get(0).getName());
+		Assertions.assertEquals("y.png", content(images.get(1)));
+		Assertions.assertFalse(Files.exists(zipFile), "Archive should be marked as migrated.");
+	}
+
+	/**
+	 * Tests that a page labelled as text/html is refused, whatever the name, and
+	 * that nothing of the upload is indexed when one part is refused.
+	 */
+	@Test
+	public void testNonImagesAreRefused() throws Exception {
+		UUID holderId = UUID.randomUUID();
+		MockMultipartFile page = new MockMultipartFile("file", "page.png", "text/html",
+				"<html><script>alert(1)</script></html>".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertThrows(UnsupportedImageException.class, () -> imageDataService
+				.saveImagesToStorage("gallery", holderId, List.of(file("a.png", "fine"), page)));
+		Assertions.assertTrue(imageDataService.getImages(holderId.toString(), "gallery").isEmpty());
+
+		MockMvc mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+		String token = jwtService.generateJWT(localUserDAO.findByUsernameIgnoreCase("UserA").get());
+		mvc.perform(multipart("/image/" + holderId + "/gallery").file(page).header("Authorization", "Bearer " + token))
+				.andExpect(status().isBadRequest());
+		mvc.perform(multipart("/image/" + holderId + "/gallery").file(file("b.png", "fine"))
+				.header("Authorization", "Bearer " + token)).andExpect(status().isOk());
+		mvc.perform(get("/image/" + holderId + "/gallery/b.png")).andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", "image/png"));
+	}
+
+	/**
+	 * Tests that an entry indexed with the type its uploader sent, before types
+	 * were read from the bytes, is only offered as a download.
+	 */
+	@Test
+	public void testLegacyTypesAreServedAsAttachments() throws Exception {
+		String holderId = UUID.randomUUID().toString();
+		byte[] page = "<html><script>alert(1)</script></html>".getBytes(StandardCharsets.UTF_8);
+		String hash = imageBlobStore.store(new ByteArrayInputStream(page));
+		ImageData legacy = new ImageData();
+		legacy.setHolderId(holderId);
+		legacy.setType("gallery");
+		legacy.setName("page.html");
+		legacy.setHash(hash);
+		legacy.setSize((long) page.length);
+		legacy.setContentType("text/html");
+		legacy.setUrl(imageBlobStore.relativePath(hash));
+		legacy.setCreatedTimestamp(new Timestamp(System.currentTimeMillis()));
+		imageDataDAO.save(legacy);
+
+		MockMvc mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+		mvc.perform(get("/image/" + holderId + "/gallery/page.html")).andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", "application/octet-stream"))
+				.andExpect(header().string("Content-Disposition", "attachment"));
+	}
+
+}
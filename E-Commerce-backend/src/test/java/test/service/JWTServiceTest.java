@@ -0,0 +1,87 @@
+package test.service;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ECommerceBackendApplication;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.model.LocalUser;
+import com.repository.LocalUserDAO;
+import com.service.JWTService;
+import com.service.JdbcUsedTokenStore;
+
+/**
+ * Test class to unit test the JWTService class.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class JWTServiceTest {
+
+	/** The JWTService to test. */
+	@Autowired
+	private JWTService jwtService;
+
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+
+	/** The JDBC template, used to exercise the shared used token store. */
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * Tests that a token is decoded once and that a token reusing its signature
+	 * with another payload is still rejected.
+	 */
+	@Test
+	public void testVerifiedTokensAreCached() {
+		LocalUser user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		String token = jwtService.generateJWT(user);
+		Assertions.assertSame(jwtService.verifyJWT(token), jwtService.verifyJWT(token),
+				"The second verification should come from the cache.");
+		Assertions.assertEquals("UserA", jwtService.getUsername(token));
+
+		LocalUser other = localUserDAO.findByUsernameIgnoreCase("UserB").get();
+		String[] forged = jwtService.generateJWT(other).split("\\.");
+		String spliced = forged[0] + "." + forged[1] + "." + token.split("\\.")[2];
+		Assertions.assertThrows(JWTVerificationException.class, () -> jwtService.verifyJWT(spliced),
+				"A payload signed for another token should be rejected.");
+		Assertions.assertEquals("UserA", jwtService.getUsername(token), "The cached token should still verify.");
+	}
+
+	/**
+	 * Tests that a password reset token can be redeemed only once.
+	 */
+	@Test
+	public void testResetTokenIsSingleUse() {
+		LocalUser user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		String token = jwtService.generatePasswordResetJWT(user);
+		Assertions.assertEquals(user.getEmail(), jwtService.getResetPasswordEmail(token));
+		Assertions.assertThrows(JWTVerificationException.class, () -> jwtService.getResetPasswordEmail(token),
+				"A redeemed token should be rejected.");
+	}
+
+	/**
+	 * Tests that the shared store accepts a token once and purges expired
+	 * records.
+	 */
+	@Test
+	public void testJdbcUsedTokenStore() {
+		JdbcUsedTokenStore store = new JdbcUsedTokenStore(jdbcTemplate);
+		String live = UUID.randomUUID().toString();
+		String expired = UUID.randomUUID().toString();
+		Assertions.assertTrue(store.markUsed(live, Instant.now().plusSeconds(600)));
+		Assertions.assertFalse(store.markUsed(live, Instant.now().plusSeconds(600)), "Second use should be rejected.");
+		Assertions.assertTrue(store.markUsed(expired, Instant.now().minusSeconds(1)));
+		store.purgeExpired();
+		Assertions.assertTrue(store.markUsed(expired, Instant.now().plusSeconds(600)),
+				"Expired records should be purged.");
+		Assertions.assertFalse(store.markUsed(live, Instant.now().plusSeconds(600)));
+	}
+
+}
@@ -0,0 +1,420 @@
+package test.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ECommerceBackendApplication;
+import com.api.model.OrderBody;
+import com.api.model.OrderLineBody;
+import com.api.model.OrderPage;
+import com.api.model.OrderSummary;
+import com.exception.AddressNotFoundException;
+import com.exception.OutOfStockException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.model.Address;
+import com.model.Inventory;
+import com.model.LocalUser;
+import com.model.Product;
+import com.model.ProductStatus;
+import com.model.WebOrder;
+import com.model.WebOrderQuantities;
+import com.repository.AddressDAO;
+import com.repository.InventoryDAO;
+import com.repository.LocalUserDAO;
+import com.repository.WebOrderDAO;
+import com.service.CartService;
+import com.service.HotInventory;
+import com.service.OrderService;
+import com.service.ProductService;
+import com.service.WebOrderTimestampMigration;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Test class to unit test the OrderService class.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class OrderServiceTest {
+
+	/** The OrderService to test. */
+	@Autowired
+	private OrderService orderService;
+	/** The ProductService, to create stock. */
+	@Autowired
+	private ProductService productService;
+	/** The CartService, to hold stock. */
+	@Autowired
+	private CartService cartService;
+	/** The hot inventory entries. */
+	@Autowired
+	private HotInventory hotInventory;
+	/** The Inventory DAO. */
+	@Autowired
+	private InventoryDAO inventoryDAO;
+	/** The Address DAO. */
+	@Autowired
+	private AddressDAO addressDAO;
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+	/** The Web Order DAO. */
+	@Autowired
+	private WebOrderDAO webOrderDAO;
+	/** The entity manager factory, used to read the Hibernate statistics. */
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	/** The migration giving legacy orders a timestamp. */
+	@Autowired
+	private WebOrderTimestampMigration webOrderTimestampMigration;
+	/** The JDBC template, to write legacy rows. */
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	/** The transaction manager, to hold an edit open while an order commits. */
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	/** The object mapper used to serialize responses. */
+	@Autowired
+	private ObjectMapper objectMapper;
+	/** The user placing orders. */
+	private LocalUser user;
+	/** The address of the user. */
+	private Address address;
+
+	/**
+	 * Gives UserA an address to ship to.
+	 */
+	@BeforeEach
+	public void setUp() {
+		user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		address = new Address();
+		address.setAddressLine1("1 Order Street");
+		address.setCity("Testville");
+		address.setCountry("Testland");
+		address.setUser(user);
+		address = addressDAO.save(address);
+	}
+
+	/**
+	 * Creates a product with one inventory entry per given quantity.
+	 * 
+	 * @param quantities The stock of each inventory entry.
+	 * @return The inventory entries.
+	 */
+	private List<Inventory> createStock(int... quantities) {
+		Product product = new Product();
+		product.setName("OrderServiceTest-" + UUID.randomUUID());
+		product.setStatus(ProductStatus.ACTIVE);
+		product.setUserId(user.getId());
+		for (int quantity : quantities) {
+			Inventory inventory = new Inventory();
+			inventory.setQuantity(quantity);
+			inventory.setPrice(10.0);
+			product.getInventory().add(inventory);
+		}
+		return productService.addProduct(product).getInventory();
+	}
+
+	/**
+	 * Builds an order body for the user's address.
+	 * 
+	 * @param lines Pairs of inventory entry and quantity.
+	 * @return The body.
+	 */
+	private OrderBody order(Object... lines) {
+		OrderBody body = new OrderBody();
+		body.setAddressId(address.getId());
+		for (int i = 0; i < lines.length; i += 2) {
+			OrderLineBody line = new OrderLineBody();
+			line.setInventoryId(((Inventory) lines[i]).getId());
+			line.setQuantity((Integer) lines[i + 1]);
+			body.getLines().add(line);
+		}
+		return body;
+	}
+
+	/**
+	 * Reads the current stock of an inventory entry.
+	 */
+	private int stock(Inventory inventory) {
+		return inventoryDAO.findById(inventory.getId()).get().getQuantity();
+	}
+
+	/**
+	 * Tests that an order takes the stock of every line.
+	 */
+	@Test
+	public void testPlaceOrder() throws Exception {
+		List<Inventory> stock = createStock(5, 3);
+		long ordersBefore = webOrderDAO.countByUser_Id(user.getId());
+		WebOrder order = orderService.placeOrder(user, order(stock.get(0), 2, stock.get(1), 3, stock.get(0), 1));
+		Assertions.assertNotNull(order.getId());
+		Assertions.assertEquals(2, order.getQuantities().size(), "Lines of the same entry should be merged.");
+		Assertions.assertEquals(2, stock(stock.get(0)));
+		Assertions.assertEquals(0, stock(stock.get(1)));
+		Assertions.assertEquals(ordersBefore + 1, webOrderDAO.countByUser_Id(user.getId()));
+
+		OrderBody foreignAddress = order(stock.get(0), 1);
+		Address other = new Address();
+		other.setAddressLine1("2 Other Street");
+		other.setCity("Testville");
+		other.setCountry("Testland");
+		other.setUser(localUserDAO.findByUsernameIgnoreCase("UserB").get());
+		foreignAddress.setAddressId(addressDAO.save(other).getId());
+		Assertions.assertThrows(AddressNotFoundException.class, () -> orderService.placeOrder(user, foreignAddress),
+				"An address of another user should be rejected.");
+		Assertions.assertEquals(2, stock(stock.get(0)));
+	}
+
+	/**
+	 * Tests that a short line rolls back the lines already taken and creates no
+	 * order.
+	 */
+	@Test
+	public void testShortLineRollsBackOrder() {
+		List<Inventory> stock = createStock(5, 1);
+		long ordersBefore = webOrderDAO.countByUser_Id(user.getId());
+		OutOfStockException ex = Assertions.assertThrows(OutOfStockException.class,
+				() -> orderService.placeOrder(user, order(stock.get(0), 4, stock.get(1), 2)));
+		Assertions.assertEquals(stock.get(1).getId(), ex.getInventoryId());
+		Assertions.assertEquals(5, stock(stock.get(0)), "Stock taken by earlier lines should be rolled back.");
+		Assertions.assertEquals(1, stock(stock.get(1)));
+		Assertions.assertEquals(ordersBefore, webOrderDAO.countByUser_Id(user.getId()));
+	}
+
+	/**
+	 * Tests that buyers racing for the last items never oversell.
+	 */
+	@Test
+	public void testConcurrentOrdersDoNotOversell() throws Exception {
+		Inventory inventory = createStock(50).get(0);
+		int buyers = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < buyers; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					try {
+						orderService.placeOrder(user, order(inventory, 1));
+						return true;
+					} catch (OutOfStockException ex) {
+						return false;
+					}
+				}));
+			}
+			start.countDown();
+			int placed = 0;
+			for (Future<Boolean> result : results) {
+				if (result.get()) {
+					placed++;
+				}
+			}
+			Assertions.assertEquals(50, placed, "Exactly the stock should be sold.");
+			Assertions.assertEquals(0, stock(inventory));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that the order history pages through every order newest first, each
+	 * page in one statement whatever the number of orders.
+	 */
+	@Test
+	public void testOrderHistoryPages() throws Exception {
+		List<Inventory> stock = createStock(100, 100);
+		for (int i = 0; i < 25; i++) {
+			orderService.placeOrder(user, order(stock.get(0), 1, stock.get(1), 2));
+		}
+		long total = webOrderDAO.countByUser_Id(user.getId());
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		Set<UUID> seen = new HashSet<>();
+		OrderSummary newest = null;
+		OrderSummary previous = null;
+		OrderPage page = null;
+		do {
+			statistics.clear();
+			page = page == null ? orderService.getOrderPage(user, null, null, 10)
+					: orderService.getOrderPage(user, page.getNextAfterTimestamp(), page.getNextAfterId(), 10);
+			objectMapper.writeValueAsString(page);
+			Assertions.assertEquals(1, statistics.getPrepareStatementCount(), "A page should load in one statement.");
+			Assertions.assertTrue(page.getItems().size() <= 10);
+			for (OrderSummary summary : page.getItems()) {
+				Assertions.assertTrue(seen.add(summary.getId()), "An order should appear on one page only.");
+				Assertions.assertTrue(previous == null
+						|| summary.getCreatedTimestamp().compareTo(previous.getCreatedTimestamp()) <= 0,
+						"Orders should be newest first.");
+				newest = newest == null ? summary : newest;
+				previous = summary;
+			}
+		} while (page.isHasMore());
+		Assertions.assertEquals(total, seen.size());
+		Assertions.assertEquals(3, newest.getItemCount());
+		Assertions.assertEquals(2, newest.getLineCount());
+	}
+
+	/**
+	 * Tests that an order is loaded with its whole graph in three statements and
+	 * is only visible to its user.
+	 */
+	@Test
+	public void testOrderDetail() throws Exception {
+		List<Inventory> stock = createStock(5, 5);
+		WebOrder placed = orderService.placeOrder(user, order(stock.get(0), 1, stock.get(1), 2));
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		WebOrder order = orderService.getOrder(user, placed.getId());
+		String json = objectMapper.writeValueAsString(order);
+		Assertions.assertEquals(3, statistics.getPrepareStatementCount(),
+				"The order, its lines and their products should load in three statements.");
+		Assertions.assertEquals(2, order.getQuantities().size());
+		Assertions.assertTrue(json.contains(stock.get(1).getId().toString()));
+
+		LocalUser other = localUserDAO.findByUsernameIgnoreCase("UserB").get();
+		Assertions.assertNull(orderService.getOrder(other, placed.getId()), "Another user's order should not be found.");
+	}
+
+	/**
+	 * Tests that a seller can still delist entries that have been ordered, hot or
+	 * not, and that the order keeps the ids of the entries it took stock from.
+	 */
+	@Test
+	public void testDelistOrderedInventory() throws Exception {
+		List<Inventory> stock = createStock(5, 5);
+		Assertions.assertTrue(hotInventory.designate(stock.get(1).getId()));
+		WebOrder placed = orderService.placeOrder(user, order(stock.get(0), 1, stock.get(1), 2));
+
+		UUID productId = stock.get(0).getProduct().getId();
+		Product update = productService.getProduct(productId);
+		update.getInventory().forEach(inventory -> inventory.setQuantity(0));
+		Assertions.assertNotNull(productService.updateProduct(productId, update));
+		Assertions.assertTrue(inventoryDAO.findById(stock.get(0).getId()).isEmpty(), "The entry should be delisted.");
+		Assertions.assertTrue(inventoryDAO.findById(stock.get(1).getId()).isEmpty(), "The hot entry should be delisted.");
+		Assertions.assertFalse(hotInventory.isHot(stock.get(1).getId()));
+
+		WebOrder order = orderService.getOrder(user, placed.getId());
+		Assertions.assertEquals(Set.of(stock.get(0).getId(), stock.get(1).getId()),
+				order.getQuantities().stream().map(WebOrderQuantities::getInventoryId).collect(Collectors.toSet()));
+	}
+
+	/**
+	 * Tests that orders placed before the timestamp column existed are given the
+	 * epoch at startup and come last in the order history.
+	 */
+	@Test
+	public void testLegacyOrdersAreTimestamped() throws Exception {
+		List<Inventory> stock = createStock(5);
+		WebOrder legacy = orderService.placeOrder(user, order(stock.get(0), 1));
+		orderService.placeOrder(user, order(stock.get(0), 1));
+		jdbcTemplate.update("UPDATE web_order SET created_timestamp = NULL WHERE id = ?", legacy.getId());
+
+		webOrderTimestampMigration.run(null);
+		Assertions.assertEquals(WebOrderTimestampMigration.LEGACY_TIMESTAMP,
+				webOrderDAO.findById(legacy.getId()).get().getCreatedTimestamp());
+
+		List<OrderSummary> orders = new ArrayList<>();
+		OrderPage page = null;
+		do {
+			page = page == null ? orderService.getOrderPage(user, null, null, 10)
+					: orderService.getOrderPage(user, page.getNextAfterTimestamp(), page.getNextAfterId(), 10);
+			orders.addAll(page.getItems());
+		} while (page.isHasMore());
+		Assertions.assertEquals(webOrderDAO.countByUser_Id(user.getId()), orders.size());
+		Assertions.assertTrue(orders.stream().anyMatch(summary -> summary.getId().equals(legacy.getId())));
+		Assertions.assertEquals(WebOrderTimestampMigration.LEGACY_TIMESTAMP,
+				orders.get(orders.size() - 1).getCreatedTimestamp(), "Legacy orders should come last.");
+	}
+
+	/**
+	 * Tests that a seller editing an entry loaded before an order took stock
+	 * applies the edit as a change, keeping the order's decrement, and never
+	 * takes the stock below zero.
+	 */
+	@Test
+	public void testEditKeepsStockTakenSinceLoad() throws Exception {
+		List<Inventory> stock = createStock(10);
+		Product updated = editAfterOrder(stock.get(0), 2, 15);
+		Assertions.assertEquals(13, updated.getInventory().get(0).getQuantity());
+		Assertions.assertEquals(13, stock(stock.get(0)), "The edit should keep the stock the order took.");
+
+		editAfterOrder(stock.get(0), 3, 1);
+		Assertions.assertEquals(0, stock(stock.get(0)), "An edit should never take the stock below zero.");
+	}
+
+	/**
+	 * Edits the stock of an entry in a transaction that loaded the product
+	 * before an order, placed from another thread, took some of it.
+	 * 
+	 * @param inventory The inventory entry.
+	 * @param ordered   How many the order takes.
+	 * @param quantity  The stock the seller sets.
+	 * @return The updated product.
+	 */
+	private Product editAfterOrder(Inventory inventory, int ordered, int quantity) throws Exception {
+		UUID productId = inventory.getProduct().getId();
+		Product update = productService.getProduct(productId);
+		update.getInventory().get(0).setQuantity(quantity);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			return new TransactionTemplate(transactionManager).execute(status -> {
+				productService.getProduct(productId);
+				try {
+					executor.submit(() -> orderService.placeOrder(user, order(inventory, ordered))).get();
+				} catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+				return productService.updateProduct(productId, update);
+			});
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that an order for an entry delisted after the user held its stock is
+	 * refused and rolled back rather than placed without that line.
+	 */
+	@Test
+	public void testOrderForDelistedEntryRollsBack() throws Exception {
+		List<Inventory> stock = createStock(5, 5);
+		OrderBody body = order(stock.get(0), 1, stock.get(1), 2);
+		cartService.hold(user, body.getLines().get(1));
+		UUID productId = stock.get(0).getProduct().getId();
+		Product update = productService.getProduct(productId);
+		update.getInventory().stream().filter(inventory -> inventory.getId().equals(stock.get(1).getId()))
+				.forEach(inventory -> inventory.setQuantity(0));
+		productService.updateProduct(productId, update);
+		long orders = webOrderDAO.countByUser_Id(user.getId());
+
+		OutOfStockException ex = Assertions.assertThrows(OutOfStockException.class,
+				() -> orderService.placeOrder(user, body));
+		Assertions.assertEquals(stock.get(1).getId(), ex.getInventoryId());
+		Assertions.assertEquals(orders, webOrderDAO.countByUser_Id(user.getId()), "No order should be placed.");
+		Assertions.assertEquals(5, stock(stock.get(0)), "The other line should be rolled back.");
+		Assertions.assertEquals(1, cartService.getHolds(user).stream()
+				.filter(hold -> hold.getInventoryId().equals(stock.get(1).getId())).count(),
+				"The hold should be rolled back.");
+	}
+
+}
@@ -0,0 +1,243 @@
+package test.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.ECommerceBackendApplication;
+import com.api.model.ProductPage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.model.Category;
+import com.model.Inventory;
+import com.model.Product;
+import com.model.ProductStatus;
+import com.repository.CategoryDAO;
+import com.service.ProductService;
+import com.service.ProductViewService;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.transaction.Transactional;
+
+/**
+ * Test class to unit test the ProductService class.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class ProductServiceTest {
+
+	/** The ProductService to test. */
+	@Autowired
+	private ProductService productService;
+
+	/** The cached product views. */
+	@Autowired
+	private ProductViewService productViewService;
+
+	/** The Category DAO. */
+	@Autowired
+	private CategoryDAO categoryDAO;
+
+	/** The entity manager, used to clear the persistence context. */
+	@Autowired
+	private EntityManager entityManager;
+
+	/** The entity manager factory, used to read the Hibernate statistics. */
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	/** The object mapper used to serialize responses. */
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Creates a number of products each with two categories and two inventories.
+	 * 
+	 * @param count  How many products to create.
+	 * @param userId The seller of the products.
+	 */
+	private void createProducts(int count, UUID userId) {
+		Category categoryA = new Category();
+		categoryA.setName("ProductServiceTest-A-" + UUID.randomUUID());
+		categoryA = categoryDAO.save(categoryA);
+		Category categoryB = new Category();
+		categoryB.setName("ProductServiceTest-B-" + UUID.randomUUID());
+		categoryB = categoryDAO.save(categoryB);
+		for (int i = 0; i < count; i++) {
+			Product product = new Product();
+			product.setName("ProductServiceTest-" + UUID.randomUUID());
+			product.setStatus(ProductStatus.ACTIVE);
+			product.setUserId(userId);
+			product.getCategories().add(categoryA);
+			product.getCategories().add(categoryB);
+			for (int j = 0; j < 2; j++) {
+				Inventory inventory = new Inventory();
+				inventory.setQuantity(5);
+				inventory.setPrice(10.0 + j);
+				product.getInventory().add(inventory);
+			}
+			productService.addProduct(product);
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	/**
+	 * Counts the statements issued while loading and serializing a listing.
+	 * 
+	 * @param loader The listing to load.
+	 * @return The number of statements prepared.
+	 */
+	private long countStatements(ListingLoader loader) throws Exception {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		Object listing = loader.load();
+		objectMapper.writeValueAsString(listing);
+		long statements = statistics.getPrepareStatementCount();
+		entityManager.clear();
+		return statements;
+	}
+
+	/**
+	 * Tests that the catalog pages through a category by (name, id) with a seek
+	 * cursor, every product exactly once, and that the filters apply to every
+	 * page.
+	 */
+	@Test
+	@Transactional
+	public void testCatalogPagesBySeekCursor() {
+		Category category = new Category();
+		category.setName("ProductServiceTest-Page-" + UUID.randomUUID());
+		category = categoryDAO.save(category);
+		String prefix = "ProductServiceTest-Page-" + UUID.randomUUID() + "-";
+		List<Product> created = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			Product product = new Product();
+			product.setName(prefix + (7 - i));
+			product.setStatus(i == 7 ? ProductStatus.INACTIVE : ProductStatus.ACTIVE);
+			product.setUserId(UUID.randomUUID());
+			product.getCategories().add(category);
+			Inventory inventory = new Inventory();
+			inventory.setQuantity(1);
+			inventory.setPrice((double) i);
+			product.getInventory().add(inventory);
+			created.add(productService.addProduct(product));
+		}
+		entityManager.flush();
+		entityManager.clear();
+		created.sort(Comparator.comparing(Product::getName).thenComparing(Product::getId));
+
+		List<UUID> seen = new ArrayList<>();
+		ProductPage page = productService.getProductPage(null, category.getId(), null, null, null, null, 3);
+		while (true) {
+			Assertions.assertTrue(page.getItems().size() <= 3);
+			page.getItems().forEach(product -> seen.add(product.getId()));
+			if (!page.isHasMore()) {
+				break;
+			}
+			Assertions.assertEquals(seen.get(seen.size() - 1), page.getNextAfterId());
+			page = productService.getProductPage(null, category.getId(), null, null, page.getNextAfterName(),
+					page.getNextAfterId(), 3);
+		}
+		Assertions.assertEquals(created.stream().map(Product::getId).toList(), seen,
+				"Every product should be seen once, ordered by name then id.");
+
+		ProductPage active = productService.getProductPage(ProductStatus.ACTIVE, category.getId(), 4.0, null, null,
+				null, 2);
+		Assertions.assertTrue(active.isHasMore());
+		ProductPage rest = productService.getProductPage(ProductStatus.ACTIVE, category.getId(), 4.0, null,
+				active.getNextAfterName(), active.getNextAfterId(), 2);
+		Assertions.assertFalse(rest.isHasMore());
+		Assertions.assertEquals(1, rest.getItems().size(), "Only the active products priced 4 to 6 should match.");
+		Assertions.assertNull(rest.getNextAfterId());
+		ProductPage capped = productService.getProductPage(null, category.getId(), null, null, null, null, 1000);
+		Assertions.assertEquals(5, capped.getItems().size(), "The page size should be capped, not rejected.");
+		Assertions.assertTrue(capped.isHasMore());
+	}
+
+	/**
+	 * Tests that a listing loads in the same number of statements for any number
+	 * of products, with categories and inventory fully serialized.
+	 */
+	@Test
+	@Transactional
+	public void testListingsDoNotLoadPerProduct() throws Exception {
+		UUID sellerA = UUID.randomUUID();
+		UUID sellerB = UUID.randomUUID();
+		createProducts(2, sellerA);
+		createProducts(20, sellerB);
+
+		long fewProducts = countStatements(() -> productService.findProductsByUserId(sellerA));
+		long manyProducts = countStatements(() -> productService.findProductsByUserId(sellerB));
+		Assertions.assertEquals(3, fewProducts, "Seller listing should load in three statements.");
+		Assertions.assertEquals(fewProducts, manyProducts, "Seller listing should not grow with the product count.");
+
+		Assertions.assertEquals(3, countStatements(() -> productService.getProducts()),
+				"Catalog listing should load in three statements.");
+		Assertions.assertEquals(3, countStatements(() -> productService.getProductPage(null, null, null, null, null, null, 10)),
+				"Catalog page should load in three statements.");
+
+		List<Product> products = productService.findProductsByUserId(sellerB);
+		Assertions.assertEquals(20, products.size());
+		Assertions.assertEquals(2, products.get(0).getInventory().size(), "Inventory should not be duplicated.");
+		Assertions.assertEquals(2, products.get(0).getCategories().size());
+		UUID productId = products.get(0).getId();
+		entityManager.clear();
+
+		Assertions.assertEquals(2, countStatements(() -> productService.getProduct(productId)),
+				"Single product should load in two statements.");
+	}
+
+	/**
+	 * Tests that cached views are served until a write commits and never show the
+	 * old stock afterwards.
+	 */
+	@Test
+	public void testCachedViewsAreInvalidatedOnWrite() throws Exception {
+		Product product = new Product();
+		product.setName("ProductServiceTest-Cache-" + UUID.randomUUID());
+		product.setStatus(ProductStatus.ACTIVE);
+		product.setUserId(UUID.randomUUID());
+		Inventory inventory = new Inventory();
+		inventory.setQuantity(7);
+		inventory.setPrice(12.5);
+		product.getInventory().add(inventory);
+		Product saved = productService.addProduct(product);
+		UUID productId = saved.getId();
+
+		String firstETag = productViewService.getProduct(productId).getETag();
+		Assertions.assertSame(productViewService.getProduct(productId), productViewService.getProduct(productId),
+				"Second read should be a cache hit.");
+		Assertions.assertTrue(new String(productViewService.getCatalog().getBody()).contains(saved.getName()));
+
+		Product update = productService.getProduct(productId);
+		update.getInventory().get(0).setQuantity(3);
+		productService.updateProduct(productId, update);
+
+		Product cached = objectMapper.readValue(productViewService.getProduct(productId).getBody(), Product.class);
+		Assertions.assertEquals(3, cached.getInventory().get(0).getQuantity(), "Stock should be refreshed.");
+		Assertions.assertNotEquals(firstETag, productViewService.getProduct(productId).getETag(),
+				"A changed product should get a new ETag.");
+		Assertions.assertTrue(new String(productViewService.getCatalog().getBody()).contains("\"quantity\":3"));
+
+		productService.deleteProduct(productId);
+		Assertions.assertNull(productViewService.getProduct(productId), "Deleted product should not be served.");
+		Assertions.assertFalse(new String(productViewService.getCatalog().getBody()).contains(saved.getName()));
+	}
+
+	/**
+	 * Loads a listing for statement counting.
+	 */
+	@FunctionalInterface
+	private interface ListingLoader {
+		Object load();
+	}
+
+}
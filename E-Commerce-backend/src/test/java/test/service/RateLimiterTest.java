@@ -0,0 +1,81 @@
+package test.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.exception.TooManyRequestsException;
+import com.service.InMemoryRateLimitStore;
+import com.service.RateLimiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test class to unit test the RateLimiter class.
+ */
+public class RateLimiterTest {
+
+	/**
+	 * Tests that the address and account buckets are enforced separately and
+	 * that a rejection says when to retry.
+	 * 
+	 * @throws TooManyRequestsException Thrown if a request within the limit is
+	 *                                  rejected.
+	 */
+	@Test
+	public void testLimitsPerAddressAndAccount() throws TooManyRequestsException {
+		RateLimiter rateLimiter = new RateLimiter(new InMemoryRateLimitStore(1000), new SimpleMeterRegistry(), 60);
+		ReflectionTestUtils.setField(rateLimiter, "loginPerIp", 5);
+		ReflectionTestUtils.setField(rateLimiter, "loginPerAccount", 3);
+
+		for (int i = 0; i < 3; i++) {
+			rateLimiter.checkLogin("10.0.0.1", i % 2 == 0 ? "UserA" : "usera");
+		}
+		TooManyRequestsException ex = Assertions.assertThrows(TooManyRequestsException.class,
+				() -> rateLimiter.checkLogin("10.0.0.2", "USERA"), "The username should be over its limit.");
+		Assertions.assertTrue(ex.getRetryAfterSeconds() > 0 && ex.getRetryAfterSeconds() <= 20);
+
+		rateLimiter.checkLogin("10.0.0.1", "UserB");
+		rateLimiter.checkLogin("10.0.0.1", "UserB");
+		Assertions.assertThrows(TooManyRequestsException.class, () -> rateLimiter.checkLogin("10.0.0.1", "UserC"),
+				"The address should be over its limit.");
+		rateLimiter.checkRegister("10.0.0.1", "UserA@junit.com");
+	}
+
+	/**
+	 * Tests that a bucket hands out exactly its capacity under contention.
+	 * 
+	 * @throws Exception Thrown if a worker fails.
+	 */
+	@Test
+	public void testBucketUnderContention() throws Exception {
+		InMemoryRateLimitStore store = new InMemoryRateLimitStore(1000);
+		AtomicInteger granted = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < 2000; i++) {
+				futures.add(executor.submit(() -> {
+					if (store.tryAcquire("login:ip:10.0.0.1", 100, Duration.ofHours(1)) == 0) {
+						granted.incrementAndGet();
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assertions.assertEquals(100, granted.get());
+	}
+
+}
@@ -0,0 +1,81 @@
+package test.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.service.TimingWheel;
+
+/**
+ * Test class to unit test the TimingWheel class.
+ */
+public class TimingWheelTest {
+
+	/**
+	 * Tests that keys expire on the first advance at or after their deadline,
+	 * across every level and beyond the span of the wheel.
+	 */
+	@Test
+	public void testKeysExpireOnTime() {
+		TimingWheel<Integer> wheel = new TimingWheel<>(1, 1000);
+		Random random = new Random(42);
+		Map<Integer, Long> deadlines = new HashMap<>();
+		for (int key = 0; key < 20000; key++) {
+			long deadline = switch (key % 4) {
+				case 0 -> 1001 + random.nextInt(64);
+				case 1 -> 1001 + random.nextInt(1 << 12);
+				case 2 -> 1001 + random.nextInt(1 << 20);
+				default -> 1000 + (1L << 24) + random.nextInt(1 << 16);
+			};
+			deadlines.put(key, deadline);
+			wheel.schedule(key, deadline);
+		}
+		deadlines.put(-1, 1001L);
+		wheel.schedule(-1, 0);
+		Assertions.assertEquals(20001, wheel.size());
+
+		long now = 1000;
+		while (!deadlines.isEmpty()) {
+			long previous = now;
+			now += 1 + random.nextInt(5000);
+			for (Integer key : wheel.advance(now)) {
+				long deadline = deadlines.remove(key);
+				Assertions.assertTrue(deadline > previous && deadline <= now,
+						"Key " + key + " due at " + deadline + " expired between " + previous + " and " + now);
+			}
+			for (Map.Entry<Integer, Long> entry : deadlines.entrySet()) {
+				if (entry.getValue() <= now) {
+					Assertions.fail("Key " + entry.getKey() + " due at " + entry.getValue() + " not expired at " + now);
+				}
+			}
+		}
+		Assertions.assertEquals(0, wheel.size());
+	}
+
+	/**
+	 * Tests that cancelled keys never expire and rescheduled keys expire once,
+	 * at their new deadline.
+	 */
+	@Test
+	public void testCancelAndReschedule() {
+		TimingWheel<String> wheel = new TimingWheel<>(10, 0);
+		wheel.schedule("cancelled", 500);
+		wheel.schedule("moved", 500);
+		wheel.schedule("kept", 505);
+		Assertions.assertTrue(wheel.cancel("cancelled"));
+		Assertions.assertFalse(wheel.cancel("cancelled"));
+		wheel.schedule("moved", 100000);
+		Assertions.assertEquals(2, wheel.size());
+
+		Assertions.assertEquals(List.of(), wheel.advance(500), "A deadline is rounded up to the next tick.");
+		Assertions.assertEquals(List.of("kept"), wheel.advance(510));
+		Assertions.assertEquals(List.of(), wheel.advance(99990));
+		Assertions.assertEquals(List.of("moved"), wheel.advance(100000));
+		Assertions.assertEquals(0, wheel.size());
+	}
+
+}
@@ -2,28 +2,70 @@ package test.service;
 
 import com.ECommerceBackendApplication;
 import com.api.model.LoginBody;
+import com.api.model.PasswordResetBody;
 import com.api.model.RegistrationBody;
+import com.api.security.JWTRequestFilter;
 import com.exception.EmailFailureException;
 import com.exception.UserAlreadyExistsException;
 import com.exception.UserNotVerifiedException;
 import com.icegreen.greenmail.configuration.GreenMailConfiguration;
 import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.ServerSetupTest;
+import com.model.LocalUser;
 import com.model.VerificationToken;
+import com.repository.LocalUserDAO;
 import com.repository.VerificationTokenDAO;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.service.EmailService;
+import com.service.EncryptionService;
+import com.service.HashingExecutor;
+import com.service.JWTService;
+import com.service.PrincipalCache;
+import com.service.UserNormalizationMigration;
 import com.service.UserService;
+import com.service.VerificationTokenMigration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.transaction.Transactional;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.bcrypt.BCrypt;
 
 /**
  * Test class to unit test the UserService class.
@@ -46,6 +88,42 @@ public class UserServiceTest {
 	@Autowired
 	private VerificationTokenDAO verificationTokenDAO;
 
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+
+	/** The JWT service. */
+	@Autowired
+	private JWTService jwtService;
+
+	/** The filter authenticating requests. */
+	@Autowired
+	private JWTRequestFilter jwtRequestFilter;
+
+	/** The entity manager factory, used to read the Hibernate statistics. */
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	/** The encryption service, to build services with a failing dependency. */
+	@Autowired
+	private EncryptionService encryptionService;
+
+	/** The email service, to build services with a failing dependency. */
+	@Autowired
+	private EmailService emailService;
+
+	/** The principal cache, to build services with a failing dependency. */
+	@Autowired
+	private PrincipalCache principalCache;
+
+	/** The real hashing pool. */
+	@Autowired
+	private HashingExecutor hashingExecutor;
+
+	/** The JDBC template, to recreate the schema of older versions. */
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
 	/**
 	 * Tests the registration process of the user.
 	 * 
@@ -81,48 +159,382 @@ public class UserServiceTest {
 
 		// Check if registering a user with unique credentials doesn't throw an
 		// exception
-		Assertions.assertDoesNotThrow(() -> userService.registerUser(body), "User should register successfully.");
+		Assertions.assertDoesNotThrow(() -> userService.registerUser(body).join(), "User should register successfully.");
 
-		// Check if the email sent matches the expected recipient
+		// Check if the email sent matches the expected recipient, it is sent in
+		// the background
+		Assertions.assertTrue(greenMailExtension.waitForIncomingEmail(5000, 1));
 		Assertions.assertEquals(body.getEmail(),
 				greenMailExtension.getReceivedMessages()[0].getRecipients(Message.RecipientType.TO)[0].toString());
 	}
 
+	/**
+	 * Tests that concurrent registrations of one username, in different cases,
+	 * create a single user.
+	 * 
+	 * @throws Exception Thrown if a registration fails otherwise.
+	 */
+	@Test
+	public void testConcurrentRegistrationCreatesOneUser() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < 8; i++) {
+				RegistrationBody body = new RegistrationBody();
+				body.setUsername(i % 2 == 0 ? "UserServiceTest$Concurrent" : "USERSERVICETEST$CONCURRENT");
+				body.setEmail("UserServiceTest$Concurrent" + i + "@junit.com");
+				body.setFirstName("FirstName");
+				body.setLastName("LastName");
+				body.setPassword("MySecretPassword123");
+				futures.add(executor.submit(() -> {
+					try {
+						userService.registerUser(body).join();
+						return true;
+					} catch (UserAlreadyExistsException ex) {
+						return false;
+					} catch (CompletionException ex) {
+						Assertions.assertInstanceOf(UserAlreadyExistsException.class, ex.getCause());
+						return false;
+					}
+				}));
+			}
+			int registered = 0;
+			for (Future<Boolean> future : futures) {
+				registered += future.get() ? 1 : 0;
+			}
+			Assertions.assertEquals(1, registered, "Only one registration should succeed.");
+		} finally {
+			executor.shutdown();
+		}
+		Assertions.assertTrue(localUserDAO.findByUsernameIgnoreCase("userservicetest$concurrent").isPresent());
+		Assertions.assertTrue(greenMailExtension.waitForIncomingEmail(5000, 1));
+	}
+
+	/**
+	 * Tests that a table from before the tokens were hashed, with the NOT NULL
+	 * plain text column and rows without a hash, is migrated: the rows can be
+	 * verified by their token and new tokens can be inserted again.
+	 */
+	@Test
+	public void testLegacyVerificationTokensAreMigrated() {
+		LocalUser user = new LocalUser();
+		user.setUsername("UserServiceTest$Legacy");
+		user.setEmail("UserServiceTest$Legacy@junit.com");
+		user.setFirstName("FirstName");
+		user.setLastName("LastName");
+		user.setPassword(BCrypt.hashpw("MySecretPassword123", BCrypt.gensalt(4)));
+		user = localUserDAO.save(user);
+		String token = jwtService.generateVerificationJWT(user);
+		// Rows of other tests get a value, so the column can be NOT NULL as in older schemas.
+		jdbcTemplate.execute("ALTER TABLE verification_token ADD COLUMN token CLOB DEFAULT '' NOT NULL");
+		jdbcTemplate.execute("ALTER TABLE verification_token ALTER COLUMN token DROP DEFAULT");
+		jdbcTemplate.update("INSERT INTO verification_token (id, token, created_timestamp, user_id) VALUES (?, ?, ?, ?)",
+				UUID.randomUUID(), token, new Timestamp(System.currentTimeMillis()), user.getId());
+		jdbcTemplate.update("INSERT INTO verification_token (id, token, created_timestamp, user_id) VALUES (?, ?, ?, ?)",
+				UUID.randomUUID(), "not-a-jwt", new Timestamp(System.currentTimeMillis()), user.getId());
+		VerificationToken fresh = new VerificationToken();
+		fresh.setTokenHash((UUID.randomUUID().toString() + UUID.randomUUID()).replace("-", ""));
+		fresh.setCreatedTimestamp(new Timestamp(System.currentTimeMillis()));
+		fresh.setExpiresAt(new Timestamp(System.currentTimeMillis() + 60000));
+		fresh.setUser(user);
+		Assertions.assertThrows(DataIntegrityViolationException.class, () -> verificationTokenDAO.save(fresh),
+				"Inserts should fail while the plain text column is there.");
+
+		new VerificationTokenMigration(jdbcTemplate).run(null);
+
+		Assertions.assertEquals(1, verificationTokenDAO.findAll().stream()
+				.filter(saved -> saved.getUser().getUsername().equals("UserServiceTest$Legacy")).count(),
+				"The unreadable token should be deleted.");
+		VerificationToken migrated = verificationTokenDAO.findFirstByUser_IdOrderByCreatedTimestampDesc(user.getId()).get();
+		Assertions.assertEquals(64, migrated.getTokenHash().length());
+		Assertions.assertNotNull(migrated.getExpiresAt());
+		fresh.setId(null);
+		Assertions.assertDoesNotThrow(() -> verificationTokenDAO.save(fresh), "New tokens should insert again.");
+		Assertions.assertTrue(userService.verifyUser(token), "The legacy token should still verify the user.");
+		Assertions.assertDoesNotThrow(() -> new VerificationTokenMigration(jdbcTemplate).run(null),
+				"Once migrated a restart should do nothing.");
+	}
+
+	/**
+	 * Saves a user as written before the normalized columns existed.
+	 * 
+	 * @param username The username.
+	 * @param email    The email.
+	 * @return The user.
+	 */
+	private LocalUser saveLegacyUser(String username, String email) {
+		LocalUser user = new LocalUser();
+		user.setUsername(username);
+		user.setEmail(email);
+		user.setFirstName("FirstName");
+		user.setLastName("LastName");
+		user.setPassword(BCrypt.hashpw("MySecretPassword123", BCrypt.gensalt(4)));
+		user = localUserDAO.save(user);
+		jdbcTemplate.update("UPDATE local_user SET username_normalized = NULL, email_normalized = NULL WHERE id = ?",
+				user.getId());
+		return user;
+	}
+
+	/**
+	 * Reads the normalized username of a user.
+	 */
+	private String usernameNormalized(LocalUser user) {
+		return jdbcTemplate.queryForObject("SELECT username_normalized FROM local_user WHERE id = ?", String.class,
+				user.getId());
+	}
+
+	/**
+	 * Tests that users written before the normalized columns existed are found
+	 * before and after the backfill, and that a pair differing only by case is
+	 * skipped without stopping the backfill of the others.
+	 */
+	@Test
+	public void testLegacyUsersAreNormalizedOneByOne() {
+		LocalUser plain = saveLegacyUser("UserServiceTest$Plain", "UserServiceTest$Plain@junit.com");
+		LocalUser upper = saveLegacyUser("UserServiceTest$Twin", "UserServiceTest$TwinA@junit.com");
+		LocalUser lower = saveLegacyUser("userservicetest$twin", "UserServiceTest$TwinB@junit.com");
+		Assertions.assertEquals(plain.getId(), localUserDAO.findByUsernameIgnoreCase("USERSERVICETEST$PLAIN").get().getId(),
+				"A legacy user should be found before the backfill.");
+		Assertions.assertTrue(localUserDAO.existsByUsernameOrEmail("userservicetest$plain", "nobody@junit.com"));
+		Assertions.assertTrue(localUserDAO.findByUsernameIgnoreCase("UserServiceTest$Twin").isEmpty(),
+				"A name matching two legacy users is ambiguous.");
+
+		new UserNormalizationMigration(localUserDAO).run(null);
+
+		Assertions.assertEquals("userservicetest$plain", usernameNormalized(plain),
+				"The conflicting pair should not stop the other users.");
+		Assertions.assertEquals(1, List.of(upper, lower).stream().filter(user -> usernameNormalized(user) != null).count(),
+				"Only one of the pair can take the lower case name.");
+		Assertions.assertTrue(localUserDAO.findByUsernameIgnoreCase("UserServiceTest$Twin").isPresent());
+		for (LocalUser twin : List.of(upper, lower)) {
+			Assertions.assertEquals(twin.getId(), localUserDAO.findByEmailIgnoreCase(twin.getEmail().toUpperCase()).get()
+					.getId(), "Both of the pair should still be found by email.");
+		}
+		localUserDAO.deleteAll(List.of(plain, upper, lower));
+	}
+
 	/**
 	 * Tests the loginUser method.
 	 * 
 	 * @throws UserNotVerifiedException
-	 * @throws EmailFailureException
 	 */
 	@Test
 	@Transactional
-	public void testLoginUser() throws UserNotVerifiedException, EmailFailureException {
+	public void testLoginUser() throws UserNotVerifiedException {
 		LoginBody body = new LoginBody();
 		body.setUsername("UserA-NotExists");
 		body.setPassword("PasswordA123-BadPassword");
-		Assertions.assertNull(userService.loginUser(body), "The user should not exist.");
+		Assertions.assertNull(userService.loginUser(body).join(), "The user should not exist.");
 		body.setUsername("UserA");
-		Assertions.assertNull(userService.loginUser(body), "The password should be incorrect.");
+		Assertions.assertNull(userService.loginUser(body).join(), "The password should be incorrect.");
 		body.setPassword("PasswordA123");
-		Assertions.assertNotNull(userService.loginUser(body), "The user should login successfully.");
+		Assertions.assertNotNull(userService.loginUser(body).join(), "The user should login successfully.");
 		body.setUsername("UserB");
 		body.setPassword("PasswordB123");
 		try {
-			userService.loginUser(body);
+			userService.loginUser(body).join();
 			Assertions.assertTrue(false, "User should not have email verified.");
-		} catch (UserNotVerifiedException ex) {
-			Assertions.assertTrue(ex.isNewEmailSent(), "Email verification should be sent.");
-			Assertions.assertEquals(1, greenMailExtension.getReceivedMessages().length);
+		} catch (CompletionException ex) {
+			UserNotVerifiedException cause = (UserNotVerifiedException) ex.getCause();
+			Assertions.assertTrue(cause.isNewEmailSent(), "Email verification should be sent.");
+			Assertions.assertTrue(greenMailExtension.waitForIncomingEmail(5000, 1));
 		}
 		try {
-			userService.loginUser(body);
+			userService.loginUser(body).join();
 			Assertions.assertTrue(false, "User should not have email verified.");
-		} catch (UserNotVerifiedException ex) {
-			Assertions.assertFalse(ex.isNewEmailSent(), "Email verification should not be resent.");
+		} catch (CompletionException ex) {
+			UserNotVerifiedException cause = (UserNotVerifiedException) ex.getCause();
+			Assertions.assertFalse(cause.isNewEmailSent(), "Email verification should not be resent.");
 			Assertions.assertEquals(1, greenMailExtension.getReceivedMessages().length);
 		}
 	}
 
+	/**
+	 * Tests that a hash made at a lower cost than configured is replaced in the
+	 * background after a successful login.
+	 * 
+	 * @throws InterruptedException Thrown if interrupted while waiting.
+	 */
+	@Test
+	public void testOutdatedHashIsUpgradedOnLogin() throws InterruptedException {
+		LocalUser user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		String weakHash = BCrypt.hashpw("PasswordA123", BCrypt.gensalt(4));
+		Assertions.assertEquals(1, localUserDAO.replacePassword(user.getId(), user.getPassword(), weakHash));
+
+		LoginBody body = new LoginBody();
+		body.setUsername("UserA");
+		body.setPassword("PasswordA123");
+		Assertions.assertNotNull(userService.loginUser(body).join());
+		long deadline = System.currentTimeMillis() + 10000;
+		String hash = weakHash;
+		while (hash.equals(weakHash) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			hash = localUserDAO.findByUsernameIgnoreCase("UserA").get().getPassword();
+		}
+		Assertions.assertTrue(hash.startsWith("$2a$10$"), "The hash should be upgraded to the configured cost.");
+		Assertions.assertNotNull(userService.loginUser(body).join(), "The upgraded hash should still verify.");
+	}
+
+	/**
+	 * Tests that the user behind a token is loaded once for both HTTP and STOMP
+	 * requests, and loaded again after a password reset.
+	 * 
+	 * @throws Exception Thrown if the filter fails.
+	 */
+	@Test
+	public void testPrincipalIsCached() throws Exception {
+		LocalUser user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		String token = "Bearer " + jwtService.generateJWT(user);
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		statistics.clear();
+		Assertions.assertEquals("UserA", authenticateHttp(token).getName());
+		Assertions.assertEquals("UserA", authenticateStomp(token).getName());
+		Assertions.assertEquals("UserA", authenticateHttp(token).getName());
+		Assertions.assertEquals(1, statistics.getPrepareStatementCount(), "The user should be loaded once.");
+
+		PasswordResetBody body = new PasswordResetBody();
+		body.setToken(jwtService.generatePasswordResetJWT(user));
+		body.setPassword("PasswordA123");
+		userService.resetPassword(body).join();
+		statistics.clear();
+		Assertions.assertEquals("UserA", authenticateStomp(token).getName());
+		Assertions.assertEquals(1, statistics.getPrepareStatementCount(), "The reset should evict the user.");
+	}
+
+	/**
+	 * Tests that a reset turned away by a full hashing pool, or whose save
+	 * fails, leaves the token usable for the retry, and that the token can only
+	 * be used once after that.
+	 */
+	@Test
+	public void testFailedResetKeepsToken() {
+		LocalUser user = localUserDAO.findByUsernameIgnoreCase("UserA").get();
+		PasswordResetBody body = new PasswordResetBody();
+		body.setToken(jwtService.generatePasswordResetJWT(user));
+		body.setPassword("PasswordA123");
+
+		HashingExecutor fullPool = new HashingExecutor(1, 1, 1, new SimpleMeterRegistry()) {
+			@Override
+			public <T> CompletableFuture<T> submit(Supplier<T> work) {
+				throw new RejectedExecutionException("Simulated full pool");
+			}
+		};
+		try {
+			UserService busy = new UserService(localUserDAO, verificationTokenDAO, encryptionService, jwtService,
+					emailService, principalCache, fullPool);
+			Assertions.assertThrows(RejectedExecutionException.class, () -> busy.resetPassword(body));
+		} finally {
+			fullPool.shutdown();
+		}
+
+		LocalUserDAO failingSave = (LocalUserDAO) Proxy.newProxyInstance(LocalUserDAO.class.getClassLoader(),
+				new Class<?>[] { LocalUserDAO.class }, (proxy, method, args) -> {
+					if (method.getName().equals("save")) {
+						throw new DataAccessResourceFailureException("Simulated outage");
+					}
+					try {
+						return method.invoke(localUserDAO, args);
+					} catch (InvocationTargetException ex) {
+						throw ex.getCause();
+					}
+				});
+		UserService failing = new UserService(failingSave, verificationTokenDAO, encryptionService, jwtService,
+				emailService, principalCache, hashingExecutor);
+		CompletionException saveFailure = Assertions.assertThrows(CompletionException.class,
+				() -> failing.resetPassword(body).join());
+		Assertions.assertInstanceOf(DataAccessResourceFailureException.class, saveFailure.getCause());
+
+		Assertions.assertDoesNotThrow(() -> userService.resetPassword(body).join(), "The retry should use the token.");
+		CompletionException reused = Assertions.assertThrows(CompletionException.class,
+				() -> userService.resetPassword(body).join());
+		Assertions.assertInstanceOf(JWTVerificationException.class, reused.getCause(),
+				"The token should only be used once.");
+
+		String thread = hashingExecutor.submit(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return 0;
+		}).thenApply(done -> Thread.currentThread().getName()).join();
+		Assertions.assertFalse(thread.matches("password-hash-\\d+"), "Work after a hash should not run on " + thread);
+	}
+
+	/**
+	 * Runs an HTTP request with the given header through the JWT filter.
+	 * 
+	 * @param authorization The Authorization header.
+	 * @return The authentication the filter set.
+	 * @throws Exception Thrown if the filter fails.
+	 */
+	private Authentication authenticateHttp(String authorization) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/auth/me");
+		request.addHeader("Authorization", authorization);
+		jwtRequestFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		SecurityContextHolder.clearContext();
+		return authentication;
+	}
+
+	/**
+	 * Runs a STOMP subscription with the given header through the JWT
+	 * interceptor.
+	 * 
+	 * @param authorization The Authorization header.
+	 * @return The authentication the interceptor set.
+	 */
+	private Authentication authenticateStomp(String authorization) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		accessor.setDestination("/topic/product");
+		accessor.addNativeHeader("Authorization", authorization);
+		jwtRequestFilter.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		SecurityContextHolder.clearContext();
+		return authentication;
+	}
+
+	/**
+	 * Tests that only the hash of a verification token is stored, that the
+	 * emailed token verifies the user, and that expired tokens are purged.
+	 * 
+	 * @throws Exception Thrown if the email could not be read.
+	 */
+	@Test
+	public void testVerificationTokenLifecycle() throws Exception {
+		RegistrationBody body = new RegistrationBody();
+		body.setUsername("UserServiceTest$testVerificationTokenLifecycle");
+		body.setEmail("UserServiceTest$testVerificationTokenLifecycle@junit.com");
+		body.setFirstName("FirstName");
+		body.setLastName("LastName");
+		body.setPassword("MySecretPassword123");
+		LocalUser user = userService.registerUser(body).join();
+		Assertions.assertTrue(greenMailExtension.waitForIncomingEmail(5000, 1));
+		String content = GreenMailUtil.getBody(greenMailExtension.getReceivedMessages()[0]);
+		String token = content.substring(content.indexOf("token=") + 6).trim();
+
+		VerificationToken stored = verificationTokenDAO.findFirstByUser_IdOrderByCreatedTimestampDesc(user.getId()).get();
+		Assertions.assertEquals(64, stored.getTokenHash().length());
+		Assertions.assertNotEquals(token, stored.getTokenHash(), "The token should not be stored in plain text.");
+		Assertions.assertTrue(stored.getExpiresAt().after(new Timestamp(System.currentTimeMillis())));
+
+		VerificationToken expired = new VerificationToken();
+		expired.setUser(user);
+		expired.setTokenHash("0".repeat(64));
+		expired.setCreatedTimestamp(new Timestamp(System.currentTimeMillis() - 2000));
+		expired.setExpiresAt(new Timestamp(System.currentTimeMillis() - 1000));
+		expired = verificationTokenDAO.save(expired);
+		userService.purgeExpiredVerificationTokens();
+		Assertions.assertFalse(verificationTokenDAO.findById(expired.getId()).isPresent(), "Expired tokens should be purged.");
+		Assertions.assertTrue(verificationTokenDAO.findById(stored.getId()).isPresent(), "Live tokens should be kept.");
+
+		Assertions.assertFalse(userService.verifyUser("Bad Token"));
+		Assertions.assertTrue(userService.verifyUser(token), "The emailed token should verify the user.");
+		Assertions.assertTrue(localUserDAO.findById(user.getId()).get().isEmailVerified());
+		Assertions.assertFalse(userService.verifyUser(token), "The token should be deleted once used.");
+	}
+
 	/**
 	 * Tests the verifyUser method.
 	 * 
@@ -0,0 +1,95 @@
+package test.service;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.ECommerceBackendApplication;
+import com.api.security.JWTRequestFilter;
+import com.repository.LocalUserDAO;
+import com.service.JWTService;
+
+import jakarta.servlet.Filter;
+
+/**
+ * Test class to test the security filter chains of the WebSecurityConfig
+ * class.
+ */
+@SpringBootTest(classes = ECommerceBackendApplication.class)
+public class WebSecurityConfigTest {
+
+	/** The application context. */
+	@Autowired
+	private WebApplicationContext context;
+
+	/** The Spring Security filter. */
+	@Autowired
+	private FilterChainProxy filterChainProxy;
+
+	/** The JWT service. */
+	@Autowired
+	private JWTService jwtService;
+
+	/** The Local User DAO. */
+	@Autowired
+	private LocalUserDAO localUserDAO;
+
+	/**
+	 * Gets the filters of the chain a request is sent through.
+	 * 
+	 * @param method The HTTP method.
+	 * @param path   The path.
+	 * @return The filters.
+	 */
+	private List<Filter> filters(String method, String path) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+		request.setServletPath(path);
+		return filterChainProxy.getFilterChains().stream().filter(chain -> chain.matches(request)).findFirst().get()
+				.getFilters();
+	}
+
+	/**
+	 * Tests that anonymous catalog reads go through an empty chain and
+	 * everything else through the chain with the JWT filter.
+	 */
+	@Test
+	public void testPublicReadsSkipTheSecurityChain() {
+		Assertions.assertTrue(filters("GET", "/product").isEmpty());
+		Assertions.assertTrue(filters("GET", "/product/7a3ce3a1-43cf-4d7c-a2a9-1d8b23a3f1b0").isEmpty());
+		Assertions.assertTrue(filters("GET", "/categories").isEmpty());
+		Assertions.assertTrue(filters("GET", "/image/holder/gallery/a.png").isEmpty());
+		for (String[] request : List.of(new String[] { "GET", "/product/user" }, new String[] { "POST", "/product" },
+				new String[] { "GET", "/order" }, new String[] { "PUT", "/user/1/address" })) {
+			Assertions.assertTrue(filters(request[0], request[1]).stream().anyMatch(JWTRequestFilter.class::isInstance),
+					request[0] + " " + request[1] + " should be authenticated.");
+		}
+	}
+
+	/**
+	 * Tests that authenticated routes reject anonymous requests and accept a
+	 * valid token.
+	 * 
+	 * @throws Exception Thrown if the request fails.
+	 */
+	@Test
+	public void testAuthenticatedRoutesNeedAToken() throws Exception {
+		MockMvc mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+		mvc.perform(get("/product")).andExpect(status().isOk());
+		mvc.perform(get("/order")).andExpect(status().isForbidden());
+		String token = jwtService.generateJWT(localUserDAO.findByUsernameIgnoreCase("UserA").get());
+		mvc.perform(get("/order").header("Authorization", "Bearer " + token)).andExpect(status().isOk());
+	}
+
+}
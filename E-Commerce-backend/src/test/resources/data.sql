@@ -2,6 +2,6 @@
 
 -- Passwords are in the format: Password<UserLetter>123. Unless specified otherwise.
 -- Encrypted using https://www.javainuse.com/onlineBcrypt
-INSERT INTO local_user (email, first_name, last_name, password, username, email_verified)
-    VALUES ('UserA@junit.com', 'UserA-FirstName', 'UserA-LastName', '$2a$10$hBn5gu6cGelJNiE6DDsaBOmZgyumCSzVwrOK/37FWgJ6aLIdZSSI2', 'UserA', true)
-    , ('UserB@junit.com', 'UserB-FirstName', 'UserB-LastName', '$2a$10$TlYbg57fqOy/1LJjispkjuSIvFJXbh3fy0J9fvHnCpuntZOITAjVG', 'UserB', false);
\ No newline at end of file
+INSERT INTO local_user (id, email, first_name, last_name, password, username, email_verified)
+    VALUES ('00000000-0000-0000-0000-00000000000a', 'UserA@junit.com', 'UserA-FirstName', 'UserA-LastName', '$2a$10$hBn5gu6cGelJNiE6DDsaBOmZgyumCSzVwrOK/37FWgJ6aLIdZSSI2', 'UserA', true)
+    , ('00000000-0000-0000-0000-00000000000b', 'UserB@junit.com', 'UserB-FirstName', 'UserB-LastName', '$2a$10$TlYbg57fqOy/1LJjispkjuSIvFJXbh3fy0J9fvHnCpuntZOITAjVG', 'UserB', false);
\ No newline at end of file